@@ -0,0 +1,148 @@
+package net.gescobar.smppserver.benchmark;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import net.gescobar.smppserver.SmppServer;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloudhopper.smpp.channel.SmppSessionPduDecoder;
+import com.cloudhopper.smpp.pdu.BaseBindResp;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
+import com.cloudhopper.smpp.transcoder.PduTranscoder;
+
+/**
+ * Measures the time it takes to connect and bind a burst of clients at the same time (as when the clients reconnect 
+ * after a network failure), from the first connect until the last bind_resp is received.
+ * 
+ * @author German Escobar
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ConnectBindBenchmark {
+	
+	private static final int PORT = 4775;
+	
+	@Param({ "1000" })
+	private int connections;
+	
+	private SmppServer server;
+	
+	private ClientBootstrap bootstrap;
+	
+	private PduTranscoder transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
+	
+	private volatile ChannelGroup channels;
+	
+	private volatile CountDownLatch bound;
+	
+	@Setup
+	public void setup() throws Exception {
+		
+		server = new SmppServer(PORT);
+		server.start();
+		
+		bootstrap = new ClientBootstrap(new NioClientSocketChannelFactory(Executors.newCachedThreadPool(), 
+				Executors.newCachedThreadPool()));
+		bootstrap.setOption("tcpNoDelay", true);
+		bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+
+			@Override
+			public ChannelPipeline getPipeline() throws Exception {
+				return Channels.pipeline(new SmppSessionPduDecoder(transcoder), new BindHandler());
+			}
+			
+		});
+		
+	}
+	
+	@Setup(Level.Invocation)
+	public void prepare() {
+		channels = new DefaultChannelGroup();
+		bound = new CountDownLatch(connections);
+	}
+	
+	/**
+	 * Closes the clients outside of the measured time (the invocation level is fine with single shot benchmarks).
+	 */
+	@TearDown(Level.Invocation)
+	public void closeClients() {
+		channels.close().awaitUninterruptibly();
+	}
+	
+	@TearDown
+	public void tearDown() {
+		bootstrap.releaseExternalResources();
+		server.stop();
+	}
+	
+	@Benchmark
+	public void connectAndBind() throws Exception {
+		
+		for (int i=0; i < connections; i++) {
+			bootstrap.connect( new InetSocketAddress("localhost", PORT) );
+		}
+		
+		if (!bound.await(60, TimeUnit.SECONDS)) {
+			throw new IllegalStateException(bound.getCount() + " of " + connections + " clients didn't bind");
+		}
+	}
+	
+	/**
+	 * Sends the bind when the channel connects and counts down the latch when the bind_resp is received.
+	 */
+	private class BindHandler extends SimpleChannelUpstreamHandler {
+		
+		@Override
+		public void channelConnected(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+			channels.add( e.getChannel() );
+			e.getChannel().write( transcoder.encode(Packets.bind()) );
+		}
+
+		@Override
+		public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+			if (BaseBindResp.class.isInstance(e.getMessage())) {
+				bound.countDown();
+			}
+		}
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e) throws Exception {
+			e.getChannel().close();
+		}
+		
+	}
+
+}
@@ -0,0 +1,83 @@
+package net.gescobar.smppserver.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.gescobar.smppserver.packet.Address;
+import net.gescobar.smppserver.packet.DeliverSm;
+import net.gescobar.smppserver.packet.SmppPacket;
+import net.gescobar.smppserver.packet.ch.PacketMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.Pdu;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.tlv.Tlv;
+
+/**
+ * Measures the mapping of packets between the cloudhopper representation and ours.
+ * 
+ * @author German Escobar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketMapperBenchmark {
+	
+	private SubmitSm chSubmitSm;
+	
+	private SubmitSm chSubmitSmWithTlvs;
+	
+	private DeliverSm deliverSm;
+	
+	@Setup
+	public void setup() throws Exception {
+		
+		chSubmitSm = Packets.submitSm();
+		
+		chSubmitSmWithTlvs = Packets.submitSm();
+		chSubmitSmWithTlvs.addOptionalParameter( new Tlv(SmppConstants.TAG_SAR_MSG_REF_NUM, new byte[] { 0, 1 }) );
+		chSubmitSmWithTlvs.addOptionalParameter( new Tlv(SmppConstants.TAG_SAR_TOTAL_SEGMENTS, new byte[] { 2 }) );
+		chSubmitSmWithTlvs.addOptionalParameter( new Tlv(SmppConstants.TAG_SAR_SEGMENT_SEQNUM, new byte[] { 1 }) );
+		
+		deliverSm = new DeliverSm();
+		deliverSm.setSequenceNumber(1);
+		deliverSm.setSourceAddress( new Address((byte) 1, (byte) 1, "573001234567") );
+		deliverSm.setDestAddress( new Address((byte) 0, (byte) 0, "5555") );
+		deliverSm.setEsmClass( SmppConstants.ESM_CLASS_MT_SMSC_DELIVERY_RECEIPT );
+		deliverSm.setShortMessage( Packets.DELIVERY_RECEIPT.getBytes("ISO-8859-1") );
+	}
+	
+	@Benchmark
+	public SmppPacket mapSubmitSm() {
+		return PacketMapper.map(chSubmitSm);
+	}
+	
+	@Benchmark
+	public SmppPacket mapSubmitSmLazily() {
+		return PacketMapper.map(chSubmitSm, true);
+	}
+	
+	@Benchmark
+	public SmppPacket mapSubmitSmWithTlvs() {
+		return PacketMapper.map(chSubmitSmWithTlvs);
+	}
+	
+	@Benchmark
+	public Pdu mapDeliverSm() throws Exception {
+		return PacketMapper.map(deliverSm);
+	}
+
+}
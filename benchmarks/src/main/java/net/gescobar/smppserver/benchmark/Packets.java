@@ -0,0 +1,47 @@
+package net.gescobar.smppserver.benchmark;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.pdu.BindTransceiver;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.type.Address;
+import com.cloudhopper.smpp.type.SmppInvalidArgumentException;
+
+/**
+ * Builds the packets used in the benchmarks.
+ * 
+ * @author German Escobar
+ */
+final class Packets {
+	
+	public static final String SHORT_MESSAGE = "Your verification code is 482913. It expires in 10 minutes.";
+	
+	public static final String DELIVERY_RECEIPT = "id:1234567890 sub:001 dlvrd:001 submit date:1310171200 " 
+			+ "done date:1310171201 stat:DELIVRD err:000 text:Your verification";
+	
+	private Packets() {}
+	
+	public static BindTransceiver bind() {
+		
+		BindTransceiver bind = new BindTransceiver();
+		bind.setSequenceNumber(1);
+		bind.setSystemId("benchmark");
+		bind.setPassword("secret");
+		
+		return bind;
+	}
+	
+	public static SubmitSm submitSm() throws SmppInvalidArgumentException {
+		
+		SubmitSm submitSm = new SubmitSm();
+		submitSm.setSequenceNumber(2);
+		submitSm.setSourceAddress( new Address((byte) 0, (byte) 0, "5555") );
+		submitSm.setDestAddress( new Address((byte) 1, (byte) 1, "573001234567") );
+		submitSm.setRegisteredDelivery( SmppConstants.REGISTERED_DELIVERY_SMSC_RECEIPT_REQUESTED );
+		submitSm.setDataCoding( SmppConstants.DATA_CODING_DEFAULT );
+		submitSm.setShortMessage( CharsetUtil.encode(SHORT_MESSAGE, CharsetUtil.CHARSET_GSM) );
+		
+		return submitSm;
+	}
+
+}
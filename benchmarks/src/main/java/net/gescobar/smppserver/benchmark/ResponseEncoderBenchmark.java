@@ -0,0 +1,110 @@
+package net.gescobar.smppserver.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.gescobar.smppserver.ResponseEncoder;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloudhopper.smpp.pdu.EnquireLink;
+import com.cloudhopper.smpp.pdu.PduResponse;
+import com.cloudhopper.smpp.pdu.SubmitSm;
+import com.cloudhopper.smpp.pdu.SubmitSmResp;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
+import com.cloudhopper.smpp.transcoder.PduTranscoder;
+
+/**
+ * Compares the encoding of the submit_sm_resp and enquire_link_resp with the {@link ResponseEncoder} against the
+ * generic path: creating the response PDU from the request and encoding it with the cloudhopper transcoder.
+ *
+ * @author German Escobar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseEncoderBenchmark {
+
+	private static final String MESSAGE_ID = "5f2d1c3a-0b9e-4d6f-8a71-2c4e9b0d3f12";
+
+	private PduTranscoder transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
+
+	private SubmitSm submitSm;
+
+	private EnquireLink enquireLink;
+
+	/**
+	 * Reused by the benchmarks that only measure the encoding, like a pooled buffer.
+	 */
+	private ChannelBuffer buffer = ChannelBuffers.directBuffer(128);
+
+	@Setup
+	public void setup() throws Exception {
+
+		submitSm = Packets.submitSm();
+
+		enquireLink = new EnquireLink();
+		enquireLink.setSequenceNumber(3);
+	}
+
+	@Benchmark
+	public ChannelBuffer genericSubmitSmResp() throws Exception {
+
+		SubmitSmResp submitSmResp = submitSm.createResponse();
+		submitSmResp.setCommandStatus(0);
+		submitSmResp.setMessageId(MESSAGE_ID);
+
+		return transcoder.encode(submitSmResp);
+	}
+
+	@Benchmark
+	public ChannelBuffer encodedSubmitSmResp() {
+
+		ChannelBuffer out = ChannelBuffers.buffer( ResponseEncoder.submitSmRespLength(MESSAGE_ID) );
+		ResponseEncoder.writeSubmitSmResp(out, submitSm.getSequenceNumber(), 0, MESSAGE_ID);
+
+		return out;
+	}
+
+	@Benchmark
+	public ChannelBuffer encodedSubmitSmRespIntoPooledBuffer() {
+
+		buffer.clear();
+		ResponseEncoder.writeSubmitSmResp(buffer, submitSm.getSequenceNumber(), 0, MESSAGE_ID);
+
+		return buffer;
+	}
+
+	@Benchmark
+	public ChannelBuffer genericEnquireLinkResp() throws Exception {
+
+		PduResponse enquireLinkResp = enquireLink.createResponse();
+		enquireLinkResp.setCommandStatus(0);
+
+		return transcoder.encode(enquireLinkResp);
+	}
+
+	@Benchmark
+	public ChannelBuffer encodedEnquireLinkResp() {
+
+		ChannelBuffer out = ChannelBuffers.buffer(ResponseEncoder.ENQUIRE_LINK_RESP_LENGTH);
+		ResponseEncoder.writeEnquireLinkResp(out, enquireLink.getSequenceNumber(), 0);
+
+		return out;
+	}
+
+}
@@ -0,0 +1,86 @@
+package net.gescobar.smppserver.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.gescobar.smppserver.PacketProcessor;
+import net.gescobar.smppserver.Response;
+import net.gescobar.smppserver.ResponseSender;
+import net.gescobar.smppserver.SmppSession;
+import net.gescobar.smppserver.packet.SmppRequest;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloudhopper.smpp.channel.SmppChannelConstants;
+import com.cloudhopper.smpp.channel.SmppSessionPduDecoder;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
+import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
+import com.cloudhopper.smpp.transcoder.PduTranscoder;
+
+/**
+ * Measures a full submit_sm round trip through an {@link SmppSession} on an embedded channel: decode, map, process 
+ * and encode of the submit_sm_resp. 
+ * 
+ * @author German Escobar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SessionRoundTripBenchmark {
+	
+	private DecoderEmbedder<Object> embedder;
+	
+	private ChannelBuffer submitSm;
+	
+	@Setup
+	public void setup() throws Exception {
+		
+		PduTranscoder transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
+		
+		embedder = new DecoderEmbedder<Object>(new SmppSessionPduDecoder(transcoder));
+		Channel channel = embedder.getPipeline().getChannel();
+		
+		SmppSession session = new SmppSession(1, channel, new PacketProcessor() {
+
+			@Override
+			public void processPacket(SmppRequest packet, ResponseSender responseSender) {
+				
+				if (packet.isSubmitSm()) {
+					responseSender.send( Response.OK.withMessageId("1234567890") );
+					return;
+				}
+				
+				responseSender.send( Response.OK );
+			}
+			
+		});
+		embedder.getPipeline().addLast(SmppChannelConstants.PIPELINE_SESSION_WRAPPER_NAME, session);
+		
+		// bind the session and discard the bind_resp
+		embedder.offer( transcoder.encode(Packets.bind()) );
+		embedder.pollAll();
+		
+		submitSm = transcoder.encode( Packets.submitSm() );
+	}
+	
+	@Benchmark
+	public Object submitSmRoundTrip() {
+		embedder.offer( submitSm.duplicate() );
+		return embedder.poll();
+	}
+
+}
@@ -0,0 +1,90 @@
+package net.gescobar.smppserver.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.gescobar.smppserver.packet.SubmitSm;
+import net.gescobar.smppserver.packet.ch.PacketMapper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.SmppConstants;
+
+/**
+ * Measures the decoding of the short message of a submit_sm.
+ * 
+ * @author German Escobar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubmitSmBenchmark {
+	
+	private SubmitSm gsmSubmitSm;
+	
+	private SubmitSm ucs2SubmitSm;
+	
+	@Setup
+	public void setup() throws Exception {
+		
+		gsmSubmitSm = (SubmitSm) PacketMapper.map( Packets.submitSm() );
+		
+		com.cloudhopper.smpp.pdu.SubmitSm chSubmitSm = Packets.submitSm();
+		chSubmitSm.setDataCoding( SmppConstants.DATA_CODING_UCS2 );
+		chSubmitSm.setShortMessage( CharsetUtil.encode(Packets.SHORT_MESSAGE, CharsetUtil.CHARSET_UCS_2) );
+		ucs2SubmitSm = (SubmitSm) PacketMapper.map(chSubmitSm);
+		
+		gsmBytes = gsmSubmitSm.getShortMessageBytes();
+		ucs2Bytes = ucs2SubmitSm.getShortMessageBytes();
+	}
+	
+	private byte[] gsmBytes;
+	
+	private byte[] ucs2Bytes;
+	
+	private StringBuilder buffer = new StringBuilder(160);
+	
+	@Benchmark
+	public String decodeGsm() {
+		
+		// setting the bytes discards the cached message
+		gsmSubmitSm.setShortMessage(gsmBytes);
+		return gsmSubmitSm.getShortMessage();
+	}
+	
+	@Benchmark
+	public String decodeUcs2() {
+		ucs2SubmitSm.setShortMessage(ucs2Bytes);
+		return ucs2SubmitSm.getShortMessage();
+	}
+	
+	@Benchmark
+	public String decodeGsmCached() {
+		return gsmSubmitSm.getShortMessage();
+	}
+	
+	@Benchmark
+	public StringBuilder decodeGsmIntoBuffer() {
+		buffer.setLength(0);
+		gsmSubmitSm.decodeShortMessage(buffer);
+		return buffer;
+	}
+	
+	@Benchmark
+	public byte[] shortMessageBytes() {
+		return gsmSubmitSm.getShortMessageBytes();
+	}
+
+}
@@ -0,0 +1,83 @@
+package net.gescobar.smppserver.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import net.gescobar.smppserver.packet.SubmitSm;
+import net.gescobar.smppserver.packet.Tlv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cloudhopper.smpp.SmppConstants;
+
+/**
+ * Measures the conversions of the {@link Tlv} values and the lookup of the optional parameters of a packet.
+ * 
+ * @author German Escobar
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TlvBenchmark {
+	
+	private Tlv messageId = new Tlv(SmppConstants.TAG_RECEIPTED_MSG_ID, 
+			new byte[] { '1', '2', '3', '4', '5', '6', '7', '8', '9', '0', 0 }, "receipted_message_id");
+	
+	private Tlv refNum = new Tlv(SmppConstants.TAG_SAR_MSG_REF_NUM, new byte[] { 0x12, 0x34 }, "sar_msg_ref_num");
+	
+	private Tlv segment = new Tlv(SmppConstants.TAG_SAR_SEGMENT_SEQNUM, new byte[] { 1 }, "sar_segment_seqnum");
+	
+	private SubmitSm submitSm = new SubmitSm();
+	
+	{
+		submitSm.addOptionalParameter( new Tlv(SmppConstants.TAG_SOURCE_PORT, new byte[] { 0, 1 }, "source_port") );
+		submitSm.addOptionalParameter( new Tlv(SmppConstants.TAG_DEST_PORT, new byte[] { 0, 2 }, "dest_port") );
+		submitSm.addOptionalParameter( new Tlv(SmppConstants.TAG_USER_MESSAGE_REFERENCE, new byte[] { 0, 3 }, 
+				"user_message_reference") );
+		submitSm.addOptionalParameter( refNum );
+		submitSm.addOptionalParameter( new Tlv(SmppConstants.TAG_SAR_TOTAL_SEGMENTS, new byte[] { 2 }, 
+				"sar_total_segments") );
+		submitSm.addOptionalParameter( segment );
+	}
+	
+	@Benchmark
+	public Tlv lookupOptionalParameter() {
+		return submitSm.getOptionalParameter(SmppConstants.TAG_SAR_SEGMENT_SEQNUM);
+	}
+	
+	@Benchmark
+	public Tlv lookupMissingOptionalParameter() {
+		return submitSm.getOptionalParameter(SmppConstants.TAG_MESSAGE_PAYLOAD);
+	}
+	
+	@Benchmark
+	public SubmitSm newPacketWithoutOptionalParameters() {
+		return new SubmitSm();
+	}
+	
+	@Benchmark
+	public String valueAsString() throws Exception {
+		return messageId.getValueAsString();
+	}
+	
+	@Benchmark
+	public int valueAsUnsignedShort() throws Exception {
+		return refNum.getValueAsUnsignedShort();
+	}
+	
+	@Benchmark
+	public short valueAsUnsignedByte() throws Exception {
+		return segment.getValueAsUnsignedByte();
+	}
+
+}
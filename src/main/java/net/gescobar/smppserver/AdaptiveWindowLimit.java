@@ -0,0 +1,137 @@
+package net.gescobar.smppserver;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the number of requests in flight in the send window of a session. The limit grows by one every time a full 
+ * window of responses arrives faster than the target latency and shrinks by one on every slow response and by half 
+ * on every timeout (additive increase, multiplicative decrease), always between the minimum and maximum sizes.
+ * 
+ * @author German Escobar
+ */
+class AdaptiveWindowLimit {
+	
+	private final int minSize;
+	
+	private final int maxSize;
+	
+	private final long targetLatency;
+	
+	private final ResizableSemaphore permits;
+	
+	/**
+	 * The current limit.
+	 */
+	private int size;
+	
+	/**
+	 * The number of fast responses received since the limit last changed.
+	 */
+	private int fastResponses;
+	
+	/**
+	 * Constructor. Starts with the maximum size.
+	 * 
+	 * @param minSize the minimum size of the window.
+	 * @param maxSize the maximum size of the window.
+	 * @param targetLatency the response latency in milliseconds above which the window is shrunk.
+	 */
+	public AdaptiveWindowLimit(int minSize, int maxSize, long targetLatency) {
+		
+		if (minSize <= 0 || minSize > maxSize) {
+			throw new IllegalArgumentException("minSize must be between 1 and " + maxSize);
+		}
+		
+		this.minSize = minSize;
+		this.maxSize = maxSize;
+		this.targetLatency = targetLatency;
+		this.size = maxSize;
+		this.permits = new ResizableSemaphore(maxSize);
+	}
+	
+	/**
+	 * Waits until there is room in the window.
+	 * 
+	 * @param timeout the maximum time to wait in milliseconds.
+	 * 
+	 * @return true if there was room in the window, false if the timeout elapsed.
+	 * @throws InterruptedException
+	 */
+	public boolean acquire(long timeout) throws InterruptedException {
+		return permits.tryAcquire(timeout, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Frees the room taken by a request that is no longer in the window.
+	 */
+	public void release() {
+		permits.release();
+	}
+	
+	/**
+	 * Called when a response arrives.
+	 * 
+	 * @param latency the time in milliseconds it took the response to arrive.
+	 */
+	public synchronized void responseReceived(long latency) {
+		
+		if (latency > targetLatency) {
+			resize(size - 1);
+			return;
+		}
+		
+		if (++fastResponses >= size) {
+			resize(size + 1);
+		}
+		
+	}
+	
+	/**
+	 * Called when a request expires without a response.
+	 */
+	public synchronized void requestExpired() {
+		resize(size / 2);
+	}
+	
+	private void resize(int newSize) {
+		
+		newSize = Math.max(minSize, Math.min(maxSize, newSize));
+		fastResponses = 0;
+		
+		if (newSize > size) {
+			permits.release(newSize - size);
+		} else if (newSize < size) {
+			permits.reducePermits(size - newSize);
+		}
+		
+		size = newSize;
+		
+	}
+	
+	/**
+	 * @return the current limit.
+	 */
+	public synchronized int getSize() {
+		return size;
+	}
+	
+	/**
+	 * A semaphore that exposes the {@link Semaphore#reducePermits(int)} method.
+	 */
+	private static class ResizableSemaphore extends Semaphore {
+
+		private static final long serialVersionUID = 1L;
+
+		public ResizableSemaphore(int permits) {
+			super(permits);
+		}
+		
+		@Override
+		public void reducePermits(int reduction) {
+			super.reducePermits(reduction);
+		}
+		
+	}
+
+}
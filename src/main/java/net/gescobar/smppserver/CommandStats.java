@@ -0,0 +1,89 @@
+package net.gescobar.smppserver;
+
+/**
+ * The statistics of the responses sent with a command status to the requests with a command id. The latencies are 
+ * measured in microseconds from the time the request is received until its response is written to the socket 
+ * (including the time it waits to be written), and the counts are cumulative (rates can be calculated from the 
+ * difference between two reports). The responses that couldn't be written are not counted.
+ * 
+ * @author German Escobar
+ */
+public final class CommandStats {
+	
+	private final int commandId;
+	
+	private final int commandStatus;
+	
+	private final long count;
+	
+	private final long mean;
+	
+	private final long p50;
+	
+	private final long p99;
+	
+	private final long p999;
+	
+	private final long max;
+	
+	public CommandStats(int commandId, int commandStatus, long count, long mean, long p50, long p99, long p999, 
+			long max) {
+		
+		this.commandId = commandId;
+		this.commandStatus = commandStatus;
+		this.count = count;
+		this.mean = mean;
+		this.p50 = p50;
+		this.p99 = p99;
+		this.p999 = p999;
+		this.max = max;
+	}
+
+	/**
+	 * @return the command id of the requests.
+	 */
+	public int getCommandId() {
+		return commandId;
+	}
+
+	/**
+	 * @return the command status of the responses.
+	 */
+	public int getCommandStatus() {
+		return commandStatus;
+	}
+
+	/**
+	 * @return the number of responses sent.
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public long getMean() {
+		return mean;
+	}
+
+	public long getP50() {
+		return p50;
+	}
+
+	public long getP99() {
+		return p99;
+	}
+
+	public long getP999() {
+		return p999;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("command_id=0x%08x command_status=0x%08x count=%d mean=%dus p50=%dus p99=%dus " 
+				+ "p999=%dus max=%dus", commandId, commandStatus, count, mean, p50, p99, p999, max);
+	}
+	
+}
@@ -0,0 +1,202 @@
+package net.gescobar.smppserver;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.cloudhopper.smpp.pdu.Pdu;
+import com.cloudhopper.smpp.pdu.PduResponse;
+import com.cloudhopper.smpp.transcoder.PduTranscoderContext;
+import com.cloudhopper.smpp.type.RecoverablePduException;
+import com.cloudhopper.smpp.type.UnrecoverablePduException;
+
+/**
+ * Encodes the outbound PDUs into direct buffers that are reused once they are written, which saves the allocation
+ * of a heap buffer per PDU and the copy to a direct buffer that Netty does before writing it to the socket.
+ *
+ * <p>The buffers are pooled by size class: the smallest class fits a submit_sm_resp (header plus a message id of
+ * up to 65 bytes), the next one a typical deliver_sm and the last one a deliver_sm with a long payload. PDUs that
+ * don't fit in the largest class are not encoded by the pool.</p>
+ *
+ * @author German Escobar
+ */
+class DirectBufferPool {
+
+	private static final int[] SIZE_CLASSES = { 128, 512, 2048 };
+
+	/**
+	 * The default maximum number of buffers kept by each size class.
+	 */
+	public static final int DEFAULT_MAX_BUFFERS = 1024;
+
+	private final PduTranscoderContext context;
+
+	private final int maxBuffers;
+
+	@SuppressWarnings("unchecked")
+	private final ConcurrentLinkedQueue<ChannelBuffer>[] pools = new ConcurrentLinkedQueue[SIZE_CLASSES.length];
+
+	/**
+	 * The number of buffers in each pool (the size of a ConcurrentLinkedQueue is not a constant time operation).
+	 */
+	private final AtomicInteger[] sizes = new AtomicInteger[SIZE_CLASSES.length];
+
+	private final AtomicLong allocated = new AtomicLong();
+
+	public DirectBufferPool(PduTranscoderContext context) {
+		this(context, DEFAULT_MAX_BUFFERS);
+	}
+
+	public DirectBufferPool(PduTranscoderContext context, int maxBuffers) {
+
+		this.context = context;
+		this.maxBuffers = maxBuffers;
+
+		for (int i=0; i < SIZE_CLASSES.length; i++) {
+			pools[i] = new ConcurrentLinkedQueue<ChannelBuffer>();
+			sizes[i] = new AtomicInteger();
+		}
+	}
+
+	/**
+	 * Encodes the PDU the same way the {@link com.cloudhopper.smpp.transcoder.DefaultPduTranscoder} does but into a
+	 * pooled buffer, which has to be passed to {@link #release(ChannelBuffer)} once it is written.
+	 *
+	 * @param pdu the PDU to encode.
+	 *
+	 * @return a pooled buffer with the encoded PDU or null if the PDU doesn't fit in any size class.
+	 *
+	 * @throws UnrecoverablePduException
+	 * @throws RecoverablePduException
+	 */
+	public ChannelBuffer encode(Pdu pdu) throws UnrecoverablePduException, RecoverablePduException {
+
+		if (pdu instanceof PduResponse) {
+			PduResponse response = (PduResponse) pdu;
+			if (response.getResultMessage() == null) {
+				response.setResultMessage( context.lookupResultMessage(pdu.getCommandStatus()) );
+			}
+		}
+
+		if (!pdu.hasCommandLengthCalculated()) {
+			pdu.calculateAndSetCommandLength();
+		}
+
+		int sizeClass = sizeClass(pdu.getCommandLength());
+		if (sizeClass < 0) {
+			return null;
+		}
+
+		ChannelBuffer buffer = acquireClass(sizeClass);
+		boolean encoded = false;
+		try {
+
+			buffer.writeInt(pdu.getCommandLength());
+			buffer.writeInt(pdu.getCommandId());
+			buffer.writeInt(pdu.getCommandStatus());
+			buffer.writeInt(pdu.getSequenceNumber());
+
+			pdu.writeBody(buffer);
+			pdu.writeOptionalParameters(buffer, context);
+
+			if (buffer.readableBytes() != pdu.getCommandLength()) {
+				throw new UnrecoverablePduException("Encoded " + buffer.readableBytes() + " bytes but the command " +
+						"length is " + pdu.getCommandLength());
+			}
+
+			encoded = true;
+			return buffer;
+
+		} finally {
+			if (!encoded) {
+				release(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Takes an empty buffer in which the caller encodes a PDU, it has to be passed to {@link #release(ChannelBuffer)}
+	 * once it is written.
+	 *
+	 * @param length the length of the PDU.
+	 *
+	 * @return a pooled buffer with at least the length or null if the length doesn't fit in any size class.
+	 */
+	public ChannelBuffer acquire(int length) {
+
+		int sizeClass = sizeClass(length);
+		return sizeClass >= 0 ? acquireClass(sizeClass) : null;
+	}
+
+	/**
+	 * Returns a buffer to its pool. Buffers that were not created by the pool are ignored.
+	 *
+	 * @param buffer the buffer to return.
+	 */
+	public void release(ChannelBuffer buffer) {
+
+		if (!buffer.isDirect()) {
+			return;
+		}
+
+		int sizeClass = sizeClass(buffer.capacity());
+		if (sizeClass < 0 || SIZE_CLASSES[sizeClass] != buffer.capacity()) {
+			return;
+		}
+
+		if (sizes[sizeClass].incrementAndGet() > maxBuffers) {
+			sizes[sizeClass].decrementAndGet();
+			return;
+		}
+
+		buffer.clear();
+		pools[sizeClass].add(buffer);
+	}
+
+	/**
+	 * @return the number of direct buffers that were allocated because the pool of their size class was empty.
+	 */
+	public long getAllocatedBuffers() {
+		return allocated.get();
+	}
+
+	/**
+	 * @return the number of buffers that are waiting to be reused.
+	 */
+	public int getPooledBuffers() {
+
+		int pooled = 0;
+		for (AtomicInteger size : sizes) {
+			pooled += size.get();
+		}
+
+		return pooled;
+	}
+
+	private ChannelBuffer acquireClass(int sizeClass) {
+
+		ChannelBuffer buffer = pools[sizeClass].poll();
+		if (buffer != null) {
+			sizes[sizeClass].decrementAndGet();
+			return buffer;
+		}
+
+		allocated.incrementAndGet();
+		return ChannelBuffers.directBuffer(SIZE_CLASSES[sizeClass]);
+	}
+
+	private static int sizeClass(int length) {
+
+		for (int i=0; i < SIZE_CLASSES.length; i++) {
+			if (length <= SIZE_CLASSES[i]) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+}
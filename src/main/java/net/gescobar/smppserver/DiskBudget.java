@@ -0,0 +1,77 @@
+package net.gescobar.smppserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The maximum number of bytes that a group of {@link Journal}s can use on disk, shared by all of them so that the 
+ * total doesn't grow with the number of journals (e.g. one for each system id of the outbound queues). A journal 
+ * reserves the bytes of a segment before creating it and releases them when the segment is deleted.
+ * 
+ * @author German Escobar
+ */
+class DiskBudget {
+
+	private final long maxSize;
+	
+	private final AtomicLong used = new AtomicLong();
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxSize the maximum number of bytes of all the journals.
+	 */
+	public DiskBudget(long maxSize) {
+		this.maxSize = maxSize;
+	}
+	
+	/**
+	 * Reserves the bytes if they don't exceed the maximum size.
+	 * 
+	 * @param bytes the number of bytes to reserve.
+	 * 
+	 * @return true if the bytes were reserved, false otherwise.
+	 */
+	public boolean tryReserve(long bytes) {
+		
+		while (true) {
+			
+			long current = used.get();
+			if (current + bytes > maxSize) {
+				return false;
+			}
+			
+			if (used.compareAndSet(current, current + bytes)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Reserves the bytes even if they exceed the maximum size, used for the segments that already exist when a journal 
+	 * is opened.
+	 * 
+	 * @param bytes the number of bytes to reserve.
+	 */
+	public void reserve(long bytes) {
+		used.addAndGet(bytes);
+	}
+	
+	/**
+	 * @param bytes the number of bytes that were reserved and are no longer used.
+	 */
+	public void release(long bytes) {
+		used.addAndGet(-bytes);
+	}
+	
+	/**
+	 * @return the number of bytes reserved.
+	 */
+	public long getUsed() {
+		return used.get();
+	}
+	
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+}
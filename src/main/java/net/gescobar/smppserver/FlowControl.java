@@ -0,0 +1,134 @@
+package net.gescobar.smppserver;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps track of the requests being processed in the whole server. When they reach the high watermark, all the 
+ * sessions stop reading from their channels until the requests go down to the low watermark, so that TCP flow 
+ * control pushes back on the clients instead of accumulating the packets in memory.
+ * 
+ * @author German Escobar
+ */
+class FlowControl {
+	
+	private final Collection<SmppSession> sessions;
+	
+	private final AtomicInteger inFlight = new AtomicInteger();
+	
+	/**
+	 * The number of requests in flight at which the sessions stop reading, 0 to disable.
+	 */
+	private volatile int highWatermark;
+	
+	/**
+	 * The number of requests in flight at which the sessions start reading again.
+	 */
+	private volatile int lowWatermark;
+	
+	private volatile boolean suspended = false;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param sessions the sessions of the server, a live view.
+	 */
+	public FlowControl(Collection<SmppSession> sessions) {
+		this.sessions = sessions;
+	}
+	
+	/**
+	 * Called when a request is passed to the {@link PacketProcessor}.
+	 */
+	public void requestStarted() {
+		
+		int count = inFlight.incrementAndGet();
+		
+		if (!suspended && highWatermark > 0 && count >= highWatermark) {
+			updateSuspended();
+		}
+		
+	}
+	
+	/**
+	 * Called when the response of a request is sent.
+	 */
+	public void requestCompleted() {
+		requestsCompleted(1);
+	}
+	
+	/**
+	 * Called when several requests are no longer in flight, e.g. the unanswered requests of a closed session.
+	 * 
+	 * @param requests the number of requests.
+	 */
+	public void requestsCompleted(int requests) {
+		
+		int count = inFlight.addAndGet(-requests);
+		
+		if (suspended && count <= lowWatermark) {
+			updateSuspended();
+		}
+		
+	}
+	
+	/**
+	 * Helper method. Sets the suspended flag from the current number of requests in flight and updates the sessions. 
+	 * The flag is checked without the lock by the threads that start and complete requests, so it is re-checked 
+	 * after it changes: a thread that completed a request before the flag was set didn't see it set and won't 
+	 * resume the sessions.
+	 */
+	private synchronized void updateSuspended() {
+		
+		while (true) {
+			
+			int count = inFlight.get();
+			boolean suspend = highWatermark > 0 && (suspended ? count > lowWatermark : count >= highWatermark);
+			
+			if (suspend == suspended) {
+				return;
+			}
+			
+			this.suspended = suspend;
+			for (SmppSession session : sessions) {
+				session.updateReadable();
+			}
+		}
+		
+	}
+	
+	/**
+	 * Sets the watermarks.
+	 * 
+	 * @param highWatermark the number of requests in flight at which the sessions stop reading, 0 to disable.
+	 * @param lowWatermark the number of requests in flight at which the sessions start reading again.
+	 */
+	public void setWatermarks(int highWatermark, int lowWatermark) {
+		
+		if (highWatermark > 0 && (lowWatermark < 0 || lowWatermark >= highWatermark)) {
+			throw new IllegalArgumentException("lowWatermark must be between 0 and highWatermark");
+		}
+		
+		this.highWatermark = highWatermark;
+		this.lowWatermark = lowWatermark;
+		
+		updateSuspended();
+	}
+	
+	public int getHighWatermark() {
+		return highWatermark;
+	}
+	
+	public int getLowWatermark() {
+		return lowWatermark;
+	}
+	
+	public boolean isSuspended() {
+		return suspended;
+	}
+	
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+}
@@ -0,0 +1,421 @@
+package net.gescobar.smppserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append only journal of records stored in memory mapped segment files of a fixed size inside a directory. Each 
+ * record is written as a state byte, the length of the data (an int), a CRC32 of the length and the data (an int) 
+ * and the data. The state is written last so that a record that was not completely written is ignored when the 
+ * journal is opened again, and the checksum detects the records whose data was not completely flushed to disk (the 
+ * pages of a mapping can be written in any order); the recovery stops at the first record that doesn't match its 
+ * checksum. Completing a record only changes its state; the segment is deleted when all its records are completed.
+ * 
+ * <p>The segments are reserved in a {@link DiskBudget} that can be shared by several journals.</p>
+ * 
+ * @author German Escobar
+ */
+class Journal {
+	
+	private static final byte STATE_PENDING = 1;
+	
+	private static final byte STATE_COMPLETED = 2;
+	
+	/**
+	 * The state, the length and the checksum.
+	 */
+	private static final int HEADER_SIZE = 9;
+	
+	private static final String SUFFIX = ".seg";
+	
+	private Logger log = LoggerFactory.getLogger(Journal.class);
+	
+	private final File directory;
+	
+	private final int segmentSize;
+	
+	private final DiskBudget budget;
+	
+	private final boolean syncWrites;
+	
+	/**
+	 * The segments that have pending records plus the one being written, ordered by id.
+	 */
+	private final LinkedList<Segment> segments = new LinkedList<Segment>();
+	
+	private long nextSegmentId = 0;
+	
+	/**
+	 * Constructor. Creates a journal with its own {@link DiskBudget}.
+	 * 
+	 * @param directory the directory of the segments, created if it doesn't exist.
+	 * @param segmentSize the size of each segment in bytes.
+	 * @param maxSize the maximum number of bytes of all the segments, at least one segment is allowed.
+	 * @param syncWrites true to flush the segment after each append.
+	 */
+	public Journal(File directory, int segmentSize, long maxSize, boolean syncWrites) {
+		this(directory, segmentSize, new DiskBudget(Math.max(maxSize, segmentSize)), syncWrites);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param directory the directory of the segments, created if it doesn't exist.
+	 * @param segmentSize the size of each segment in bytes.
+	 * @param budget the maximum number of bytes of the segments of this and other journals.
+	 * @param syncWrites true to flush the segment after each append.
+	 */
+	public Journal(File directory, int segmentSize, DiskBudget budget, boolean syncWrites) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.budget = budget;
+		this.syncWrites = syncWrites;
+	}
+	
+	/**
+	 * Opens the existing segments of the directory. Must be called before any other method.
+	 * 
+	 * @return the pending records of the existing segments in the order they were appended.
+	 * @throws IOException if a segment can't be opened.
+	 */
+	public synchronized List<Record> open() throws IOException {
+		
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Couldn't create directory " + directory);
+		}
+		
+		File[] files = directory.listFiles();
+		long[] ids = new long[files.length];
+		int count = 0;
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(SUFFIX)) {
+				ids[count++] = Long.parseLong( name.substring(0, name.length() - SUFFIX.length()) );
+			}
+		}
+		ids = Arrays.copyOf(ids, count);
+		Arrays.sort(ids);
+		
+		List<Record> records = new ArrayList<Record>();
+		for (long id : ids) {
+			
+			Segment segment = new Segment(id, map(id));
+			segment.recover(records);
+			
+			// the existing segments are kept even if they exceed the budget, their records are pending
+			budget.reserve(segmentSize);
+			
+			if (segment.pending > 0) {
+				segments.add(segment);
+			} else {
+				delete(segment);
+			}
+			
+			nextSegmentId = id + 1;
+		}
+		
+		return records;
+	}
+	
+	/**
+	 * Appends a record.
+	 * 
+	 * @param data the data of the record.
+	 * 
+	 * @return the appended record or null if the journal reached its maximum size.
+	 * @throws IOException if a new segment couldn't be created.
+	 */
+	public synchronized Record append(byte[] data) throws IOException {
+		
+		if (data.length + HEADER_SIZE > segmentSize) {
+			throw new IllegalArgumentException("The record of " + data.length + " bytes doesn't fit in a segment");
+		}
+		
+		Segment segment = segments.isEmpty() ? null : segments.getLast();
+		if (segment == null || segment.remaining() < data.length + HEADER_SIZE) {
+			
+			// the segment that was being written can be deleted if it has no pending records
+			if (segment != null && segment.pending == 0) {
+				segments.removeLast();
+				delete(segment);
+			}
+			
+			if (!budget.tryReserve(segmentSize)) {
+				return null;
+			}
+			
+			long id = nextSegmentId++;
+			try {
+				segment = new Segment(id, map(id));
+			} catch (IOException e) {
+				budget.release(segmentSize);
+				throw e;
+			}
+			segments.add(segment);
+		}
+		
+		return segment.append(data);
+	}
+	
+	/**
+	 * @param record a pending record.
+	 * 
+	 * @return the data of the record.
+	 */
+	public synchronized byte[] read(Record record) {
+		
+		if (record.segment.deleted) {
+			throw new IllegalStateException("The record was completed");
+		}
+		
+		ByteBuffer buffer = record.segment.buffer.duplicate();
+		
+		byte[] data = new byte[buffer.getInt(record.offset + 1)];
+		buffer.position(record.offset + HEADER_SIZE);
+		buffer.get(data);
+		
+		return data;
+	}
+	
+	/**
+	 * Marks the record as completed, it will not be returned by {@link #open()} again.
+	 * 
+	 * @param record a pending record.
+	 */
+	public synchronized void complete(Record record) {
+		
+		// the buffer of a deleted segment is unmapped and must not be accessed
+		Segment segment = record.segment;
+		if (segment.deleted || segment.buffer.get(record.offset) != STATE_PENDING) {
+			return;
+		}
+		
+		segment.buffer.put(record.offset, STATE_COMPLETED);
+		segment.pending--;
+		
+		// the segments are not deleted once the journal is closed
+		if (segment.pending == 0 && !segments.isEmpty() && segment != segments.getLast()) {
+			segments.remove(segment);
+			delete(segment);
+		}
+	}
+	
+	/**
+	 * Flushes the segments to disk and releases them from the budget. They are not unmapped because a record could 
+	 * still be completed.
+	 */
+	public synchronized void close() {
+		
+		for (Segment segment : segments) {
+			segment.buffer.force();
+		}
+		budget.release((long) segments.size() * segmentSize);
+		segments.clear();
+	}
+	
+	/**
+	 * @return the number of bytes of the segment files.
+	 */
+	public synchronized long getSize() {
+		return (long) segments.size() * segmentSize;
+	}
+	
+	private MappedByteBuffer map(long id) throws IOException {
+		
+		RandomAccessFile file = new RandomAccessFile(new File(directory, id + SUFFIX), "rw");
+		try {
+			// the mapping remains valid after the file is closed
+			return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		} finally {
+			file.close();
+		}
+	}
+	
+	/**
+	 * Helper method. Unmaps the segment and deletes its file. The mapping would otherwise keep the disk space (and the 
+	 * file on Windows) until the buffer is garbage collected.
+	 * 
+	 * @param segment the segment to delete, it must have no pending records.
+	 */
+	private void delete(Segment segment) {
+		
+		segment.deleted = true;
+		unmap(segment.buffer);
+		budget.release(segmentSize);
+		
+		File file = new File(directory, segment.id + SUFFIX);
+		if (!file.delete()) {
+			log.warn("Couldn't delete segment " + file);
+		}
+	}
+	
+	/**
+	 * Helper method. Calculates the checksum of a record.
+	 * 
+	 * @param length the length of the data.
+	 * @param data the data of the record.
+	 * 
+	 * @return the CRC32 of the length and the data.
+	 */
+	private static int checksum(int length, byte[] data) {
+		
+		CRC32 crc = new CRC32();
+		for (int shift=24; shift >= 0; shift -= 8) {
+			crc.update(length >>> shift);
+		}
+		crc.update(data, 0, data.length);
+		
+		return (int) crc.getValue();
+	}
+	
+	/**
+	 * Helper method. Releases the memory mapping of a buffer, which is not possible with a public API. Uses 
+	 * sun.misc.Unsafe.invokeCleaner in Java 9 or later and the cleaner of the buffer in older versions. If neither 
+	 * is available, the mapping is released when the buffer is garbage collected.
+	 * 
+	 * @param buffer the buffer to unmap, it must not be accessed after this method is called.
+	 */
+	private void unmap(MappedByteBuffer buffer) {
+		
+		try {
+			
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			
+			Method invokeCleaner = null;
+			try {
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			} catch (NoSuchMethodException e) {
+				// Java 8 or older
+			}
+			
+			if (invokeCleaner != null) {
+				Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+				theUnsafe.setAccessible(true);
+				invokeCleaner.invoke(theUnsafe.get(null), buffer);
+				return;
+			}
+			
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+			
+		} catch (Exception e) {
+			log.debug("Couldn't unmap segment: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * A pending record of the journal.
+	 */
+	static class Record {
+		
+		private final Segment segment;
+		
+		private final int offset;
+		
+		private Record(Segment segment, int offset) {
+			this.segment = segment;
+			this.offset = offset;
+		}
+		
+	}
+	
+	private class Segment {
+		
+		private final long id;
+		
+		private final MappedByteBuffer buffer;
+		
+		private int position = 0;
+		
+		private int pending = 0;
+		
+		/**
+		 * True once the segment is deleted and its buffer unmapped.
+		 */
+		private boolean deleted = false;
+		
+		public Segment(long id, MappedByteBuffer buffer) {
+			this.id = id;
+			this.buffer = buffer;
+		}
+		
+		public int remaining() {
+			return segmentSize - position;
+		}
+		
+		public Record append(byte[] data) {
+			
+			int offset = position;
+			
+			buffer.putInt(offset + 1, data.length);
+			buffer.putInt(offset + 5, checksum(data.length, data));
+			ByteBuffer dataBuffer = buffer.duplicate();
+			dataBuffer.position(offset + HEADER_SIZE);
+			dataBuffer.put(data);
+			buffer.put(offset, STATE_PENDING);
+			
+			if (syncWrites) {
+				buffer.force();
+			}
+			
+			position += HEADER_SIZE + data.length;
+			pending++;
+			
+			return new Record(this, offset);
+		}
+		
+		public void recover(List<Record> records) {
+			
+			while (position + HEADER_SIZE <= segmentSize) {
+				
+				byte state = buffer.get(position);
+				if (state != STATE_PENDING && state != STATE_COMPLETED) {
+					break;
+				}
+				
+				int length = buffer.getInt(position + 1);
+				if (length < 0 || position + HEADER_SIZE + length > segmentSize) {
+					break;
+				}
+				
+				// a torn write or the data of a record that was not completely flushed
+				byte[] data = new byte[length];
+				ByteBuffer dataBuffer = buffer.duplicate();
+				dataBuffer.position(position + HEADER_SIZE);
+				dataBuffer.get(data);
+				if (buffer.getInt(position + 5) != checksum(length, data)) {
+					log.warn("Corrupted record at position " + position + " of segment " + id + ", ignoring the rest " 
+							+ "of the segment");
+					break;
+				}
+				
+				if (state == STATE_PENDING) {
+					records.add( new Record(this, position) );
+					pending++;
+				}
+				
+				position += HEADER_SIZE + length;
+			}
+		}
+		
+	}
+
+}
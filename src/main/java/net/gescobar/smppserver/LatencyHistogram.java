@@ -0,0 +1,133 @@
+package net.gescobar.smppserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies in microseconds with logarithmic buckets, each divided in 16 linear sub buckets (as in 
+ * HdrHistogram), so the percentiles have a relative error of about 6% from 1 microsecond to more than an hour using 
+ * a fixed array of counters. Recording a value doesn't allocate or lock.
+ * 
+ * @author German Escobar
+ */
+class LatencyHistogram {
+	
+	private static final int SUB_BUCKET_BITS = 4;
+	
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	
+	/**
+	 * The highest power of 2 that is tracked, bigger values are recorded in the last bucket (2^33 micros are more than 
+	 * two hours).
+	 */
+	private static final int MAX_MAGNITUDE = 33;
+	
+	private static final int BUCKETS = SUB_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	
+	private final StripedCounter sum = new StripedCounter();
+	
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * Records a latency.
+	 * 
+	 * @param micros the latency in microseconds, negative values are recorded as 0.
+	 */
+	public void record(long micros) {
+		
+		if (micros < 0) {
+			micros = 0;
+		}
+		
+		counts.incrementAndGet( index(micros) );
+		sum.add(micros);
+		
+		long current = max.get();
+		while (micros > current && !max.compareAndSet(current, micros)) {
+			current = max.get();
+		}
+	}
+	
+	/**
+	 * @return the number of values recorded, the sum of the buckets.
+	 */
+	public long getCount() {
+		
+		long total = 0;
+		for (int i=0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		
+		return total;
+	}
+	
+	public long getMean() {
+		
+		long n = getCount();
+		return n == 0 ? 0 : sum.sum() / n;
+	}
+	
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * @param percentile a value between 0 and 100.
+	 * 
+	 * @return the upper bound of the bucket that holds the percentile, 0 if nothing was recorded.
+	 */
+	public long getPercentile(double percentile) {
+		
+		long total = 0;
+		long[] snapshot = new long[BUCKETS];
+		for (int i=0; i < BUCKETS; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		
+		if (total == 0) {
+			return 0;
+		}
+		
+		long rank = (long) Math.ceil(total * percentile / 100);
+		long accumulated = 0;
+		for (int i=0; i < BUCKETS; i++) {
+			accumulated += snapshot[i];
+			if (accumulated >= Math.max(rank, 1)) {
+				return Math.min(highestValue(i), max.get());
+			}
+		}
+		
+		return max.get();
+	}
+	
+	static int index(long micros) {
+		
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		
+		int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+		if (magnitude > MAX_MAGNITUDE) {
+			return BUCKETS - 1;
+		}
+		
+		int subBucket = (int) (micros >>> (magnitude - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+		return SUB_BUCKETS + (magnitude - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+	}
+	
+	static long highestValue(int index) {
+		
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		
+		int magnitude = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+		int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+		
+		return ((long) (SUB_BUCKETS + subBucket + 1) << (magnitude - SUB_BUCKET_BITS)) - 1;
+	}
+
+}
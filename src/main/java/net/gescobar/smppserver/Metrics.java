@@ -0,0 +1,169 @@
+package net.gescobar.smppserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the number of requests received and a {@link LatencyHistogram} of the responses for each command id and 
+ * command status, either of a session or of all the sessions of a system id. 
+ * 
+ * <p>There are only a few combinations of command id and status, so the histograms are kept in an array that is 
+ * copied when a new combination appears and searched linearly, which doesn't allocate.</p>
+ * 
+ * <p>The metrics of a session are created without histograms: a server can have thousands of sessions and a 
+ * histogram is about 4KB, so they only count the requests and responses with plain counters (their latencies are 
+ * reported as 0) and the latencies are kept by system id.</p>
+ * 
+ * @author German Escobar
+ */
+class Metrics {
+	
+	/**
+	 * The requests of a system id, received by the I/O threads of its sessions. Null if the histograms are not kept.
+	 */
+	private final StripedCounter requests;
+	
+	/**
+	 * The requests of a session, received by a single I/O thread. Null if the histograms are kept.
+	 */
+	private final AtomicLong sessionRequests;
+	
+	private final boolean histograms;
+	
+	private volatile Entry[] entries = new Entry[0];
+	
+	/**
+	 * Constructor. Creates the metrics of a system id, with a histogram of the latencies of each command id and status.
+	 */
+	public Metrics() {
+		this(true);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param histograms true to keep the histograms of the latencies, false to only count the requests and responses.
+	 */
+	public Metrics(boolean histograms) {
+		
+		this.histograms = histograms;
+		this.requests = histograms ? new StripedCounter() : null;
+		this.sessionRequests = histograms ? null : new AtomicLong();
+	}
+	
+	public void requestReceived() {
+		
+		if (histograms) {
+			requests.increment();
+		} else {
+			sessionRequests.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Records the latency of a response.
+	 * 
+	 * @param commandId the command id of the request.
+	 * @param commandStatus the command status of the response.
+	 * @param micros the time in microseconds from the time the request was received until the response was written.
+	 */
+	public void responseSent(int commandId, int commandStatus, long micros) {
+		
+		Entry entry = entry(commandId, commandStatus);
+		if (histograms) {
+			entry.histogram.record(micros);
+		} else {
+			entry.count.incrementAndGet();
+		}
+	}
+	
+	public long getRequests() {
+		return histograms ? requests.sum() : sessionRequests.get();
+	}
+	
+	/**
+	 * @return the statistics of the responses by command id and command status.
+	 */
+	public List<CommandStats> getStats() {
+		
+		Entry[] current = entries;
+		
+		List<CommandStats> stats = new ArrayList<CommandStats>(current.length);
+		for (Entry entry : current) {
+			LatencyHistogram h = entry.histogram;
+			if (h != null) {
+				stats.add( new CommandStats(entry.commandId, entry.commandStatus, h.getCount(), h.getMean(), 
+						h.getPercentile(50), h.getPercentile(99), h.getPercentile(99.9), h.getMax()) );
+			} else {
+				stats.add( new CommandStats(entry.commandId, entry.commandStatus, entry.count.get(), 0, 0, 0, 0, 0) );
+			}
+		}
+		
+		return stats;
+	}
+	
+	private Entry entry(int commandId, int commandStatus) {
+		
+		Entry entry = find(entries, commandId, commandStatus);
+		if (entry != null) {
+			return entry;
+		}
+		
+		synchronized (this) {
+			
+			Entry[] current = entries;
+			
+			entry = find(current, commandId, commandStatus);
+			if (entry != null) {
+				return entry;
+			}
+			
+			Entry[] copy = new Entry[current.length + 1];
+			System.arraycopy(current, 0, copy, 0, current.length);
+			
+			entry = new Entry(commandId, commandStatus, histograms);
+			copy[current.length] = entry;
+			entries = copy;
+			
+			return entry;
+		}
+	}
+	
+	private static Entry find(Entry[] entries, int commandId, int commandStatus) {
+		
+		for (Entry entry : entries) {
+			if (entry.commandId == commandId && entry.commandStatus == commandStatus) {
+				return entry;
+			}
+		}
+		
+		return null;
+	}
+	
+	private static class Entry {
+		
+		private final int commandId;
+		
+		private final int commandStatus;
+		
+		/**
+		 * The latencies of the responses, null if the histograms are not kept.
+		 */
+		private final LatencyHistogram histogram;
+		
+		/**
+		 * The number of responses, null if the histograms are kept (the histogram counts them).
+		 */
+		private final AtomicLong count;
+		
+		public Entry(int commandId, int commandStatus, boolean histogram) {
+			this.commandId = commandId;
+			this.commandStatus = commandStatus;
+			this.histogram = histogram ? new LatencyHistogram() : null;
+			this.count = histogram ? null : new AtomicLong();
+		}
+		
+	}
+
+}
@@ -0,0 +1,68 @@
+package net.gescobar.smppserver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the {@link Metrics} of each system id of a server.
+ * 
+ * @author German Escobar
+ */
+class MetricsRegistry {
+	
+	private Logger log = LoggerFactory.getLogger(MetricsRegistry.class);
+	
+	private final ConcurrentMap<String,Metrics> metrics = new ConcurrentHashMap<String,Metrics>();
+	
+	/**
+	 * @param systemId the system id, null is treated as an empty string.
+	 * 
+	 * @return the metrics of the system id, created if they don't exist.
+	 */
+	public Metrics get(String systemId) {
+		
+		String key = systemId != null ? systemId : "";
+		
+		Metrics m = metrics.get(key);
+		if (m == null) {
+			Metrics created = new Metrics();
+			m = metrics.putIfAbsent(key, created);
+			if (m == null) {
+				m = created;
+			}
+		}
+		
+		return m;
+	}
+	
+	/**
+	 * @param systemId the system id.
+	 * 
+	 * @return the metrics of the system id or null if no session has been bound with it.
+	 */
+	public Metrics find(String systemId) {
+		return metrics.get(systemId != null ? systemId : "");
+	}
+	
+	/**
+	 * Passes the metrics of each system id to the reporter.
+	 * 
+	 * @param reporter the {@link MetricsReporter} to call.
+	 */
+	public void report(MetricsReporter reporter) {
+		
+		for (Map.Entry<String,Metrics> entry : metrics.entrySet()) {
+			try {
+				Metrics m = entry.getValue();
+				reporter.report(entry.getKey(), m.getRequests(), m.getStats());
+			} catch (Exception e) {
+				log.error("Exception calling the metrics reporter: " + e.getMessage(), e);
+			}
+		}
+	}
+
+}
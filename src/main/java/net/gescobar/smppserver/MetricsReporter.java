@@ -0,0 +1,24 @@
+package net.gescobar.smppserver;
+
+import java.util.List;
+
+/**
+ * Implemented to receive the metrics of the server periodically, for example to send them to a monitoring system. 
+ * See {@link SmppServer#setMetricsReporter(MetricsReporter, long)}.
+ * 
+ * @author German Escobar
+ */
+public interface MetricsReporter {
+
+	/**
+	 * Called periodically for each system id that has been bound to the server. It is called from a thread of the 
+	 * server so it shouldn't block.
+	 * 
+	 * @param systemId the system id of the sessions.
+	 * @param requests the number of requests received from the sessions of the system id since the server started.
+	 * @param stats the statistics of the responses sent to the sessions of the system id since the server started, 
+	 * by command id and command status.
+	 */
+	void report(String systemId, long requests, List<CommandStats> stats);
+	
+}
@@ -0,0 +1,58 @@
+package net.gescobar.smppserver;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link Executor} decorator that keeps track of the number of tasks waiting to be run and the number of tasks 
+ * that were rejected. The counters are passed in the constructor so they can be shared among instances.
+ * 
+ * @author German Escobar
+ */
+class MonitoredExecutor implements Executor {
+	
+	private final Executor executor;
+	
+	private final AtomicInteger queued;
+	
+	private final AtomicLong rejected;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param executor the executor in which the tasks are going to be run.
+	 * @param queued the counter of tasks waiting to be run.
+	 * @param rejected the counter of rejected tasks.
+	 */
+	public MonitoredExecutor(Executor executor, AtomicInteger queued, AtomicLong rejected) {
+		this.executor = executor;
+		this.queued = queued;
+		this.rejected = rejected;
+	}
+
+	@Override
+	public void execute(final Runnable task) {
+		
+		queued.incrementAndGet();
+		
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					queued.decrementAndGet();
+					task.run();
+				}
+				
+			});
+		} catch (RejectedExecutionException e) {
+			queued.decrementAndGet();
+			rejected.incrementAndGet();
+			throw e;
+		}
+		
+	}
+
+}
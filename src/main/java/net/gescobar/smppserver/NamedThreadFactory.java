@@ -0,0 +1,26 @@
+package net.gescobar.smppserver;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates threads named with a prefix and a sequence number, which makes them easy to identify in thread dumps.
+ * 
+ * @author German Escobar
+ */
+class NamedThreadFactory implements ThreadFactory {
+	
+	private final String prefix;
+	
+	private final AtomicInteger sequence = new AtomicInteger();
+	
+	public NamedThreadFactory(String prefix) {
+		this.prefix = prefix;
+	}
+
+	@Override
+	public Thread newThread(Runnable r) {
+		return new Thread(r, prefix + "-" + sequence.incrementAndGet());
+	}
+
+}
@@ -0,0 +1,67 @@
+package net.gescobar.smppserver;
+
+import java.util.concurrent.Executors;
+
+import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioWorkerPool;
+
+/**
+ * The default {@link Transport}, based on the NIO selectors of the JDK (which use epoll on Linux). It has a fixed 
+ * number of boss threads, that accept the connections, and of worker threads, that perform the I/O of all the 
+ * sessions.
+ * 
+ * @author German Escobar
+ */
+public class NioTransport implements Transport {
+	
+	private final int bossThreads;
+	
+	private final int workerThreads;
+	
+	/**
+	 * Constructor. Creates a transport with 1 boss thread and 2 worker threads for each processor.
+	 */
+	public NioTransport() {
+		this(1, Runtime.getRuntime().availableProcessors() * 2);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param bossThreads the number of threads that accept the connections, must be greater than 0.
+	 * @param workerThreads the number of threads that read and write the channels, must be greater than 0.
+	 */
+	public NioTransport(int bossThreads, int workerThreads) {
+		
+		if (bossThreads <= 0) {
+			throw new IllegalArgumentException("bossThreads must be greater than 0");
+		}
+		
+		if (workerThreads <= 0) {
+			throw new IllegalArgumentException("workerThreads must be greater than 0");
+		}
+		
+		this.bossThreads = bossThreads;
+		this.workerThreads = workerThreads;
+	}
+
+	@Override
+	public ServerSocketChannelFactory createChannelFactory() {
+		
+		NioWorkerPool workerPool = new NioWorkerPool(
+				Executors.newCachedThreadPool(new NamedThreadFactory("smpp-worker")), workerThreads);
+		
+		return new NioServerSocketChannelFactory(Executors.newCachedThreadPool(new NamedThreadFactory("smpp-boss")), 
+				bossThreads, workerPool);
+	}
+
+	public int getBossThreads() {
+		return bossThreads;
+	}
+
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+	
+}
@@ -0,0 +1,171 @@
+package net.gescobar.smppserver;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link Executor} that runs the tasks one at a time, in the order they were submitted, using a shared executor. 
+ * Each session has its own instance so that the packets of a session are processed in order while packets of 
+ * different sessions are processed concurrently.
+ * 
+ * <p>The shared executor is expected to reject tasks only when it is shut down (e.g. a pool with an unbounded 
+ * queue), so the tasks that are waiting when it rejects the drainer are discarded, as they will never run.</p>
+ * 
+ * @author German Escobar
+ */
+class OrderedExecutor implements Executor {
+	
+	private Logger log = LoggerFactory.getLogger(OrderedExecutor.class);
+	
+	/**
+	 * The maximum number of tasks that are drained in one run before yielding the thread to other sessions.
+	 */
+	private static final int MAX_TASKS_PER_RUN = 64;
+	
+	/**
+	 * The shared executor in which the tasks are run.
+	 */
+	private final Executor executor;
+	
+	/**
+	 * The maximum number of tasks that can be waiting to be run.
+	 */
+	private final int maxPending;
+	
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	
+	private final AtomicInteger pending = new AtomicInteger();
+	
+	/**
+	 * True if there is a drainer scheduled or running in the shared executor.
+	 */
+	private final AtomicBoolean running = new AtomicBoolean(false);
+	
+	private final Runnable drainer = new Runnable() {
+
+		@Override
+		public void run() {
+			drain();
+		}
+		
+	};
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param executor the shared executor in which the tasks are going to be run.
+	 * @param maxPending the maximum number of tasks that can be waiting to be run.
+	 */
+	public OrderedExecutor(Executor executor, int maxPending) {
+		
+		if (executor == null) {
+			throw new IllegalArgumentException("no executor specified");
+		}
+		
+		this.executor = executor;
+		this.maxPending = maxPending;
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		
+		if (pending.incrementAndGet() > maxPending) {
+			pending.decrementAndGet();
+			throw new RejectedExecutionException("too many pending tasks: " + maxPending);
+		}
+		
+		tasks.offer(task);
+		
+		try {
+			schedule();
+		} catch (RejectedExecutionException e) {
+			
+			// the caller handles the rejection of its task like with any other executor
+			if (tasks.remove(task)) {
+				pending.decrementAndGet();
+			}
+			discardPending(e);
+			
+			throw e;
+		}
+		
+	}
+	
+	private void schedule() {
+		
+		if (running.compareAndSet(false, true)) {
+			try {
+				executor.execute(drainer);
+			} catch (RejectedExecutionException e) {
+				running.set(false);
+				throw e;
+			}
+		}
+		
+	}
+	
+	private void drain() {
+		
+		try {
+			for (int i=0; i < MAX_TASKS_PER_RUN; i++) {
+				
+				Runnable task = tasks.poll();
+				if (task == null) {
+					break;
+				}
+				
+				pending.decrementAndGet();
+				try {
+					task.run();
+				} catch (Exception e) {
+					log.error("Exception running task: " + e.getMessage(), e);
+				}
+			}
+		} finally {
+			running.set(false);
+		}
+		
+		// tasks could have been added after the last poll
+		if (!tasks.isEmpty()) {
+			try {
+				schedule();
+			} catch (RejectedExecutionException e) {
+				discardPending(e);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Helper method. Discards the tasks that are waiting because the shared executor rejected the drainer.
+	 * 
+	 * @param e the exception thrown by the shared executor.
+	 */
+	private void discardPending(RejectedExecutionException e) {
+		
+		int discarded = 0;
+		while (tasks.poll() != null) {
+			pending.decrementAndGet();
+			discarded++;
+		}
+		
+		if (discarded > 0) {
+			log.warn("Discarding " + discarded + " pending tasks, the executor rejected them: " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * @return the number of tasks waiting to be run.
+	 */
+	public int getPending() {
+		return pending.get();
+	}
+
+}
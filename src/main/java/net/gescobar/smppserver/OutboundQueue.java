@@ -0,0 +1,289 @@
+package net.gescobar.smppserver;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.gescobar.smppserver.packet.DeliverSm;
+import net.gescobar.smppserver.packet.SmppRequest;
+import net.gescobar.smppserver.packet.SmppResponse;
+import net.gescobar.smppserver.packet.ch.PacketMapper;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudhopper.smpp.pdu.Pdu;
+
+/**
+ * Stores the deliver_sm packets of a system id in a {@link Journal} and sends them to the receiver sessions of the 
+ * system id when there is one available. A packet is removed from the journal when the client answers with a 
+ * deliver_sm_resp with status OK; otherwise (or if the response doesn't arrive) it is sent again after a backoff 
+ * that doubles with each attempt.
+ * 
+ * <p>The packets are sent by {@link #dispatch()}, which is only called from the dispatcher thread of 
+ * {@link OutboundQueues}.</p>
+ * 
+ * @author German Escobar
+ */
+class OutboundQueue {
+	
+	private Logger log = LoggerFactory.getLogger(OutboundQueue.class);
+	
+	private final String systemId;
+	
+	private final Journal journal;
+	
+	private final OutboundQueueConfiguration configuration;
+	
+	private final SmppServer server;
+	
+	/**
+	 * The packets waiting to be sent, ordered by the time of their next attempt.
+	 */
+	private final PriorityQueue<Entry> ready = new PriorityQueue<Entry>();
+	
+	/**
+	 * The number of packets in the journal, including the ones waiting for a response.
+	 */
+	private final AtomicInteger size = new AtomicInteger();
+	
+	private final AtomicLong discarded = new AtomicLong();
+	
+	/**
+	 * True if a call to {@link #dispatch()} is already scheduled.
+	 */
+	final AtomicBoolean scheduled = new AtomicBoolean();
+	
+	private long sequence = 0;
+	
+	public OutboundQueue(String systemId, Journal journal, OutboundQueueConfiguration configuration, 
+			SmppServer server) {
+		
+		this.systemId = systemId;
+		this.journal = journal;
+		this.configuration = configuration;
+		this.server = server;
+	}
+	
+	/**
+	 * Opens the journal and queues the packets that were pending.
+	 * 
+	 * @throws IOException if the journal can't be opened.
+	 */
+	public void open() throws IOException {
+		
+		List<Journal.Record> records = journal.open();
+		
+		synchronized (this) {
+			for (Journal.Record record : records) {
+				ready.add( new Entry(record, sequence++) );
+			}
+		}
+		size.addAndGet(records.size());
+		
+		if (!records.isEmpty()) {
+			log.info("[" + systemId + "] recovered " + records.size() + " queued deliver_sm");
+		}
+	}
+	
+	/**
+	 * Stores the packet in the journal and queues it.
+	 * 
+	 * @param deliverSm the packet to queue.
+	 * 
+	 * @return true if the packet was queued, false if the journal reached its maximum size.
+	 * @throws IOException if the packet couldn't be stored.
+	 */
+	public boolean offer(DeliverSm deliverSm) throws IOException {
+		
+		Journal.Record record = journal.append( encode(deliverSm) );
+		if (record == null) {
+			return false;
+		}
+		
+		synchronized (this) {
+			ready.add( new Entry(record, sequence++) );
+		}
+		size.incrementAndGet();
+		
+		return true;
+	}
+	
+	/**
+	 * Sends the packets whose next attempt is due while there is a receiver session with room in its send window.
+	 */
+	public void dispatch() {
+		
+		long now = System.currentTimeMillis();
+		
+		while (true) {
+			
+			SmppSession session = server.selectReceiverSession(systemId);
+			if (session == null) {
+				return;
+			}
+			
+			Entry entry;
+			synchronized (this) {
+				entry = ready.peek();
+				if (entry == null || entry.nextAttempt > now) {
+					return;
+				}
+				ready.poll();
+			}
+			
+			try {
+				DeliverSm deliverSm = decode( journal.read(entry.record) );
+				// the dispatcher thread serves all the queues, it doesn't wait for room in the window
+				session.sendRequestAsync(deliverSm, configuration.getResponseTimeout(), new EntryListener(entry), 0);
+			} catch (Exception e) {
+				log.warn("[" + systemId + "] couldn't send queued deliver_sm: " + e.getMessage());
+				retry(entry);
+			}
+		}
+	}
+	
+	/**
+	 * @return the time in milliseconds of the next attempt, -1 if there are no packets waiting to be sent.
+	 */
+	public synchronized long getNextAttempt() {
+		
+		Entry entry = ready.peek();
+		return entry != null ? entry.nextAttempt : -1;
+	}
+	
+	public int getSize() {
+		return size.get();
+	}
+	
+	public long getDiscarded() {
+		return discarded.get();
+	}
+	
+	public void close() {
+		journal.close();
+	}
+	
+	private void delivered(Entry entry) {
+		
+		journal.complete(entry.record);
+		size.decrementAndGet();
+	}
+	
+	private void retry(Entry entry) {
+		
+		entry.attempts++;
+		
+		int maxAttempts = configuration.getMaxAttempts();
+		if (maxAttempts > 0 && entry.attempts >= maxAttempts) {
+			log.warn("[" + systemId + "] discarding queued deliver_sm after " + entry.attempts + " attempts");
+			discarded.incrementAndGet();
+			delivered(entry);
+			return;
+		}
+		
+		long backoff = configuration.getInitialBackoff() << Math.min(entry.attempts - 1, 30);
+		if (backoff < 0 || backoff > configuration.getMaxBackoff()) {
+			backoff = configuration.getMaxBackoff();
+		}
+		entry.nextAttempt = System.currentTimeMillis() + backoff;
+		
+		synchronized (this) {
+			ready.add(entry);
+		}
+	}
+	
+	private static byte[] encode(DeliverSm deliverSm) throws IOException {
+		
+		try {
+			Pdu pdu = PacketMapper.map(deliverSm);
+			pdu.setSequenceNumber(0);
+			
+			ChannelBuffer buffer = SmppSession.TRANSCODER.encode(pdu);
+			
+			byte[] data = new byte[buffer.readableBytes()];
+			buffer.readBytes(data);
+			
+			return data;
+		} catch (Exception e) {
+			throw new IOException("Couldn't encode deliver_sm: " + e.getMessage(), e);
+		}
+	}
+	
+	private static DeliverSm decode(byte[] data) throws Exception {
+		
+		Pdu pdu = SmppSession.TRANSCODER.decode( ChannelBuffers.wrappedBuffer(data) );
+		
+		DeliverSm deliverSm = (DeliverSm) PacketMapper.map(pdu);
+		deliverSm.setSequenceNumber(-1);
+		
+		return deliverSm;
+	}
+	
+	/**
+	 * A packet of the journal that is waiting to be sent or for its response.
+	 */
+	private static class Entry implements Comparable<Entry> {
+		
+		private final Journal.Record record;
+		
+		/**
+		 * Keeps the order in which the packets were queued when their next attempt is the same.
+		 */
+		private final long sequence;
+		
+		private int attempts = 0;
+		
+		private long nextAttempt = 0;
+		
+		public Entry(Journal.Record record, long sequence) {
+			this.record = record;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(Entry o) {
+			
+			if (nextAttempt != o.nextAttempt) {
+				return nextAttempt < o.nextAttempt ? -1 : 1;
+			}
+			
+			return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+		}
+		
+	}
+	
+	/**
+	 * Removes the packet from the journal when it is accepted by the client or schedules a retry otherwise.
+	 */
+	private class EntryListener implements SmppResponseListener {
+		
+		private final Entry entry;
+		
+		public EntryListener(Entry entry) {
+			this.entry = entry;
+		}
+
+		@Override
+		public void responseReceived(SmppRequest request, SmppResponse response) {
+			
+			if (response.getCommandStatus() == Response.OK.getCommandStatus()) {
+				delivered(entry);
+			} else {
+				retry(entry);
+			}
+		}
+
+		@Override
+		public void requestFailed(SmppRequest request, Throwable cause) {
+			retry(entry);
+		}
+		
+	}
+
+}
@@ -0,0 +1,194 @@
+package net.gescobar.smppserver;
+
+import java.io.File;
+
+/**
+ * Holds the configuration of the outbound queues of the server, which store the deliver_sm packets of each system id 
+ * in a local journal until they are accepted by a receiver session of the client. See 
+ * {@link SmppServer#setOutboundQueueConfiguration(OutboundQueueConfiguration)}.
+ * 
+ * <p>The journal of each system id is a sequence of memory mapped segment files that are only appended to. A segment 
+ * is deleted once all its packets are delivered (or discarded after the maximum number of attempts), and no packet is 
+ * queued if the segments of all the system ids would exceed the maximum size.</p>
+ * 
+ * @author German Escobar
+ */
+public class OutboundQueueConfiguration {
+	
+	/**
+	 * The directory in which the journals are stored, one sub directory for each system id.
+	 */
+	private File directory;
+	
+	/**
+	 * The size in bytes of each segment file.
+	 */
+	private int segmentSize = 4 * 1024 * 1024;
+	
+	/**
+	 * The maximum number of bytes used by the segments of all the system ids, at least one segment is allowed.
+	 */
+	private long maxSize = 256L * 1024 * 1024;
+	
+	/**
+	 * If true, the segment is flushed to disk after each packet is queued, otherwise the operating system decides 
+	 * when to write it (which survives a crash of the process but not of the machine).
+	 */
+	private boolean syncWrites = false;
+	
+	/**
+	 * The time in milliseconds to wait for the deliver_sm_resp.
+	 */
+	private long responseTimeout = 30000;
+	
+	/**
+	 * The time in milliseconds to wait before the first retry, doubled for each attempt up to the max backoff.
+	 */
+	private long initialBackoff = 1000;
+	
+	private long maxBackoff = 5 * 60 * 1000;
+	
+	/**
+	 * The number of attempts after which a packet is discarded, 0 to retry forever.
+	 */
+	private int maxAttempts = 0;
+	
+	public OutboundQueueConfiguration(File directory) {
+		setDirectory(directory);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public void setDirectory(File directory) {
+		
+		if (directory == null) {
+			throw new IllegalArgumentException("directory can't be null");
+		}
+		
+		this.directory = directory;
+	}
+
+	public int getSegmentSize() {
+		return segmentSize;
+	}
+
+	public void setSegmentSize(int segmentSize) {
+		
+		if (segmentSize <= 0) {
+			throw new IllegalArgumentException("segmentSize must be greater than 0");
+		}
+		
+		this.segmentSize = segmentSize;
+	}
+	
+	public OutboundQueueConfiguration withSegmentSize(int segmentSize) {
+		setSegmentSize(segmentSize);
+		return this;
+	}
+
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	public void setMaxSize(long maxSize) {
+		
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("maxSize must be greater than 0");
+		}
+		
+		this.maxSize = maxSize;
+	}
+	
+	public OutboundQueueConfiguration withMaxSize(long maxSize) {
+		setMaxSize(maxSize);
+		return this;
+	}
+
+	public boolean isSyncWrites() {
+		return syncWrites;
+	}
+
+	public void setSyncWrites(boolean syncWrites) {
+		this.syncWrites = syncWrites;
+	}
+	
+	public OutboundQueueConfiguration withSyncWrites(boolean syncWrites) {
+		setSyncWrites(syncWrites);
+		return this;
+	}
+
+	public long getResponseTimeout() {
+		return responseTimeout;
+	}
+
+	public void setResponseTimeout(long responseTimeout) {
+		
+		if (responseTimeout <= 0) {
+			throw new IllegalArgumentException("responseTimeout must be greater than 0");
+		}
+		
+		this.responseTimeout = responseTimeout;
+	}
+	
+	public OutboundQueueConfiguration withResponseTimeout(long responseTimeout) {
+		setResponseTimeout(responseTimeout);
+		return this;
+	}
+
+	public long getInitialBackoff() {
+		return initialBackoff;
+	}
+
+	public void setInitialBackoff(long initialBackoff) {
+		
+		if (initialBackoff < 0) {
+			throw new IllegalArgumentException("initialBackoff can't be negative");
+		}
+		
+		this.initialBackoff = initialBackoff;
+	}
+	
+	public OutboundQueueConfiguration withInitialBackoff(long initialBackoff) {
+		setInitialBackoff(initialBackoff);
+		return this;
+	}
+
+	public long getMaxBackoff() {
+		return maxBackoff;
+	}
+
+	public void setMaxBackoff(long maxBackoff) {
+		
+		if (maxBackoff < 0) {
+			throw new IllegalArgumentException("maxBackoff can't be negative");
+		}
+		
+		this.maxBackoff = maxBackoff;
+	}
+	
+	public OutboundQueueConfiguration withMaxBackoff(long maxBackoff) {
+		setMaxBackoff(maxBackoff);
+		return this;
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	public void setMaxAttempts(int maxAttempts) {
+		
+		if (maxAttempts < 0) {
+			throw new IllegalArgumentException("maxAttempts can't be negative");
+		}
+		
+		this.maxAttempts = maxAttempts;
+	}
+	
+	public OutboundQueueConfiguration withMaxAttempts(int maxAttempts) {
+		setMaxAttempts(maxAttempts);
+		return this;
+	}
+	
+}
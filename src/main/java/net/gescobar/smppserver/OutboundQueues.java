@@ -0,0 +1,255 @@
+package net.gescobar.smppserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.gescobar.smppserver.packet.DeliverSm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds the {@link OutboundQueue} of each system id and the thread that sends their packets. The queues are 
+ * dispatched periodically (to retry the packets whose backoff expired) and as soon as a packet is queued or a 
+ * receiver session of the system id is bound.
+ * 
+ * @author German Escobar
+ */
+class OutboundQueues {
+	
+	/**
+	 * The time in milliseconds between two dispatches of all the queues.
+	 */
+	private static final long DISPATCH_INTERVAL = 100;
+	
+	private static final String DIRECTORY_PREFIX = "q-";
+	
+	private Logger log = LoggerFactory.getLogger(OutboundQueues.class);
+	
+	private final OutboundQueueConfiguration configuration;
+	
+	private final SmppServer server;
+	
+	private final ConcurrentMap<String,OutboundQueue> queues = new ConcurrentHashMap<String,OutboundQueue>();
+	
+	/**
+	 * The maximum size of the journals of all the system ids.
+	 */
+	private final DiskBudget budget;
+	
+	private ScheduledExecutorService dispatcher;
+	
+	public OutboundQueues(OutboundQueueConfiguration configuration, SmppServer server) {
+		this.configuration = configuration;
+		this.server = server;
+		this.budget = new DiskBudget( Math.max(configuration.getMaxSize(), configuration.getSegmentSize()) );
+	}
+	
+	/**
+	 * Opens the queues of the system ids that have a journal in the directory and starts the dispatcher thread.
+	 * 
+	 * @throws IOException if a journal can't be opened.
+	 */
+	public void start() throws IOException {
+		
+		File directory = configuration.getDirectory();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Couldn't create directory " + directory);
+		}
+		
+		for (File file : directory.listFiles()) {
+			if (file.isDirectory() && file.getName().startsWith(DIRECTORY_PREFIX)) {
+				getQueue( URLDecoder.decode(file.getName().substring(DIRECTORY_PREFIX.length()), "UTF-8") );
+			}
+		}
+		
+		dispatcher = Executors.newSingleThreadScheduledExecutor();
+		dispatcher.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				for (OutboundQueue queue : queues.values()) {
+					dispatch(queue);
+				}
+			}
+			
+		}, DISPATCH_INTERVAL, DISPATCH_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Stops the dispatcher thread and closes the journals. The packets waiting for a response remain in the journal 
+	 * and are sent again when the queues are started.
+	 */
+	public void stop() {
+		
+		if (dispatcher != null) {
+			dispatcher.shutdownNow();
+			dispatcher = null;
+		}
+		
+		for (OutboundQueue queue : queues.values()) {
+			queue.close();
+		}
+		queues.clear();
+	}
+	
+	/**
+	 * Stores a packet in the queue of the system id and sends it as soon as possible.
+	 * 
+	 * @param systemId the system id to which the packet is sent.
+	 * @param deliverSm the packet.
+	 * 
+	 * @return true if the packet was queued, false if the queues reached their maximum size.
+	 * @throws IOException if the packet couldn't be stored.
+	 */
+	public boolean offer(String systemId, DeliverSm deliverSm) throws IOException {
+		
+		// no journal is created for a new system id if there is no room for its first segment
+		if (!queues.containsKey(key(systemId)) 
+				&& budget.getUsed() + configuration.getSegmentSize() > budget.getMaxSize()) {
+			return false;
+		}
+		
+		OutboundQueue queue = getQueue(systemId);
+		if (!queue.offer(deliverSm)) {
+			return false;
+		}
+		
+		signal(queue);
+		
+		return true;
+	}
+	
+	/**
+	 * Sends the packets of the system id (if it has a queue) as soon as possible, e.g. when a session is bound.
+	 * 
+	 * @param systemId the system id.
+	 */
+	public void signal(String systemId) {
+		
+		OutboundQueue queue = queues.get(key(systemId));
+		if (queue != null) {
+			signal(queue);
+		}
+	}
+	
+	/**
+	 * @return the number of packets in all the queues, including the ones waiting for a response.
+	 */
+	public int getSize() {
+		
+		int size = 0;
+		for (OutboundQueue queue : queues.values()) {
+			size += queue.getSize();
+		}
+		
+		return size;
+	}
+	
+	/**
+	 * @return the number of bytes of the journals of all the queues.
+	 */
+	public long getJournalSize() {
+		return budget.getUsed();
+	}
+	
+	/**
+	 * @return the number of packets discarded after the maximum number of attempts.
+	 */
+	public long getDiscarded() {
+		
+		long discarded = 0;
+		for (OutboundQueue queue : queues.values()) {
+			discarded += queue.getDiscarded();
+		}
+		
+		return discarded;
+	}
+	
+	/**
+	 * @param systemId the system id.
+	 * 
+	 * @return the number of packets in the queue of the system id.
+	 */
+	public int getSize(String systemId) {
+		
+		OutboundQueue queue = queues.get(key(systemId));
+		return queue != null ? queue.getSize() : 0;
+	}
+	
+	private void signal(final OutboundQueue queue) {
+		
+		ScheduledExecutorService executor = dispatcher;
+		if (executor == null || !queue.scheduled.compareAndSet(false, true)) {
+			return;
+		}
+		
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					queue.scheduled.set(false);
+					dispatch(queue);
+				}
+				
+			});
+		} catch (Exception e) {
+			// the dispatcher was stopped
+			queue.scheduled.set(false);
+		}
+	}
+	
+	private void dispatch(OutboundQueue queue) {
+		
+		try {
+			queue.dispatch();
+		} catch (Exception e) {
+			log.error("Exception dispatching outbound queue: " + e.getMessage(), e);
+		}
+	}
+	
+	private OutboundQueue getQueue(String systemId) throws IOException {
+		
+		String key = key(systemId);
+		
+		OutboundQueue queue = queues.get(key);
+		if (queue != null) {
+			return queue;
+		}
+		
+		synchronized (this) {
+			
+			queue = queues.get(key);
+			if (queue != null) {
+				return queue;
+			}
+			
+			Journal journal = new Journal(new File(configuration.getDirectory(), DIRECTORY_PREFIX + encode(key)), 
+					configuration.getSegmentSize(), budget, configuration.isSyncWrites());
+			
+			queue = new OutboundQueue(key, journal, configuration, server);
+			queue.open();
+			queues.put(key, queue);
+			
+			return queue;
+		}
+	}
+	
+	private String key(String systemId) {
+		return systemId != null ? systemId : "";
+	}
+	
+	private String encode(String systemId) throws UnsupportedEncodingException {
+		return URLEncoder.encode(systemId, "UTF-8");
+	}
+
+}
@@ -0,0 +1,110 @@
+package net.gescobar.smppserver;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.cloudhopper.smpp.pdu.Pdu;
+
+/**
+ * Logs the PDUs received and sent by the sessions of a server. Tracing is off by default and can be enabled for the 
+ * PDUs of some system ids and/or for a sample of all the PDUs. The PDUs are logged at INFO level to the 
+ * <code>net.gescobar.smppserver.PduTracer</code> logger, so that they can be sent to their own appender.
+ * 
+ * <p>When tracing is off, {@link #isTraced(String)} only reads a volatile field, so the sessions can call it for 
+ * every PDU without allocating anything.</p>
+ * 
+ * @author German Escobar
+ */
+class PduTracer {
+	
+	private Logger log = LoggerFactory.getLogger(PduTracer.class);
+	
+	/**
+	 * The system ids whose PDUs are always traced.
+	 */
+	private final Set<String> systemIds = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+	
+	/**
+	 * One of every <code>sampleRate</code> PDUs is traced, 0 to disable sampling.
+	 */
+	private volatile int sampleRate = 0;
+	
+	/**
+	 * True if there is a system id traced or the sample rate is greater than 0.
+	 */
+	private volatile boolean enabled = false;
+	
+	private final AtomicLong counter = new AtomicLong();
+	
+	/**
+	 * @param systemId the system id of the session, null if the session is not bound.
+	 * 
+	 * @return true if the PDU should be passed to {@link #trace(String, String, Pdu)}, false otherwise.
+	 */
+	public boolean isTraced(String systemId) {
+		
+		if (!enabled || !log.isInfoEnabled()) {
+			return false;
+		}
+		
+		if (systemId != null && systemIds.contains(systemId)) {
+			return true;
+		}
+		
+		int rate = sampleRate;
+		return rate > 0 && counter.incrementAndGet() % rate == 0;
+	}
+	
+	/**
+	 * Logs the PDU.
+	 * 
+	 * @param logHead the log prefix of the session.
+	 * @param direction "in" or "out".
+	 * @param pdu the PDU to log.
+	 */
+	public void trace(String logHead, String direction, Pdu pdu) {
+		log.info("{}{} {}", new Object[] { logHead, direction, pdu });
+	}
+	
+	public void addSystemId(String systemId) {
+		systemIds.add(systemId);
+		updateEnabled();
+	}
+	
+	public void removeSystemId(String systemId) {
+		systemIds.remove(systemId);
+		updateEnabled();
+	}
+	
+	public Set<String> getSystemIds() {
+		return Collections.unmodifiableSet(systemIds);
+	}
+	
+	/**
+	 * @param sampleRate one of every <code>sampleRate</code> PDUs is traced, 1 to trace all of them and 0 to disable 
+	 * sampling.
+	 */
+	public void setSampleRate(int sampleRate) {
+		
+		if (sampleRate < 0) {
+			throw new IllegalArgumentException("sampleRate can't be negative");
+		}
+		
+		this.sampleRate = sampleRate;
+		updateEnabled();
+	}
+	
+	public int getSampleRate() {
+		return sampleRate;
+	}
+	
+	private synchronized void updateEnabled() {
+		enabled = sampleRate > 0 || !systemIds.isEmpty();
+	}
+
+}
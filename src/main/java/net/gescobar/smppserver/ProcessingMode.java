@@ -0,0 +1,28 @@
+package net.gescobar.smppserver;
+
+/**
+ * Possible values for the way in which the received packets are passed to the {@link PacketProcessor}.
+ * 
+ * @author German Escobar
+ */
+public enum ProcessingMode {
+
+	/**
+	 * The {@link PacketProcessor} is called directly from the I/O thread that decoded the packet. This is the default 
+	 * and only makes sense for processors that never block.
+	 */
+	DIRECT,
+	
+	/**
+	 * The packets are processed in a bounded thread pool shared by all the sessions. Packets of the same session can 
+	 * be processed concurrently and, therefore, out of order.
+	 */
+	POOLED,
+	
+	/**
+	 * The packets are processed in a thread pool shared by all the sessions but the packets of the same session are 
+	 * processed one at a time, in the order they were received.
+	 */
+	ORDERED;
+	
+}
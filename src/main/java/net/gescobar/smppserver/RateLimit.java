@@ -0,0 +1,48 @@
+package net.gescobar.smppserver;
+
+/**
+ * Holds the maximum rate at which a client can send messages: the sustained number of messages per second and the 
+ * number of messages that can be sent in a burst above that rate.
+ * 
+ * @author German Escobar
+ */
+public class RateLimit {
+	
+	private final int tps;
+	
+	private final int burst;
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param tps the number of messages per second, must be greater than 0.
+	 * @param burst the number of messages that can be accepted at once, must be greater than 0.
+	 */
+	public RateLimit(int tps, int burst) {
+		
+		if (tps <= 0) {
+			throw new IllegalArgumentException("tps must be greater than 0");
+		}
+		
+		if (burst <= 0) {
+			throw new IllegalArgumentException("burst must be greater than 0");
+		}
+		
+		this.tps = tps;
+		this.burst = burst;
+	}
+
+	public int getTps() {
+		return tps;
+	}
+
+	public int getBurst() {
+		return burst;
+	}
+	
+	@Override
+	public String toString() {
+		return tps + " tps (burst " + burst + ")";
+	}
+	
+}
@@ -0,0 +1,58 @@
+package net.gescobar.smppserver;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses the session to which a request is sent among the receiver sessions of a system id: the one with more free 
+ * slots in its send window. Sessions with the same number of free slots (e.g. when no request is waiting for a 
+ * response) are chosen in round robin. Sessions that are not bound or whose window is full are skipped.
+ * 
+ * @author German Escobar
+ */
+class ReceiverSelector {
+	
+	private final AtomicInteger next = new AtomicInteger();
+	
+	/**
+	 * @param sessions the sessions bound as receivers or transceivers.
+	 * 
+	 * @return the chosen session or null if none is available.
+	 */
+	public SmppSession select(List<SmppSession> sessions) {
+		
+		int size = sessions.size();
+		if (size == 0) {
+			return null;
+		}
+		
+		int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+		
+		SmppSession selected = null;
+		int selectedFree = 0;
+		
+		for (int i=0; i < size; i++) {
+			
+			SmppSession session;
+			try {
+				session = sessions.get( (start + i) % size );
+			} catch (IndexOutOfBoundsException e) {
+				// a session was removed while iterating
+				break;
+			}
+			
+			if (!session.isBound()) {
+				continue;
+			}
+			
+			int free = session.getWindowSize() - session.getWindowFill();
+			if (free > selectedFree) {
+				selected = session;
+				selectedFree = free;
+			}
+		}
+		
+		return selected;
+	}
+
+}
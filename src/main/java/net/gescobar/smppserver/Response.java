@@ -4,64 +4,137 @@ package net.gescobar.smppserver;
  * Holds the values defined in the command status of the SMPP specification and other information that is used to build
  * the response that is sent to the client (e.g. the messageId).
  * 
+ * <p>Instances are immutable so they can be shared among threads: {@link #withMessageId(String)} returns a new 
+ * instance instead of modifying the constant, which is the only allocation on the common "OK with ID" path.</p>
+ * 
  * @author German Escobar
  */
-public enum Response {
+public final class Response {
 
-	OK(0),
-	INVALID_MESSAGE_LEN(1),
-	INVALID_COMMAND_LEN(2),
-	INVALID_COMMAND_ID(3),
-	INVALID_BIND_STATUS(4),
-	ALREADY_BOUND(5),
-	INVALID_PRIORITY_FLAG(6),
-	INVALID_REGISTERED_DELIVERY_FLAG(7),
-	SYSTEM_ERROR(8),
-	INVALID_SOURCE_ADDRESS(0xa),
-	INVALID_DEST_ADDRESS(0xb),
-	INVALID_MESSAGE_ID(0xc),
-	BIND_FAILED(0xd),
-	INVALID_PASSWORD(0xe),
-	INVALID_SYSTEM_ID(0xf),
-	CANCEL_SM_FAILED(0x11),
-	REPLACE_SM_FAILED(0x13),
-	MESSAGE_QUEUE_FULL(0x14),
-	INVALID_SERVICE_TYPE(0x15),
-	INVALID_NUMBER_OF_DESTINATIONS(0x33),
-	INVALID_DISTRIBUTION_LIST(0x34),
-	INVALID_DESTINATION_FLAG(0x40),
-	INVALID_SUBMIT_WITH_REPLACE(0x42),
-	INVALID_ESM_CLASS(0x43),
-	SUBMIT_TO_DISTRIBUTION_LIST_FAILED(0x44),
-	SUBMIT_FAILED(0x45),
-	INVALID_SOURCE_TON(0x48),
-	INVALID_SOURCE_NPI(0x49),
-	INVALID_DESTINATION_TON(0x50),
-	INVALID_DESTINATION_NPI(0x51),
-	INVALID_SYSTEM_TYPE(0x53),
-	INVALID_REPLACE_IF_PRESENT_FLAG(0x54),
-	INVALID_NUMBER_OF_MESSAGES(0x55),
-	THROTTLING_ERROR(0x58),
-	INVALID_SCHEDULED_DELIVERY_TIME(0x61),
-	INVALID_EXPIRY_TIME(0x62),
-	INVALID_PREDEFINED_MESSAGE(0x63),
-	RECEIVER_TEMPORARY_ERROR(0x64),
-	RECEIVER_PERMANENT_ERROR(0x65),
-	RECEIVER_REJECT_MESSAGE(0x66),
-	QUERY_SM_FAILED(0x67),
-	INVALID_OPTIONAL_PARAMETERS(0xc0),
-	OPTIONAL_PARAMETER_NOT_ALLOWED(0xc1),
-	INVALID_PARAMETER_LENGTH(0xc2),
-	MISSING_EXPECTED_PARAMETER(0xc3),
-	INVALID_PARAMETER_VALUE(0xc4),
-	DELIVERY_FAILED(0xfe);
+	public static final Response OK = new Response(0, "OK");
+	public static final Response INVALID_MESSAGE_LEN = new Response(1, "INVALID_MESSAGE_LEN");
+	public static final Response INVALID_COMMAND_LEN = new Response(2, "INVALID_COMMAND_LEN");
+	public static final Response INVALID_COMMAND_ID = new Response(3, "INVALID_COMMAND_ID");
+	public static final Response INVALID_BIND_STATUS = new Response(4, "INVALID_BIND_STATUS");
+	public static final Response ALREADY_BOUND = new Response(5, "ALREADY_BOUND");
+	public static final Response INVALID_PRIORITY_FLAG = new Response(6, "INVALID_PRIORITY_FLAG");
+	public static final Response INVALID_REGISTERED_DELIVERY_FLAG = new Response(7, "INVALID_REGISTERED_DELIVERY_FLAG");
+	public static final Response SYSTEM_ERROR = new Response(8, "SYSTEM_ERROR");
+	public static final Response INVALID_SOURCE_ADDRESS = new Response(0xa, "INVALID_SOURCE_ADDRESS");
+	public static final Response INVALID_DEST_ADDRESS = new Response(0xb, "INVALID_DEST_ADDRESS");
+	public static final Response INVALID_MESSAGE_ID = new Response(0xc, "INVALID_MESSAGE_ID");
+	public static final Response BIND_FAILED = new Response(0xd, "BIND_FAILED");
+	public static final Response INVALID_PASSWORD = new Response(0xe, "INVALID_PASSWORD");
+	public static final Response INVALID_SYSTEM_ID = new Response(0xf, "INVALID_SYSTEM_ID");
+	public static final Response CANCEL_SM_FAILED = new Response(0x11, "CANCEL_SM_FAILED");
+	public static final Response REPLACE_SM_FAILED = new Response(0x13, "REPLACE_SM_FAILED");
+	public static final Response MESSAGE_QUEUE_FULL = new Response(0x14, "MESSAGE_QUEUE_FULL");
+	public static final Response INVALID_SERVICE_TYPE = new Response(0x15, "INVALID_SERVICE_TYPE");
+	public static final Response INVALID_NUMBER_OF_DESTINATIONS = new Response(0x33, "INVALID_NUMBER_OF_DESTINATIONS");
+	public static final Response INVALID_DISTRIBUTION_LIST = new Response(0x34, "INVALID_DISTRIBUTION_LIST");
+	public static final Response INVALID_DESTINATION_FLAG = new Response(0x40, "INVALID_DESTINATION_FLAG");
+	public static final Response INVALID_SUBMIT_WITH_REPLACE = new Response(0x42, "INVALID_SUBMIT_WITH_REPLACE");
+	public static final Response INVALID_ESM_CLASS = new Response(0x43, "INVALID_ESM_CLASS");
+	public static final Response SUBMIT_TO_DISTRIBUTION_LIST_FAILED = new Response(0x44, "SUBMIT_TO_DISTRIBUTION_LIST_FAILED");
+	public static final Response SUBMIT_FAILED = new Response(0x45, "SUBMIT_FAILED");
+	public static final Response INVALID_SOURCE_TON = new Response(0x48, "INVALID_SOURCE_TON");
+	public static final Response INVALID_SOURCE_NPI = new Response(0x49, "INVALID_SOURCE_NPI");
+	public static final Response INVALID_DESTINATION_TON = new Response(0x50, "INVALID_DESTINATION_TON");
+	public static final Response INVALID_DESTINATION_NPI = new Response(0x51, "INVALID_DESTINATION_NPI");
+	public static final Response INVALID_SYSTEM_TYPE = new Response(0x53, "INVALID_SYSTEM_TYPE");
+	public static final Response INVALID_REPLACE_IF_PRESENT_FLAG = new Response(0x54, "INVALID_REPLACE_IF_PRESENT_FLAG");
+	public static final Response INVALID_NUMBER_OF_MESSAGES = new Response(0x55, "INVALID_NUMBER_OF_MESSAGES");
+	public static final Response THROTTLING_ERROR = new Response(0x58, "THROTTLING_ERROR");
+	public static final Response INVALID_SCHEDULED_DELIVERY_TIME = new Response(0x61, "INVALID_SCHEDULED_DELIVERY_TIME");
+	public static final Response INVALID_EXPIRY_TIME = new Response(0x62, "INVALID_EXPIRY_TIME");
+	public static final Response INVALID_PREDEFINED_MESSAGE = new Response(0x63, "INVALID_PREDEFINED_MESSAGE");
+	public static final Response RECEIVER_TEMPORARY_ERROR = new Response(0x64, "RECEIVER_TEMPORARY_ERROR");
+	public static final Response RECEIVER_PERMANENT_ERROR = new Response(0x65, "RECEIVER_PERMANENT_ERROR");
+	public static final Response RECEIVER_REJECT_MESSAGE = new Response(0x66, "RECEIVER_REJECT_MESSAGE");
+	public static final Response QUERY_SM_FAILED = new Response(0x67, "QUERY_SM_FAILED");
+	public static final Response INVALID_OPTIONAL_PARAMETERS = new Response(0xc0, "INVALID_OPTIONAL_PARAMETERS");
+	public static final Response OPTIONAL_PARAMETER_NOT_ALLOWED = new Response(0xc1, "OPTIONAL_PARAMETER_NOT_ALLOWED");
+	public static final Response INVALID_PARAMETER_LENGTH = new Response(0xc2, "INVALID_PARAMETER_LENGTH");
+	public static final Response MISSING_EXPECTED_PARAMETER = new Response(0xc3, "MISSING_EXPECTED_PARAMETER");
+	public static final Response INVALID_PARAMETER_VALUE = new Response(0xc4, "INVALID_PARAMETER_VALUE");
+	public static final Response DELIVERY_FAILED = new Response(0xfe, "DELIVERY_FAILED");
+	
+	private static final Response[] VALUES = {
+		OK, INVALID_MESSAGE_LEN, INVALID_COMMAND_LEN, INVALID_COMMAND_ID, INVALID_BIND_STATUS, ALREADY_BOUND,
+		INVALID_PRIORITY_FLAG, INVALID_REGISTERED_DELIVERY_FLAG, SYSTEM_ERROR, INVALID_SOURCE_ADDRESS,
+		INVALID_DEST_ADDRESS, INVALID_MESSAGE_ID, BIND_FAILED, INVALID_PASSWORD, INVALID_SYSTEM_ID, CANCEL_SM_FAILED,
+		REPLACE_SM_FAILED, MESSAGE_QUEUE_FULL, INVALID_SERVICE_TYPE, INVALID_NUMBER_OF_DESTINATIONS,
+		INVALID_DISTRIBUTION_LIST, INVALID_DESTINATION_FLAG, INVALID_SUBMIT_WITH_REPLACE, INVALID_ESM_CLASS,
+		SUBMIT_TO_DISTRIBUTION_LIST_FAILED, SUBMIT_FAILED, INVALID_SOURCE_TON, INVALID_SOURCE_NPI,
+		INVALID_DESTINATION_TON, INVALID_DESTINATION_NPI, INVALID_SYSTEM_TYPE, INVALID_REPLACE_IF_PRESENT_FLAG,
+		INVALID_NUMBER_OF_MESSAGES, THROTTLING_ERROR, INVALID_SCHEDULED_DELIVERY_TIME, INVALID_EXPIRY_TIME,
+		INVALID_PREDEFINED_MESSAGE, RECEIVER_TEMPORARY_ERROR, RECEIVER_PERMANENT_ERROR, RECEIVER_REJECT_MESSAGE,
+		QUERY_SM_FAILED, INVALID_OPTIONAL_PARAMETERS, OPTIONAL_PARAMETER_NOT_ALLOWED, INVALID_PARAMETER_LENGTH,
+		MISSING_EXPECTED_PARAMETER, INVALID_PARAMETER_VALUE, DELIVERY_FAILED
+	};
 
-	private int commandStatus;
+	private final int commandStatus;
 	
-	private String messageId;
+	private final String messageId;
 	
-	private Response(int commandStatus) {
+	private final String name;
+	
+	private Response(int commandStatus, String name) {
+		this(commandStatus, name, null);
+	}
+	
+	private Response(int commandStatus, String name, String messageId) {
 		this.commandStatus = commandStatus;
+		this.name = name;
+		this.messageId = messageId;
+	}
+	
+	/**
+	 * @return the predefined responses.
+	 */
+	public static Response[] values() {
+		return VALUES.clone();
+	}
+	
+	/**
+	 * Returns the predefined response for a command status or a new response if there is none.
+	 * 
+	 * @param commandStatus the command status of the response.
+	 * 
+	 * @return a {@link Response} object with the command status.
+	 */
+	public static Response valueOf(int commandStatus) {
+		
+		for (Response response : VALUES) {
+			if (response.commandStatus == commandStatus) {
+				return response;
+			}
+		}
+		
+		return new Response(commandStatus, "0x" + Integer.toHexString(commandStatus));
+	}
+
+	/**
+	 * Returns the predefined response with the specified name, like the valueOf method of an enum.
+	 * 
+	 * @param name the name of the response (e.g. OK, SYSTEM_ERROR).
+	 * 
+	 * @return the {@link Response} object with the name.
+	 * @throws IllegalArgumentException if there is no predefined response with the name.
+	 */
+	public static Response valueOf(String name) {
+		
+		if (name == null) {
+			throw new NullPointerException("Name is null");
+		}
+		
+		for (Response response : VALUES) {
+			if (response.name.equals(name)) {
+				return response;
+			}
+		}
+		
+		throw new IllegalArgumentException("No response with name " + name);
 	}
 
 	public int getCommandStatus() {
@@ -72,14 +145,48 @@ public enum Response {
 		return messageId;
 	}
 
-	public void setMessageId(String messageId) {
-		this.messageId = messageId;
+	/**
+	 * Returns a response with the same command status and the specified message id. This object is not modified.
+	 * 
+	 * @param messageId the message id to send to the client.
+	 * 
+	 * @return a new {@link Response} object.
+	 */
+	public Response withMessageId(String messageId) {
+		return new Response(commandStatus, name, messageId);
 	}
 	
-	public Response withMessageId(String messageId) {
-		setMessageId(messageId);
+	/**
+	 * @return the name of the command status (e.g. OK, SYSTEM_ERROR).
+	 */
+	public String name() {
+		return name;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		
+		if (this == o) {
+			return true;
+		}
 		
-		return this;
+		if (!Response.class.isInstance(o)) {
+			return false;
+		}
+		
+		Response other = (Response) o;
+		return commandStatus == other.commandStatus 
+				&& (messageId == null ? other.messageId == null : messageId.equals(other.messageId));
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * commandStatus + (messageId == null ? 0 : messageId.hashCode());
+	}
+	
+	@Override
+	public String toString() {
+		return messageId == null ? name : name + "[messageId=" + messageId + "]";
 	}
 
 }
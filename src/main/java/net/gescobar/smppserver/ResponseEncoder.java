@@ -0,0 +1,117 @@
+package net.gescobar.smppserver;
+
+import net.gescobar.smppserver.packet.SmppPacket;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * Encodes the submit_sm_resp and enquire_link_resp PDUs (which are most of the responses the server sends) straight 
+ * into a buffer, without creating the cloudhopper response objects and going through the generic transcoder. The 
+ * encoded bytes are the same that the transcoder writes.
+ * 
+ * <p>The header is copied from a precomputed template and only the command length, command status and sequence 
+ * number are patched.</p>
+ * 
+ * <p>Internal class, it is public only so that the benchmarks can reach it. It is not part of the API and can change 
+ * or be removed without notice.</p>
+ * 
+ * @author German Escobar
+ */
+public final class ResponseEncoder {
+	
+	/**
+	 * The length of the header of a PDU.
+	 */
+	public static final int HEADER_LENGTH = 16;
+	
+	/**
+	 * The length of an enquire_link_resp, which has no body.
+	 */
+	public static final int ENQUIRE_LINK_RESP_LENGTH = HEADER_LENGTH;
+	
+	private static final byte[] SUBMIT_SM_RESP_TEMPLATE = header(SmppPacket.SUBMIT_SM_RESP);
+	
+	private static final byte[] ENQUIRE_LINK_RESP_TEMPLATE = header(SmppPacket.ENQUIRE_LINK_RESP);
+	
+	private ResponseEncoder() {}
+	
+	/**
+	 * @param commandId the command id of a request.
+	 * 
+	 * @return true if the response of the request can be encoded by this class.
+	 */
+	public static boolean isEncoded(int commandId) {
+		return commandId == SmppPacket.SUBMIT_SM || commandId == SmppPacket.ENQUIRE_LINK;
+	}
+	
+	/**
+	 * @param messageId the message id of the response, can be null.
+	 * 
+	 * @return the length of the submit_sm_resp with the message id.
+	 */
+	public static int submitSmRespLength(String messageId) {
+		return HEADER_LENGTH + (messageId != null ? messageId.length() : 0) + 1;
+	}
+	
+	/**
+	 * Writes a submit_sm_resp. The message id is written as a C-Octet string, one byte per character, so it must only 
+	 * contain ASCII characters as the specification requires.
+	 * 
+	 * @param out the buffer in which the PDU is written, it must have {@link #submitSmRespLength(String)} writable 
+	 * bytes.
+	 * @param sequenceNumber the sequence number of the request.
+	 * @param commandStatus the command status of the response.
+	 * @param messageId the message id of the response, can be null.
+	 */
+	public static void writeSubmitSmResp(ChannelBuffer out, int sequenceNumber, int commandStatus, String messageId) {
+		int start = out.writerIndex();
+		out.writeBytes(SUBMIT_SM_RESP_TEMPLATE);
+		out.setInt(start, submitSmRespLength(messageId));
+		out.setInt(start + 8, commandStatus);
+		out.setInt(start + 12, sequenceNumber);
+		if (messageId != null) {
+			for (int i=0; i < messageId.length(); i++) {
+				out.writeByte(messageId.charAt(i));
+			}
+		}
+		out.writeByte(0);
+	}
+	
+	/**
+	 * Writes an enquire_link_resp.
+	 * 
+	 * @param out the buffer in which the PDU is written, it must have {@link #ENQUIRE_LINK_RESP_LENGTH} writable 
+	 * bytes.
+	 * @param sequenceNumber the sequence number of the request.
+	 * @param commandStatus the command status of the response.
+	 */
+	public static void writeEnquireLinkResp(ChannelBuffer out, int sequenceNumber, int commandStatus) {
+		int start = out.writerIndex();
+		out.writeBytes(ENQUIRE_LINK_RESP_TEMPLATE);
+		out.setInt(start + 8, commandStatus);
+		out.setInt(start + 12, sequenceNumber);
+	}
+	
+	/**
+	 * Helper method. Creates the header template of a response: the command length is that of a response without 
+	 * body and the command status and sequence number are 0.
+	 * 
+	 * @param commandId the command id of the response.
+	 * 
+	 * @return the 16 bytes of the header.
+	 */
+	private static byte[] header(int commandId) {
+		byte[] header = new byte[HEADER_LENGTH];
+		writeInt(header, 0, HEADER_LENGTH);
+		writeInt(header, 4, commandId);
+		return header;
+	}
+	
+	private static void writeInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+}
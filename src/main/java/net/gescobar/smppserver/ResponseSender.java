@@ -1,5 +1,7 @@
 package net.gescobar.smppserver;
 
+import org.jboss.netty.channel.ChannelFuture;
+
 /**
  * Interface used in {@link PacketProcessor} implementations to respond SMPP requests.
  * 
@@ -14,4 +16,27 @@ public interface ResponseSender {
 	 */
 	void send(Response response);
 	
+	/**
+	 * Sends the response to the client without waiting for it to be written. The returned future is completed when 
+	 * the response is written to the channel (or the write fails) so it can be used, for example, to acknowledge the 
+	 * message to other systems only after the client received the response:
+	 * 
+	 * <pre>
+	 * 	responseSender.sendAsync( Response.OK ).addListener(new ChannelFutureListener() {
+	 * 		public void operationComplete(ChannelFuture future) {
+	 * 			if (future.isSuccess()) {
+	 * 				// the response was written
+	 * 			}
+	 * 		}
+	 * 	});
+	 * </pre>
+	 * 
+	 * <p>If the response was already sent or couldn't be encoded, a failed future is returned.</p>
+	 * 
+	 * @param response the response information to send.
+	 * 
+	 * @return the future of the write operation.
+	 */
+	ChannelFuture sendAsync(Response response);
+	
 }
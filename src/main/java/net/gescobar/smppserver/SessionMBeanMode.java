@@ -0,0 +1,27 @@
+package net.gescobar.smppserver;
+
+/**
+ * Possible values for when the sessions are registered as JMX MBeans. Registering an MBean goes through the locks of 
+ * the platform MBeanServer, so registering every connection slows down the server when a lot of clients connect and 
+ * disconnect. In any mode, the server MBean lists the sessions with its <code>listSessions</code> operation.
+ * 
+ * @author German Escobar
+ */
+public enum SessionMBeanMode {
+
+	/**
+	 * The sessions are not registered.
+	 */
+	NONE,
+	
+	/**
+	 * The sessions are registered once they are bound. This is the default.
+	 */
+	BOUND,
+	
+	/**
+	 * The sessions are registered as soon as the connection is opened.
+	 */
+	ALL;
+	
+}
@@ -0,0 +1,135 @@
+package net.gescobar.smppserver;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.gescobar.smppserver.SmppSession.BindType;
+
+/**
+ * Indexes the bound sessions that can receive requests from the server (bound as receivers or transceivers) by 
+ * system id. The sessions are added when their bind response is written and removed when they are unbound, which happens much less 
+ * often than the lookups, so each system id holds a copy on write list, which is removed when its last session is 
+ * removed.
+ * 
+ * @author German Escobar
+ */
+class SessionRegistry {
+	
+	private final ConcurrentMap<String,CopyOnWriteArrayList<SmppSession>> receivers = 
+			new ConcurrentHashMap<String,CopyOnWriteArrayList<SmppSession>>();
+	
+	/**
+	 * Adds the session if it is bound as a receiver or transceiver.
+	 * 
+	 * @param session the bound session.
+	 */
+	public void add(SmppSession session) {
+		
+		String systemId;
+		BindType bindType;
+		try {
+			systemId = session.getSystemId();
+			bindType = session.getBindType();
+		} catch (IllegalStateException e) {
+			// the session was closed in the meantime
+			return;
+		}
+		
+		if (bindType == BindType.TRANSMITTER) {
+			return;
+		}
+		
+		String key = key(systemId);
+		
+		CopyOnWriteArrayList<SmppSession> sessions = null;
+		boolean added = false;
+		while (!added) {
+			
+			sessions = receivers.get(key);
+			if (sessions == null) {
+				CopyOnWriteArrayList<SmppSession> created = new CopyOnWriteArrayList<SmppSession>();
+				sessions = receivers.putIfAbsent(key, created);
+				if (sessions == null) {
+					sessions = created;
+				}
+			}
+			
+			// the list could have been removed because it was empty, in which case it is created again
+			synchronized (sessions) {
+				if (receivers.get(key) == sessions) {
+					sessions.addIfAbsent(session);
+					added = true;
+				}
+			}
+		}
+		
+		// the session could have been closed before it was added
+		if (!session.isBound()) {
+			remove(key, sessions, session);
+		}
+	}
+	
+	/**
+	 * Removes the session, does nothing if it was not added.
+	 * 
+	 * @param session the session that was unbound.
+	 */
+	public void remove(SmppSession session) {
+		
+		String key = key(session.getBoundSystemId());
+		
+		CopyOnWriteArrayList<SmppSession> sessions = receivers.get(key);
+		if (sessions != null) {
+			remove(key, sessions, session);
+		}
+	}
+	
+	/**
+	 * @param systemId the system id.
+	 * 
+	 * @return an unmodifiable list with the bound sessions of the system id that can receive requests, empty if 
+	 * there are none.
+	 */
+	public List<SmppSession> getReceivers(String systemId) {
+		
+		List<SmppSession> sessions = receivers.get(key(systemId));
+		if (sessions == null) {
+			return Collections.emptyList();
+		}
+		
+		return Collections.unmodifiableList(sessions);
+	}
+	
+	/**
+	 * Helper method. Removes the session from the list of the system id and the list from the map if it is empty. 
+	 * The list is locked so that {@link #add(SmppSession)} doesn't add a session to a list that is being removed.
+	 * 
+	 * @param key the key of the system id.
+	 * @param sessions the list of the system id.
+	 * @param session the session to remove.
+	 */
+	private void remove(String key, CopyOnWriteArrayList<SmppSession> sessions, SmppSession session) {
+		
+		synchronized (sessions) {
+			sessions.remove(session);
+			if (sessions.isEmpty()) {
+				receivers.remove(key, sessions);
+			}
+		}
+	}
+	
+	/**
+	 * @return the number of system ids with receiver sessions.
+	 */
+	int getSystemIds() {
+		return receivers.size();
+	}
+	
+	private String key(String systemId) {
+		return systemId != null ? systemId : "";
+	}
+
+}
@@ -0,0 +1,36 @@
+package net.gescobar.smppserver;
+
+/**
+ * Used by the {@link SmppServer} to be notified when its sessions are bound and unbound. Unlike the 
+ * {@link SmppSessionListener}, this is called when the bind succeeds and when a bound session is closed, not when the 
+ * connection is opened and closed.
+ * 
+ * @author German Escobar
+ */
+interface SessionStateListener {
+
+	/**
+	 * Called after the session is bound, before the bind response is written. Nothing must be sent to the client 
+	 * from this method, the client can't receive requests until it has the bind response.
+	 * 
+	 * @param session the {@link SmppSession} that was bound.
+	 */
+	void bound(SmppSession session);
+	
+	/**
+	 * Called once the bind response of a bound session is written, from this moment requests can be sent to the 
+	 * client. Not called if the write fails or the session was closed in the meantime.
+	 * 
+	 * @param session the {@link SmppSession} that was bound.
+	 */
+	void bindResponseSent(SmppSession session);
+	
+	/**
+	 * Called when a bound session is unbound or its connection is closed. Can be called more than once for the same 
+	 * session.
+	 * 
+	 * @param session the {@link SmppSession} that was unbound.
+	 */
+	void unbound(SmppSession session);
+	
+}
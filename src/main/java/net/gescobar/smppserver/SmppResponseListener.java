@@ -0,0 +1,32 @@
+package net.gescobar.smppserver;
+
+import net.gescobar.smppserver.packet.SmppRequest;
+import net.gescobar.smppserver.packet.SmppResponse;
+
+/**
+ * Implemented to receive the outcome of the requests sent to the client using the 
+ * {@link SmppSession#sendRequestAsync(SmppRequest, long, SmppResponseListener)} method. The methods are called from 
+ * the I/O thread or from the thread that monitors the expired requests, so implementations shouldn't block.
+ * 
+ * @author German Escobar
+ */
+public interface SmppResponseListener {
+
+	/**
+	 * Called when the response of a request is received from the client.
+	 * 
+	 * @param request the request that was sent to the client.
+	 * @param response the response received from the client.
+	 */
+	void responseReceived(SmppRequest request, SmppResponse response);
+	
+	/**
+	 * Called when a request couldn't be sent, when the response didn't arrive before the timeout or when the 
+	 * connection was closed before receiving the response.
+	 * 
+	 * @param request the request that was sent to the client.
+	 * @param cause the cause of the failure.
+	 */
+	void requestFailed(SmppRequest request, Throwable cause);
+	
+}
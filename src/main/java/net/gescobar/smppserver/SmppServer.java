@@ -2,36 +2,49 @@ package net.gescobar.smppserver;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.gescobar.jmx.Management;
 import net.gescobar.jmx.annotation.Impact;
 import net.gescobar.jmx.annotation.ManagedAttribute;
 import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.smppserver.packet.DeliverSm;
 import net.gescobar.smppserver.packet.SmppRequest;
+import net.gescobar.smppserver.packet.ch.LazySubmitSm;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.Channel;
 import org.jboss.netty.channel.ChannelException;
-import org.jboss.netty.channel.ChannelFactory;
 import org.jboss.netty.channel.ChannelHandlerContext;
 import org.jboss.netty.channel.ChannelPipeline;
 import org.jboss.netty.channel.ChannelStateEvent;
 import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
-import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.timeout.IdleStateHandler;
+import org.jboss.netty.util.HashedWheelTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.cloudhopper.commons.util.windowing.WindowFuture;
 import com.cloudhopper.smpp.channel.SmppChannelConstants;
 import com.cloudhopper.smpp.channel.SmppSessionPduDecoder;
-import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
-import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
+import com.cloudhopper.smpp.pdu.PduRequest;
+import com.cloudhopper.smpp.pdu.PduResponse;
 import com.cloudhopper.smpp.type.SmppChannelException;
 
 /**
@@ -61,6 +74,16 @@ public class SmppServer {
 	
 	private Logger log = LoggerFactory.getLogger(SmppServer.class);
 	
+	/**
+	 * The name of the handler that detects idle connections in the pipeline.
+	 */
+	private static final String IDLE_HANDLER_NAME = "smppIdleHandler";
+	
+	/**
+	 * The name of the handler that writes the PDUs gathered while the data of a read is processed.
+	 */
+	private static final String READ_HANDLER_NAME = "smppReadHandler";
+	
 	/**
 	 * Possible values for the status of the server.
 	 * 
@@ -105,6 +128,16 @@ public class SmppServer {
 	 */
 	private Status status = Status.STOPPED;
 	
+	/**
+	 * Creates the channel factory each time the server is started.
+	 */
+	private Transport transport = new NioTransport();
+	
+	private SocketConfiguration socketConfiguration = new SocketConfiguration();
+	
+	/**
+	 * Created when the server is started and released when it is stopped.
+	 */
 	private ServerBootstrap serverBootstrap;
 	
 	private Channel serverChannel;
@@ -113,6 +146,18 @@ public class SmppServer {
 	
 	private Map<Channel,SmppSession> sessions = new ConcurrentHashMap<Channel,SmppSession>();
 	
+	/**
+	 * Tracks the requests in flight of the whole server to stop reading from the channels when they are too many.
+	 */
+	private FlowControl flowControl = new FlowControl(sessions.values());
+	
+	/**
+	 * The watermarks of requests in flight that are passed to each session, 0 to disable.
+	 */
+	private int sessionHighWatermark = 0;
+	
+	private int sessionLowWatermark = 0;
+	
 	private AtomicInteger createdSessions = new AtomicInteger();
 	
 	private AtomicInteger destroyedSessions = new AtomicInteger();
@@ -121,6 +166,206 @@ public class SmppServer {
 	
 	private SmppSessionListener sessionListener;
 	
+	/**
+	 * Passed to the created sessions, see {@link SmppSession#setBlockingWrites(boolean)}.
+	 */
+	private boolean blockingWrites = false;
+	
+	/**
+	 * Passed to the created sessions, see {@link SmppSession#setWriteCoalescing(boolean)}.
+	 */
+	private boolean writeCoalescing = true;
+	
+	/**
+	 * Overrides the write coalescing of the sessions by system id when they are bound.
+	 */
+	private Map<String,Boolean> writeCoalescingBySystemId = new ConcurrentHashMap<String,Boolean>();
+	
+	/**
+	 * Passed to the created sessions, see {@link SmppSession#setLazySubmitSm(boolean)}.
+	 */
+	private boolean lazySubmitSm = false;
+	
+	/**
+	 * The default configuration of the send window of the sessions.
+	 */
+	private WindowConfiguration windowConfiguration = new WindowConfiguration();
+	
+	/**
+	 * The configurations of the send window by system id.
+	 */
+	private Map<String,WindowConfiguration> windowConfigurations = new ConcurrentHashMap<String,WindowConfiguration>();
+	
+	/**
+	 * Holds the rate limits and the token buckets by system id.
+	 */
+	private Throttler throttler = new Throttler();
+	
+	/**
+	 * Logs the PDUs of the sessions when tracing is enabled.
+	 */
+	private PduTracer tracer = new PduTracer();
+	
+	/**
+	 * The metrics of each system id.
+	 */
+	private MetricsRegistry metricsRegistry = new MetricsRegistry();
+	
+	/**
+	 * Encodes the outbound PDUs of the sessions into pooled direct buffers, null if pooling is disabled.
+	 */
+	private volatile DirectBufferPool bufferPool = new DirectBufferPool(SmppSession.TRANSCODER_CONTEXT);
+	
+	/**
+	 * Called periodically with the metrics of each system id, can be null.
+	 */
+	private MetricsReporter metricsReporter;
+	
+	/**
+	 * The time in milliseconds between the calls to the {@link MetricsReporter}.
+	 */
+	private long metricsReportInterval;
+	
+	/**
+	 * Tells how the packets are passed to the {@link PacketProcessor}. Defaults to {@link ProcessingMode#DIRECT}.
+	 */
+	private ProcessingMode processingMode = ProcessingMode.DIRECT;
+	
+	/**
+	 * The number of threads used to process packets when the processing mode is not {@link ProcessingMode#DIRECT}.
+	 */
+	private int processingThreads = Runtime.getRuntime().availableProcessors() * 2;
+	
+	/**
+	 * The maximum number of packets waiting to be processed. In {@link ProcessingMode#POOLED} mode the limit is 
+	 * for the whole server, in {@link ProcessingMode#ORDERED} mode it is for each session.
+	 */
+	private int processingQueueCapacity = 10000;
+	
+	/**
+	 * The thread pool in which the packets are processed. Created when the server is started unless the processing 
+	 * mode is {@link ProcessingMode#DIRECT}.
+	 */
+	private ThreadPoolExecutor processingPool;
+	
+	/**
+	 * The executor that is passed to the sessions in {@link ProcessingMode#POOLED} mode.
+	 */
+	private Executor pooledExecutor;
+	
+	/**
+	 * Shared by the sessions to expire the requests sent to clients that don't receive a response. Created when the 
+	 * server is started.
+	 */
+	private ScheduledExecutorService monitorExecutor;
+	
+	/**
+	 * A single timer wheel shared by all the sessions to detect idle connections. Created when the server is started.
+	 */
+	private HashedWheelTimer idleTimer;
+	
+	/**
+	 * The time in seconds without receiving anything after which an enquire_link is sent to a bound session (or the 
+	 * connection is closed if the session is not bound), 0 to disable.
+	 */
+	private int idleTimeout = 0;
+	
+	/**
+	 * The time in milliseconds to wait for the response of the enquire_link sent to an idle session.
+	 */
+	private long enquireLinkTimeout = 10000;
+	
+	/**
+	 * Passed to the created sessions, see {@link SmppSession#setEnquireLinkToProcessor(boolean)}.
+	 */
+	private boolean enquireLinkToProcessor = false;
+	
+	/**
+	 * The time in milliseconds a client has to bind after connecting, 0 to disable.
+	 */
+	private long bindTimeout = 0;
+	
+	/**
+	 * Tells when the sessions are registered as JMX MBeans. Defaults to {@link SessionMBeanMode#BOUND}.
+	 */
+	private SessionMBeanMode sessionMBeanMode = SessionMBeanMode.BOUND;
+	
+	/**
+	 * The sessions that are registered as JMX MBeans, so that we only unregister those.
+	 */
+	private Set<SmppSession> registeredSessions = Collections.newSetFromMap(new ConcurrentHashMap<SmppSession,Boolean>());
+	
+	/**
+	 * The bound sessions that can receive requests by system id.
+	 */
+	private SessionRegistry sessionRegistry = new SessionRegistry();
+	
+	/**
+	 * Chooses the session to which a request is sent when there are several receiver sessions for a system id.
+	 */
+	private ReceiverSelector receiverSelector = new ReceiverSelector();
+	
+	/**
+	 * The configuration of the outbound queues, null if they are disabled.
+	 */
+	private OutboundQueueConfiguration outboundQueueConfiguration;
+	
+	/**
+	 * Stores the deliver_sm packets until they are accepted by the client. Created when the server is started if the 
+	 * outbound queues are enabled.
+	 */
+	private volatile OutboundQueues outboundQueues;
+	
+	/**
+	 * Maintains the {@link SessionRegistry} and registers the sessions as JMX MBeans when they are bound if the mode 
+	 * is {@link SessionMBeanMode#BOUND}. The sessions are added to the registry once their bind response is written, 
+	 * so that no request chosen through the registry reaches the client before the bind response.
+	 */
+	private SessionStateListener stateListener = new SessionStateListener() {
+
+		@Override
+		public void bound(SmppSession session) {
+			
+			String systemId = session.getBoundSystemId();
+			Boolean coalescing = systemId != null ? writeCoalescingBySystemId.get(systemId) : null;
+			if (coalescing != null) {
+				session.setWriteCoalescing(coalescing);
+			}
+			
+			if (sessionMBeanMode == SessionMBeanMode.BOUND) {
+				registerSession(session);
+			}
+			
+			// the session could have been closed (and unbound() called) while it was registered
+			if (!session.isBound() && sessionMBeanMode == SessionMBeanMode.BOUND) {
+				unregisterSession(session);
+			}
+		}
+		
+		@Override
+		public void bindResponseSent(SmppSession session) {
+			
+			// removed again by the registry if the session was closed (and unbound() called) while it was added
+			sessionRegistry.add(session);
+			
+			// the queued packets are sent after the bind response
+			OutboundQueues queues = outboundQueues;
+			if (queues != null) {
+				queues.signal( session.getBoundSystemId() );
+			}
+		}
+
+		@Override
+		public void unbound(SmppSession session) {
+			sessionRegistry.remove(session);
+		}
+		
+	};
+	
+	private AtomicInteger queuedPackets = new AtomicInteger();
+	
+	private AtomicLong rejectedPackets = new AtomicLong();
+	
 	/**
 	 * Constructor. Creates an instance with the specified port and default {@link PacketProcessor} and 
 	 * {@link SequenceNumberScheme} implementations.
@@ -150,13 +395,6 @@ public class SmppServer {
 		this.port = port;
 		this.packetProcessor = packetProcessor;
 		
-		ChannelFactory channelFactory = new NioServerSocketChannelFactory(Executors.newCachedThreadPool(), 
-				Executors.newCachedThreadPool(), Runtime.getRuntime().availableProcessors() * 3);
-		this.serverBootstrap = new ServerBootstrap(channelFactory);
-		
-		ChannelPipeline pipeline = serverBootstrap.getPipeline();
-		pipeline.addLast( SmppChannelConstants.PIPELINE_SERVER_CONNECTOR_NAME, new ServerChannelHandler() );
-		
 		this.name = "Server-" + new Random().nextInt(10000);
 		registerJMXBean();
 		
@@ -171,9 +409,52 @@ public class SmppServer {
 	}
 
 	/**
-	 * Starts listening to client connections through the specified port.
+	 * Helper method. Registers the session as a JMX MBean unless it is already registered.
+	 * 
+	 * @param session the session to register.
+	 */
+	private void registerSession(SmppSession session) {
+		
+		if (!registeredSessions.add(session)) {
+			return;
+		}
+		
+		try {
+			Management.register( session, getObjectName(session) );
+		} catch (Exception e) {
+			registeredSessions.remove(session);
+			log.warn("Couldn't register session with id " + session.getId() + " as a JMX MBean: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * Helper method. Unregisters the session if it was registered as a JMX MBean.
+	 * 
+	 * @param session the session to unregister.
+	 */
+	private void unregisterSession(SmppSession session) {
+		
+		if (!registeredSessions.remove(session)) {
+			return;
+		}
+		
+		try {
+			Management.unregister( getObjectName(session) );
+		} catch (Exception e) {
+			log.warn("Exception unregistering session " + session.getId() + ": " + e.getMessage(), e);
+		}
+	}
+	
+	private String getObjectName(SmppSession session) {
+		return "net.gescobar.smppserver:type=Sessions,id=" + session.getId();
+	}
+
+	/**
+	 * Starts listening to client connections through the specified port. If the server can't be started (e.g. the 
+	 * port is in use), the resources that were created are released and the status is set back to STOPPED.
 	 * 
-	 * @throws IOException if an I/O error occurs when opening the socket.
+	 * @throws SmppChannelException if the port can't be bound.
+	 * @throws SmppException if the outbound queues can't be opened.
 	 */
 	@ManagedOperation(impact=Impact.ACTION)
 	public void start() throws SmppChannelException {
@@ -186,17 +467,90 @@ public class SmppServer {
 		log.debug("starting the SMPP Server ... ");
 		this.status = Status.STARTING;
 		
+		boolean started = false;
 		try {
-            this.serverChannel = this.serverBootstrap.bind( new InetSocketAddress(port) );
-            log.info("SMPP Server started on SMPP port [{}]", port);
-        } catch (ChannelException e) {
-            throw new SmppChannelException(e.getMessage(), e);
-        }
+			
+			startProcessingPool();
+			
+			if (outboundQueueConfiguration != null) {
+				OutboundQueues queues = new OutboundQueues(outboundQueueConfiguration, this);
+				try {
+					queues.start();
+				} catch (IOException e) {
+					queues.stop();
+					throw new SmppException("Couldn't open the outbound queues: " + e.getMessage(), e);
+				}
+				outboundQueues = queues;
+			}
+			
+			monitorExecutor = Executors.newSingleThreadScheduledExecutor();
+			
+			if (metricsReporter != null) {
+				final MetricsReporter reporter = metricsReporter;
+				monitorExecutor.scheduleAtFixedRate(new Runnable() {
+
+					@Override
+					public void run() {
+						metricsRegistry.report(reporter);
+					}
+					
+				}, metricsReportInterval, metricsReportInterval, TimeUnit.MILLISECONDS);
+			}
+			
+			idleTimer = new HashedWheelTimer();
+			
+			serverBootstrap = createServerBootstrap();
+			
+			try {
+	            this.serverChannel = this.serverBootstrap.bind( new InetSocketAddress(port) );
+	            log.info("SMPP Server started on SMPP port [{}]", port);
+	        } catch (ChannelException e) {
+	            throw new SmppChannelException(e.getMessage(), e);
+	        }
+			
+			started = true;
+			
+		} finally {
+			
+			if (!started) {
+				log.warn("couldn't start the SMPP Server, releasing its resources");
+				releaseResources();
+				this.status = Status.STOPPED;
+			}
+		}
 		
 		log.info("<< SMPP Server running on port " + port + " >>");
 		this.status = Status.STARTED;
 	}
 	
+	/**
+	 * Helper method. Creates the bootstrap with the channel factory of the {@link Transport} and the socket options.
+	 * 
+	 * @return the created ServerBootstrap object.
+	 */
+	private ServerBootstrap createServerBootstrap() {
+		
+		ServerBootstrap bootstrap = new ServerBootstrap( transport.createChannelFactory() );
+		
+		if (socketConfiguration.getBacklog() > 0) {
+			bootstrap.setOption("backlog", socketConfiguration.getBacklog());
+		}
+		bootstrap.setOption("reuseAddress", socketConfiguration.isReuseAddress());
+		bootstrap.setOption("child.tcpNoDelay", socketConfiguration.isTcpNoDelay());
+		bootstrap.setOption("child.keepAlive", socketConfiguration.isKeepAlive());
+		if (socketConfiguration.getReceiveBufferSize() > 0) {
+			bootstrap.setOption("child.receiveBufferSize", socketConfiguration.getReceiveBufferSize());
+		}
+		if (socketConfiguration.getSendBufferSize() > 0) {
+			bootstrap.setOption("child.sendBufferSize", socketConfiguration.getSendBufferSize());
+		}
+		
+		ChannelPipeline pipeline = bootstrap.getPipeline();
+		pipeline.addLast( SmppChannelConstants.PIPELINE_SERVER_CONNECTOR_NAME, new ServerChannelHandler() );
+		
+		return bootstrap;
+	}
+	
 	/**
 	 * Stops the server gracefully.
 	 */
@@ -216,15 +570,94 @@ public class SmppServer {
 			try { channel.disconnect().await(500); } catch (Exception e) {}
 		}
 		
+		releaseResources();
+		
+		// the server has stopped
+		status = Status.STOPPED;
+		log.info("<< SMPP Server stopped >>");
+		
+	}
+	
+	/**
+	 * Helper method. Releases the resources created by {@link #start()}: the server channel, the boss and worker 
+	 * threads, the idle timer, the monitor executor, the outbound queues and the processing pool. Called when the 
+	 * server is stopped or couldn't be started.
+	 */
+	private void releaseResources() {
+		
         // clean up all external resources
         if (this.serverChannel != null) {
             this.serverChannel.close().awaitUninterruptibly();
             this.serverChannel = null;
         }
+        
+        // stops the boss and worker threads
+        if (this.serverBootstrap != null) {
+        	this.serverBootstrap.releaseExternalResources();
+        	this.serverBootstrap = null;
+        }
+        
+        if (this.idleTimer != null) {
+        	this.idleTimer.stop();
+        	this.idleTimer = null;
+        }
+        
+        if (this.monitorExecutor != null) {
+        	this.monitorExecutor.shutdownNow();
+        	this.monitorExecutor = null;
+        }
+        
+        if (this.outboundQueues != null) {
+        	this.outboundQueues.stop();
+        	this.outboundQueues = null;
+        }
+        
+        if (this.processingPool != null) {
+        	this.processingPool.shutdown();
+        	this.processingPool = null;
+        	this.pooledExecutor = null;
+        }
+	}
+	
+	/**
+	 * Helper method. Creates the thread pool in which the packets are processed if the processing mode is not 
+	 * {@link ProcessingMode#DIRECT}. 
+	 */
+	private void startProcessingPool() {
 		
-		// the server has stopped
-		status = Status.STOPPED;
-		log.info("<< SMPP Server stopped >>");
+		if (processingMode == ProcessingMode.POOLED) {
+			
+			processingPool = new ThreadPoolExecutor(processingThreads, processingThreads, 0L, TimeUnit.MILLISECONDS, 
+					new ArrayBlockingQueue<Runnable>(processingQueueCapacity), new NamedThreadFactory("smpp-processor"));
+			pooledExecutor = new MonitoredExecutor(processingPool, queuedPackets, rejectedPackets);
+			
+		} else if (processingMode == ProcessingMode.ORDERED) {
+			
+			// each session bounds its own queue and schedules at most one task at a time in the pool
+			processingPool = new ThreadPoolExecutor(processingThreads, processingThreads, 0L, TimeUnit.MILLISECONDS, 
+					new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("smpp-processor"));
+			
+		}
+		
+	}
+	
+	/**
+	 * Helper method. Creates the executor that is passed to a new session depending on the processing mode.
+	 * 
+	 * @return the executor for the session or null if the packets should be processed in the I/O thread.
+	 */
+	private Executor createSessionExecutor() {
+		
+		if (processingPool == null) {
+			return null;
+		}
+		
+		if (processingMode == ProcessingMode.ORDERED) {
+			return new MonitoredExecutor(new OrderedExecutor(processingPool, processingQueueCapacity), 
+					queuedPackets, rejectedPackets);
+		}
+		
+		return pooledExecutor;
 		
 	}
 	
@@ -238,32 +671,362 @@ public class SmppServer {
 	}
 	
 	/**
-	 * @return the status of the server.
+	 * Finds the sessions to which requests (e.g. deliver_sm) can be sent for a system id without iterating all the 
+	 * sessions.
+	 * 
+	 * @param systemId the system id used by the clients to bind.
+	 * 
+	 * @return an unmodifiable list with the sessions of the system id that are bound as receivers or transceivers 
+	 * (once their bind response is written), empty if there are none.
 	 */
-	public Status getStatus() {
-		return status;
+	public List<SmppSession> getReceiverSessions(String systemId) {
+		return sessionRegistry.getReceivers(systemId);
 	}
 	
-	@ManagedAttribute
-	public String getStatusString() {
-		return status.name();
+	/**
+	 * Chooses one of the receiver sessions of a system id to send a request, the one with more free slots in its send 
+	 * window or, if they are all the same, the next one in round robin. Sessions bound as transmitters and sessions 
+	 * whose send window is full are never chosen.
+	 * 
+	 * @param systemId the system id used by the clients to bind.
+	 * 
+	 * @return the chosen session or null if there is none available.
+	 */
+	public SmppSession selectReceiverSession(String systemId) {
+		return receiverSelector.select( sessionRegistry.getReceivers(systemId) );
 	}
 	
-	@ManagedAttribute
-	public int getActiveSessions() {
-		return sessions.size();
+	/**
+	 * Sends a request (usually a deliver_sm) to one of the receiver sessions of a system id chosen with 
+	 * {@link #selectReceiverSession(String)}, so that the requests are spread across all the binds of the client. 
+	 * Like {@link SmppSession#sendRequestAsync(SmppRequest, long, SmppResponseListener)}, it blocks while the send 
+	 * window of the chosen session is full, up to the offer timeout of the window configuration.
+	 * 
+	 * @param systemId the system id used by the clients to bind.
+	 * @param packet the request packet to send to the client.
+	 * @param timeout the maximum time in milliseconds to wait for the response.
+	 * @param listener the {@link SmppResponseListener} that will be notified, can be null.
+	 * 
+	 * @return the future that will hold the response.
+	 * @throws IllegalStateException if there is no session available for the system id.
+	 * @throws SmppException if the request couldn't be added to the send window of the session.
+	 * 
+	 * @see SmppSession#sendRequestAsync(SmppRequest, long, SmppResponseListener)
+	 */
+	@SuppressWarnings("rawtypes")
+	public WindowFuture<Integer,PduRequest,PduResponse> sendRequestAsync(String systemId, SmppRequest packet, 
+			long timeout, SmppResponseListener listener) throws IllegalStateException, SmppException {
+		
+		SmppSession session = selectReceiverSession(systemId);
+		if (session == null) {
+			throw new IllegalStateException("No receiver session available for system id " + systemId);
+		}
+		
+		return session.sendRequestAsync(packet, timeout, listener);
 	}
 	
-	@ManagedAttribute
-	public int getCreatedSessions() {
-		return createdSessions.get();
-	}
+	/**
+	 * Stores a deliver_sm in the outbound queue of the system id, which sends it to a receiver session of the system 
+	 * id (chosen with {@link #selectReceiverSession(String)}) when there is one available and keeps it until the 
+	 * client answers with a deliver_sm_resp with status OK. The queue survives restarts of the server.
+	 * 
+	 * @param systemId the system id to which the packet is sent.
+	 * @param deliverSm the packet to send. 
+	 * 
+	 * @return true if the packet was queued, false if the outbound queues reached their maximum size.
+	 * @throws IllegalStateException if the outbound queues are not enabled or the server is not started.
+	 * @throws SmppException if the packet couldn't be stored.
+	 * 
+	 * @see #setOutboundQueueConfiguration(OutboundQueueConfiguration)
+	 */
+	public boolean queueDeliverSm(String systemId, DeliverSm deliverSm) throws IllegalStateException, SmppException {
+		
+		if (deliverSm == null) {
+			throw new IllegalArgumentException("No packet specified");
+		}
+		
+		OutboundQueues queues = outboundQueues;
+		if (queues == null) {
+			throw new IllegalStateException("The outbound queues are not enabled or the server is not started");
+		}
+		
+		try {
+			return queues.offer(systemId, deliverSm);
+		} catch (IOException e) {
+			throw new SmppException("Couldn't queue deliver_sm: " + e.getMessage(), e);
+		}
+	}
+	
+	/**
+	 * @param systemId the system id.
+	 * 
+	 * @return the number of deliver_sm packets in the outbound queue of the system id, including the ones waiting 
+	 * for a response.
+	 */
+	public int getQueuedDeliverSm(String systemId) {
+		
+		OutboundQueues queues = outboundQueues;
+		return queues != null ? queues.getSize(systemId) : 0;
+	}
+	
+	/**
+	 * @return the number of deliver_sm packets in all the outbound queues.
+	 */
+	@ManagedAttribute
+	public int getQueuedDeliverSm() {
+		
+		OutboundQueues queues = outboundQueues;
+		return queues != null ? queues.getSize() : 0;
+	}
+	
+	/**
+	 * @return the number of deliver_sm packets discarded after the maximum number of attempts.
+	 */
+	@ManagedAttribute
+	public long getDiscardedDeliverSm() {
+		
+		OutboundQueues queues = outboundQueues;
+		return queues != null ? queues.getDiscarded() : 0;
+	}
+	
+	/**
+	 * @return the number of bytes of the journals of the outbound queues, limited by the max size of the 
+	 * {@link OutboundQueueConfiguration}.
+	 */
+	@ManagedAttribute
+	public long getOutboundQueueJournalSize() {
+		
+		OutboundQueues queues = outboundQueues;
+		return queues != null ? queues.getJournalSize() : 0;
+	}
+	
+	/**
+	 * @return the number of direct buffers allocated to encode PDUs because there was none to reuse.
+	 */
+	@ManagedAttribute
+	public long getAllocatedDirectBuffers() {
+		
+		DirectBufferPool pool = bufferPool;
+		return pool != null ? pool.getAllocatedBuffers() : 0;
+	}
+	
+	/**
+	 * @return the number of direct buffers that are waiting to be reused.
+	 */
+	@ManagedAttribute
+	public int getPooledDirectBuffers() {
+		
+		DirectBufferPool pool = bufferPool;
+		return pool != null ? pool.getPooledBuffers() : 0;
+	}
+	
+	/**
+	 * @return the status of the server.
+	 */
+	public Status getStatus() {
+		return status;
+	}
+	
+	@ManagedAttribute
+	public String getStatusString() {
+		return status.name();
+	}
+	
+	@ManagedAttribute
+	public int getActiveSessions() {
+		return sessions.size();
+	}
+	
+	@ManagedAttribute
+	public int getBoundSessions() {
+		
+		int bound = 0;
+		for (SmppSession session : sessions.values()) {
+			if (session.isBound()) {
+				bound++;
+			}
+		}
+		
+		return bound;
+	}
+	
+	/**
+	 * Lists the sessions of the server, one line per session with its id, status, bind type, system id, creation 
+	 * time, requests in flight and the fill of its send window. Doesn't require the sessions to be registered as JMX 
+	 * MBeans.
+	 * 
+	 * @return an array with a line for each session.
+	 */
+	@ManagedOperation
+	public String[] listSessions() {
+		
+		List<String> lines = new ArrayList<String>();
+		for (SmppSession session : sessions.values()) {
+			
+			String systemId = "-";
+			try {
+				systemId = session.getSystemId();
+			} catch (IllegalStateException e) {}
+			
+			lines.add(session.getId() + " status=" + session.getStatusString() + " bindType=" 
+					+ session.getBindTypeString() + " systemId=" + systemId 
+					+ " created=" + session.getCreated() + " inFlight=" + session.getInFlightRequests() 
+					+ " windowFill=" + session.getWindowFill());
+		}
+		
+		return lines.toArray(new String[lines.size()]);
+	}
+	
+	/**
+	 * Closes a session of the server, useful when the sessions are not registered as JMX MBeans.
+	 * 
+	 * @param id the id of the session (as returned by {@link SmppSession#getId()}).
+	 * 
+	 * @return true if the session was found, false otherwise.
+	 */
+	@ManagedOperation(impact=Impact.ACTION)
+	public boolean closeSession(String id) {
+		
+		for (SmppSession session : sessions.values()) {
+			if (session.getId().equals(id)) {
+				session.close();
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * Starts logging the PDUs received and sent by the sessions bound with the system id. The PDUs are logged at 
+	 * INFO level to the <code>net.gescobar.smppserver.PduTracer</code> logger.
+	 * 
+	 * @param systemId the system id whose PDUs will be logged.
+	 */
+	@ManagedOperation(impact=Impact.ACTION)
+	public void tracePdus(String systemId) {
+		tracer.addSystemId(systemId);
+	}
+	
+	/**
+	 * Stops logging the PDUs of the system id.
+	 * 
+	 * @param systemId the system id whose PDUs will no longer be logged.
+	 */
+	@ManagedOperation(impact=Impact.ACTION)
+	public void stopTracingPdus(String systemId) {
+		tracer.removeSystemId(systemId);
+	}
+	
+	@ManagedAttribute
+	public String getTracedSystemIds() {
+		return tracer.getSystemIds().toString();
+	}
+	
+	/**
+	 * Logs one of every <code>sampleRate</code> PDUs of all the sessions, no matter their system id.
+	 * 
+	 * @param sampleRate 1 to log all the PDUs, 0 to disable sampling.
+	 */
+	@ManagedOperation(impact=Impact.ACTION)
+	public void setPduTraceSampleRate(int sampleRate) {
+		tracer.setSampleRate(sampleRate);
+	}
+	
+	@ManagedAttribute
+	public int getPduTraceSampleRate() {
+		return tracer.getSampleRate();
+	}
+	
+	/**
+	 * @param systemId the system id of the sessions.
+	 * 
+	 * @return the statistics of the responses sent to the sessions of the system id, by command id and command 
+	 * status. Empty if no session has been bound with the system id.
+	 */
+	public List<CommandStats> getCommandStats(String systemId) {
+		
+		Metrics m = metricsRegistry.find(systemId);
+		if (m == null) {
+			return Collections.emptyList();
+		}
+		
+		return m.getStats();
+	}
+	
+	/**
+	 * @param systemId the system id of the sessions.
+	 * 
+	 * @return a line with the statistics of each command id and command status of the responses sent to the sessions 
+	 * of the system id.
+	 */
+	@ManagedOperation
+	public String[] listCommandStats(String systemId) {
+		return SmppSession.toLines( getCommandStats(systemId) );
+	}
+	
+	/**
+	 * @param systemId the system id of the sessions.
+	 * 
+	 * @return the number of requests received from the sessions of the system id.
+	 */
+	@ManagedOperation
+	public long getReceivedRequests(String systemId) {
+		
+		Metrics m = metricsRegistry.find(systemId);
+		return m != null ? m.getRequests() : 0;
+	}
+	
+	@ManagedAttribute
+	public int getCreatedSessions() {
+		return createdSessions.get();
+	}
 
 	@ManagedAttribute
 	public int getDestroyedSessions() {
 		return destroyedSessions.get();
 	}
 
+	/**
+	 * @return the number of packets waiting to be processed.
+	 */
+	@ManagedAttribute
+	public int getProcessingQueueSize() {
+		return queuedPackets.get();
+	}
+	
+	/**
+	 * @return the number of packets that were rejected because the processing queue was full.
+	 */
+	@ManagedAttribute
+	public long getRejectedPackets() {
+		return rejectedPackets.get();
+	}
+	
+	/**
+	 * @return the number of requests passed to the {@link PacketProcessor} that haven't been responded.
+	 */
+	@ManagedAttribute
+	public int getInFlightRequests() {
+		return flowControl.getInFlight();
+	}
+	
+	/**
+	 * @return true if the sessions stopped reading because the server has too many requests in flight.
+	 */
+	@ManagedAttribute
+	public boolean isReadSuspended() {
+		return flowControl.isSuspended();
+	}
+	
+	/**
+	 * @return the number of messages rejected because of the rate limits.
+	 */
+	@ManagedAttribute
+	public long getThrottledRequests() {
+		return throttler.getThrottled();
+	}
+	
 	/**
 	 * Sets the packet processor that will be used for new sessions. Old sessions will not be affected. 
 	 * 
@@ -281,6 +1044,388 @@ public class SmppServer {
 	public void setSessionListener(SmppSessionListener sessionListener) {
 		this.sessionListener = sessionListener;
 	}
+	
+	/**
+	 * Sets whether the sessions created from now on will wait for every PDU to be written or will write them 
+	 * asynchronously (the default). Old sessions will not be affected.
+	 * 
+	 * @param blockingWrites true to wait for every write to complete, false otherwise.
+	 */
+	public void setBlockingWrites(boolean blockingWrites) {
+		this.blockingWrites = blockingWrites;
+	}
+	
+	public boolean isBlockingWrites() {
+		return blockingWrites;
+	}
+	
+	/**
+	 * Sets whether the sessions gather the PDUs sent at the same time in a single write, see 
+	 * {@link SmppSession#setWriteCoalescing(boolean)}. Defaults to true.
+	 * 
+	 * @param writeCoalescing true to gather the PDUs, false to write them one by one.
+	 */
+	public void setWriteCoalescing(boolean writeCoalescing) {
+		this.writeCoalescing = writeCoalescing;
+	}
+	
+	public boolean isWriteCoalescing() {
+		return writeCoalescing;
+	}
+	
+	/**
+	 * Overrides the write coalescing for the sessions bound with a system id, e.g. to write each PDU as soon as it is 
+	 * sent to a latency sensitive client.
+	 * 
+	 * @param systemId the system id.
+	 * @param writeCoalescing true to gather the PDUs, false to write them one by one.
+	 */
+	public void setWriteCoalescing(String systemId, boolean writeCoalescing) {
+		writeCoalescingBySystemId.put(systemId, writeCoalescing);
+	}
+	
+	/**
+	 * Sets whether the sessions created from now on encode the PDUs they send into direct buffers that are reused 
+	 * once the PDUs are written instead of allocating a heap buffer for each one. Defaults to true.
+	 * 
+	 * @param pooledBuffers true to encode into pooled direct buffers, false to use a heap buffer per PDU.
+	 */
+	public void setPooledBuffers(boolean pooledBuffers) {
+		
+		if (pooledBuffers != isPooledBuffers()) {
+			this.bufferPool = pooledBuffers ? new DirectBufferPool(SmppSession.TRANSCODER_CONTEXT) : null;
+		}
+	}
+	
+	public boolean isPooledBuffers() {
+		return bufferPool != null;
+	}
+	
+	/**
+	 * Sets whether the sessions created from now on pass the submit_sm packets to the {@link PacketProcessor} as 
+	 * {@link LazySubmitSm} objects, which don't copy the fields of the decoded packet until they are requested.
+	 * 
+	 * @param lazySubmitSm true to map the submit_sm packets lazily, false otherwise.
+	 */
+	public void setLazySubmitSm(boolean lazySubmitSm) {
+		this.lazySubmitSm = lazySubmitSm;
+	}
+	
+	public boolean isLazySubmitSm() {
+		return lazySubmitSm;
+	}
+	
+	/**
+	 * Sets the default configuration of the send window of the sessions created from now on.
+	 * 
+	 * @param windowConfiguration the {@link WindowConfiguration} to be used.
+	 */
+	public void setWindowConfiguration(WindowConfiguration windowConfiguration) {
+		
+		if (windowConfiguration == null) {
+			throw new IllegalArgumentException("No windowConfiguration specified");
+		}
+		
+		this.windowConfiguration = windowConfiguration;
+	}
+	
+	public WindowConfiguration getWindowConfiguration() {
+		return windowConfiguration;
+	}
+	
+	/**
+	 * Sets the configuration of the send window for the sessions that bind with the specified system id from now on.
+	 * 
+	 * @param systemId the system id of the sessions.
+	 * @param windowConfiguration the {@link WindowConfiguration} to be used or null to use the default one.
+	 */
+	public void setWindowConfiguration(String systemId, WindowConfiguration windowConfiguration) {
+		
+		if (systemId == null) {
+			throw new IllegalArgumentException("No systemId specified");
+		}
+		
+		if (windowConfiguration == null) {
+			windowConfigurations.remove(systemId);
+		} else {
+			windowConfigurations.put(systemId, windowConfiguration);
+		}
+	}
+	
+	/**
+	 * Sets when the sessions are registered as JMX MBeans. Defaults to {@link SessionMBeanMode#BOUND}. Takes effect 
+	 * with the next connections.
+	 * 
+	 * @param sessionMBeanMode the mode, can't be null.
+	 */
+	public void setSessionMBeanMode(SessionMBeanMode sessionMBeanMode) {
+		
+		if (sessionMBeanMode == null) {
+			throw new IllegalArgumentException("sessionMBeanMode can't be null");
+		}
+		
+		this.sessionMBeanMode = sessionMBeanMode;
+	}
+	
+	public SessionMBeanMode getSessionMBeanMode() {
+		return sessionMBeanMode;
+	}
+	
+	/**
+	 * Sets a {@link MetricsReporter} that is called periodically with the metrics of each system id. Takes effect the 
+	 * next time the server is started.
+	 * 
+	 * @param metricsReporter the reporter, null to disable reporting.
+	 * @param interval the time in milliseconds between reports, must be greater than 0.
+	 */
+	public void setMetricsReporter(MetricsReporter metricsReporter, long interval) {
+		
+		if (interval <= 0) {
+			throw new IllegalArgumentException("interval must be greater than 0");
+		}
+		
+		this.metricsReporter = metricsReporter;
+		this.metricsReportInterval = interval;
+	}
+	
+	/**
+	 * Enables the outbound queues, see {@link #queueDeliverSm(String, DeliverSm)}. Takes effect the next time the 
+	 * server is started.
+	 * 
+	 * @param outboundQueueConfiguration the configuration of the queues, null to disable them.
+	 */
+	public void setOutboundQueueConfiguration(OutboundQueueConfiguration outboundQueueConfiguration) {
+		this.outboundQueueConfiguration = outboundQueueConfiguration;
+	}
+	
+	public OutboundQueueConfiguration getOutboundQueueConfiguration() {
+		return outboundQueueConfiguration;
+	}
+	
+	/**
+	 * Sets the {@link Transport} that creates the channel factory. Defaults to a {@link NioTransport} with 1 boss 
+	 * thread and 2 worker threads for each processor. Takes effect the next time the server is started.
+	 * 
+	 * @param transport the transport to use, can't be null.
+	 */
+	public void setTransport(Transport transport) {
+		
+		if (transport == null) {
+			throw new IllegalArgumentException("transport can't be null");
+		}
+		
+		this.transport = transport;
+	}
+	
+	public Transport getTransport() {
+		return transport;
+	}
+	
+	/**
+	 * Sets the socket options of the server. Takes effect the next time the server is started.
+	 * 
+	 * @param socketConfiguration the socket options, can't be null.
+	 */
+	public void setSocketConfiguration(SocketConfiguration socketConfiguration) {
+		
+		if (socketConfiguration == null) {
+			throw new IllegalArgumentException("socketConfiguration can't be null");
+		}
+		
+		this.socketConfiguration = socketConfiguration;
+	}
+	
+	public SocketConfiguration getSocketConfiguration() {
+		return socketConfiguration;
+	}
+	
+	/**
+	 * Sets the time without receiving anything from a client after which an enquire_link is sent to it. If the 
+	 * client doesn't answer in the time set with {@link #setEnquireLinkTimeout(long)}, the connection is closed. 
+	 * Connections that are not bound are closed right away. Takes effect on the sessions created from now on.
+	 * 
+	 * @param idleTimeout the time in seconds, 0 to disable.
+	 */
+	public void setIdleTimeout(int idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+	
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+	
+	/**
+	 * Sets the time to wait for the response of the enquire_link sent to an idle session.
+	 * 
+	 * @param enquireLinkTimeout the time in milliseconds.
+	 */
+	public void setEnquireLinkTimeout(long enquireLinkTimeout) {
+		this.enquireLinkTimeout = enquireLinkTimeout;
+	}
+	
+	public long getEnquireLinkTimeout() {
+		return enquireLinkTimeout;
+	}
+	
+	/**
+	 * Sets whether the sessions created from now on pass the enquire_link requests of the clients to the 
+	 * {@link PacketProcessor}, see {@link SmppSession#setEnquireLinkToProcessor(boolean)}. Defaults to false.
+	 * 
+	 * @param enquireLinkToProcessor true to pass the enquire_link requests to the processor, false to answer them in 
+	 * the sessions.
+	 */
+	public void setEnquireLinkToProcessor(boolean enquireLinkToProcessor) {
+		this.enquireLinkToProcessor = enquireLinkToProcessor;
+	}
+	
+	public boolean isEnquireLinkToProcessor() {
+		return enquireLinkToProcessor;
+	}
+	
+	/**
+	 * Sets the time a client has to bind after it connects. If it doesn't bind in time, the connection is closed. 
+	 * Takes effect on the sessions created from now on.
+	 * 
+	 * @param bindTimeout the time in milliseconds, 0 to disable.
+	 */
+	public void setBindTimeout(long bindTimeout) {
+		this.bindTimeout = bindTimeout;
+	}
+	
+	public long getBindTimeout() {
+		return bindTimeout;
+	}
+	
+	/**
+	 * Sets the number of requests in flight (passed to the {@link PacketProcessor} but not responded) at which each 
+	 * session stops reading from its channel and the number at which it starts reading again. Takes effect on the 
+	 * sessions created from now on.
+	 * 
+	 * @param highWatermark the number of requests in flight at which a session stops reading, 0 to disable.
+	 * @param lowWatermark the number of requests in flight at which a session starts reading again.
+	 */
+	public void setSessionWatermarks(int highWatermark, int lowWatermark) {
+		
+		if (highWatermark > 0 && (lowWatermark < 0 || lowWatermark >= highWatermark)) {
+			throw new IllegalArgumentException("lowWatermark must be between 0 and highWatermark");
+		}
+		
+		this.sessionHighWatermark = highWatermark;
+		this.sessionLowWatermark = lowWatermark;
+	}
+	
+	/**
+	 * Sets the number of requests in flight in the whole server at which all the sessions stop reading from their 
+	 * channels and the number at which they start reading again. Takes effect immediately.
+	 * 
+	 * @param highWatermark the number of requests in flight at which the sessions stop reading, 0 to disable.
+	 * @param lowWatermark the number of requests in flight at which the sessions start reading again.
+	 */
+	public void setServerWatermarks(int highWatermark, int lowWatermark) {
+		flowControl.setWatermarks(highWatermark, lowWatermark);
+	}
+	
+	/**
+	 * Sets the maximum rate at which each session can send submit_sm packets. The packets above the limit are 
+	 * answered with {@link Response#THROTTLING_ERROR} without calling the {@link PacketProcessor}. Takes effect on the
+	 * sessions bound from now on.
+	 * 
+	 * @param rateLimit the {@link RateLimit} of each session, null to remove the limit.
+	 */
+	public void setSessionRateLimit(RateLimit rateLimit) {
+		throttler.setSessionRateLimit(rateLimit);
+	}
+	
+	public RateLimit getSessionRateLimit() {
+		return throttler.getSessionRateLimit();
+	}
+	
+	/**
+	 * Sets the maximum rate at which the sessions of a system id, all together, can send submit_sm packets. It 
+	 * applies to the system ids that don't have a specific limit. Takes effect immediately.
+	 * 
+	 * @param rateLimit the {@link RateLimit} of each system id, null to remove the limit.
+	 */
+	public void setSystemIdRateLimit(RateLimit rateLimit) {
+		throttler.setSystemIdRateLimit(rateLimit);
+	}
+	
+	public RateLimit getSystemIdRateLimit() {
+		return throttler.getSystemIdRateLimit();
+	}
+	
+	/**
+	 * Sets the maximum rate at which the sessions of the specified system id, all together, can send submit_sm 
+	 * packets. Takes effect immediately.
+	 * 
+	 * @param systemId the system id to be limited.
+	 * @param rateLimit the {@link RateLimit} of the system id, null to use the default one.
+	 */
+	public void setSystemIdRateLimit(String systemId, RateLimit rateLimit) {
+		
+		if (systemId == null) {
+			throw new IllegalArgumentException("No systemId specified");
+		}
+		
+		throttler.setSystemIdRateLimit(systemId, rateLimit);
+	}
+	
+	/**
+	 * Sets how the packets are passed to the {@link PacketProcessor}. Takes effect the next time the server is 
+	 * started.
+	 * 
+	 * @param processingMode the {@link ProcessingMode} to be used.
+	 */
+	public void setProcessingMode(ProcessingMode processingMode) {
+		
+		if (processingMode == null) {
+			throw new IllegalArgumentException("No processingMode specified");
+		}
+		
+		this.processingMode = processingMode;
+	}
+	
+	public ProcessingMode getProcessingMode() {
+		return processingMode;
+	}
+	
+	/**
+	 * Sets the number of threads used to process packets. Takes effect the next time the server is started.
+	 * 
+	 * @param processingThreads the number of threads, must be greater than 0.
+	 */
+	public void setProcessingThreads(int processingThreads) {
+		
+		if (processingThreads <= 0) {
+			throw new IllegalArgumentException("processingThreads must be greater than 0");
+		}
+		
+		this.processingThreads = processingThreads;
+	}
+	
+	public int getProcessingThreads() {
+		return processingThreads;
+	}
+	
+	/**
+	 * Sets the maximum number of packets waiting to be processed, for the whole server in 
+	 * {@link ProcessingMode#POOLED} mode and for each session in {@link ProcessingMode#ORDERED} mode. Takes effect 
+	 * the next time the server is started.
+	 * 
+	 * @param processingQueueCapacity the capacity of the queue, must be greater than 0.
+	 */
+	public void setProcessingQueueCapacity(int processingQueueCapacity) {
+		
+		if (processingQueueCapacity <= 0) {
+			throw new IllegalArgumentException("processingQueueCapacity must be greater than 0");
+		}
+		
+		this.processingQueueCapacity = processingQueueCapacity;
+	}
+	
+	public int getProcessingQueueCapacity() {
+		return processingQueueCapacity;
+	}
 
 	/**
 	 * This is the NIO server channel handler that manages connections and disconnections of clients.
@@ -295,19 +1440,40 @@ public class SmppServer {
 			Channel channel = e.getChannel();
 
 			int id = sessionId.incrementAndGet();
-			SmppSession session = new SmppSession(id, channel, packetProcessor);
+			SmppSession session = new SmppSession(id, channel, packetProcessor, monitorExecutor);
+			session.setBlockingWrites(blockingWrites);
+			session.setLazySubmitSm(lazySubmitSm);
+			session.setWriteCoalescing(writeCoalescing);
+			session.setExecutor( createSessionExecutor() );
+			session.setWindowConfiguration(windowConfiguration);
+			session.setWindowConfigurations(windowConfigurations);
+			session.setThrottler(throttler);
+			session.setWatermarks(sessionHighWatermark, sessionLowWatermark);
+			session.setFlowControl(flowControl);
+			session.setEnquireLinkTimeout(enquireLinkTimeout);
+			session.setEnquireLinkToProcessor(enquireLinkToProcessor);
+			session.setStateListener(stateListener);
+			session.setTracer(tracer);
+			session.setMetricsRegistry(metricsRegistry);
+			session.setBufferPool(bufferPool);
 			
+			if (idleTimeout > 0) {
+				channel.getPipeline().addLast(IDLE_HANDLER_NAME, new IdleStateHandler(idleTimer, idleTimeout, 0, 0));
+			}
+			if (bindTimeout > 0) {
+				session.startBindTimer(idleTimer, bindTimeout);
+			}
+			
+			channel.getPipeline().addLast(READ_HANDLER_NAME, session.getReadHandler());
 			channel.getPipeline().addLast(SmppChannelConstants.PIPELINE_SESSION_PDU_DECODER_NAME, 
-	        		new SmppSessionPduDecoder(new DefaultPduTranscoder(new DefaultPduTranscoderContext())));
+	        		new SmppSessionPduDecoder(SmppSession.TRANSCODER));
 			channel.getPipeline().addLast(SmppChannelConstants.PIPELINE_SESSION_WRAPPER_NAME, session);
 
 			sessions.put(channel, session);
 			createdSessions.incrementAndGet();
 			
-			try {
-				Management.register( session, "net.gescobar.smppserver:type=Sessions,id=" + session.getId() );
-			} catch (Exception f) {
-				log.warn("Couldn't register session with id " + id + " as a JMX MBean: " + f.getMessage(), f);
+			if (sessionMBeanMode == SessionMBeanMode.ALL) {
+				registerSession(session);
 			}
 			
 			if (sessionListener != null) {
@@ -324,12 +1490,10 @@ public class SmppServer {
 			if (session != null) {
 				log.info("[session-id=" + session.getId() + "] disconnected");
 				
+				sessionRegistry.remove(session);
+				
 				destroyedSessions.incrementAndGet();
-				try {
-					Management.unregister("net.gescobar.smppserver:type=Sessions,id=" + session.getId());
-				} catch (Exception f) {
-					log.warn("Exception unregistering session " + session.getId() + ": " + f.getMessage(), f);
-				}
+				unregisterSession(session);
 				
 				if (sessionListener != null) {
 					sessionListener.destroyed(session);
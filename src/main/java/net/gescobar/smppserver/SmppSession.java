@@ -1,28 +1,51 @@
 package net.gescobar.smppserver;
 
-import java.io.IOException;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.gescobar.jmx.annotation.ManagedAttribute;
 import net.gescobar.jmx.annotation.ManagedOperation;
+import net.gescobar.smppserver.packet.EnquireLink;
 import net.gescobar.smppserver.packet.SmppPacket;
 import net.gescobar.smppserver.packet.SmppRequest;
 import net.gescobar.smppserver.packet.SmppResponse;
 import net.gescobar.smppserver.packet.Unbind;
+import net.gescobar.smppserver.packet.ch.LazySubmitSm;
 import net.gescobar.smppserver.packet.ch.PacketMapper;
 
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
 import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.MessageEvent;
 import org.jboss.netty.channel.SimpleChannelHandler;
+import org.jboss.netty.handler.timeout.IdleState;
+import org.jboss.netty.handler.timeout.IdleStateEvent;
+import org.jboss.netty.handler.timeout.IdleStateHandler;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.Timer;
+import org.jboss.netty.util.TimerTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.cloudhopper.commons.util.windowing.Window;
 import com.cloudhopper.commons.util.windowing.WindowFuture;
+import com.cloudhopper.commons.util.windowing.WindowListener;
 import com.cloudhopper.smpp.SmppConstants;
 import com.cloudhopper.smpp.pdu.BaseBind;
 import com.cloudhopper.smpp.pdu.Pdu;
@@ -33,7 +56,7 @@ import com.cloudhopper.smpp.tlv.Tlv;
 import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
 import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
 import com.cloudhopper.smpp.transcoder.PduTranscoder;
-import com.cloudhopper.smpp.type.SmppChannelException;
+import com.cloudhopper.smpp.transcoder.PduTranscoderContext;
 
 /**
  * <p>Represents an SMPP session with an SMPP client. When it receives an SMPP packet, it calls the 
@@ -47,9 +70,15 @@ import com.cloudhopper.smpp.type.SmppChannelException;
  * 
  * @author German Escobar
  */
-public class SmppSession extends SimpleChannelHandler {
+@SuppressWarnings("rawtypes")
+public class SmppSession extends SimpleChannelHandler implements WindowListener<Integer,PduRequest,PduResponse> {
 	
 	private Logger log = LoggerFactory.getLogger(SmppSession.class);
+	
+	/**
+	 * The interval in milliseconds in which the send window is checked for expired requests.
+	 */
+	private static final long WINDOW_MONITOR_INTERVAL = 1000;
 
 	/**
 	 * Possible values for the status of the session.
@@ -94,17 +123,27 @@ public class SmppSession extends SimpleChannelHandler {
 	/**
 	 * The status of the session.
 	 */
-	private Status status = Status.OPEN;
+	private volatile Status status = Status.OPEN;
+	
+	/**
+	 * Guards the transitions of the status to BOUND and CLOSED, which can happen in different threads.
+	 */
+	private final Object statusLock = new Object();
 
 	/**
 	 * The bind type of the session. Null if not bound.
 	 */
-	private BindType bindType;
+	private volatile BindType bindType;
 
 	/**
 	 * The systemId that was used to bind.
 	 */
-	private String systemId;
+	private volatile String systemId;
+	
+	/**
+	 * The prefix of the log messages of the session. Computed when the session is created and when it is bound.
+	 */
+	private volatile String logHead;
 	
 	/**
 	 * The time in which the session was created.
@@ -121,7 +160,20 @@ public class SmppSession extends SimpleChannelHandler {
 	 */
 	private PacketProcessor packetProcessor;
 	
-	private PduTranscoder transcoder;
+	/**
+	 * The transcoder keeps no state besides its (read only) context so a single instance is shared by all the 
+	 * sessions to encode and by the servers to decode.
+	 */
+	static final PduTranscoderContext TRANSCODER_CONTEXT = new DefaultPduTranscoderContext();
+	
+	static final PduTranscoder TRANSCODER = new DefaultPduTranscoder(TRANSCODER_CONTEXT);
+	
+	private PduTranscoder transcoder = TRANSCODER;
+	
+	/**
+	 * The executor in which the {@link PacketProcessor} is called. If null, it is called from the I/O thread.
+	 */
+	private Executor executor;
 	
 	/**
 	 * Used to set the sequence number to packets sent to clients
@@ -133,18 +185,188 @@ public class SmppSession extends SimpleChannelHandler {
 	 * {@link #sendRequest(SmppRequest)} method.
 	 */
 	@SuppressWarnings("rawtypes")
-	private final Window<Integer,PduRequest,PduResponse> sendWindow = 
-			new Window<Integer,PduRequest,PduResponse>(10);
+	private volatile Window<Integer,PduRequest,PduResponse> sendWindow;
 	
 	/**
-	 * Constructor.
+	 * Used to expire the requests in the send window, can be null.
+	 */
+	private final ScheduledExecutorService monitorExecutor;
+	
+	/**
+	 * The configuration of the send window, it is used when the session is bound unless there is a specific 
+	 * configuration for the system id in {@link #windowConfigurations}.
+	 */
+	private WindowConfiguration windowConfiguration = new WindowConfiguration();
+	
+	/**
+	 * The configuration of the send window by system id, can be null.
+	 */
+	private Map<String,WindowConfiguration> windowConfigurations;
+	
+	/**
+	 * The configuration with which the send window was created.
+	 */
+	private volatile WindowConfiguration activeWindowConfiguration;
+	
+	/**
+	 * Limits the requests in flight when the window is adaptive, null otherwise.
+	 */
+	private volatile AdaptiveWindowLimit windowLimit;
+	
+	/**
+	 * The requests sent with a {@link SmppResponseListener} that are waiting for a response, by sequence number.
+	 */
+	private final Map<Integer,PendingRequest> pendingRequests = new ConcurrentHashMap<Integer,PendingRequest>();
+
+	/**
+	 * If true, the {@link #send(Pdu)} method will wait until the PDU is written to the channel. Defaults to false.
+	 */
+	private volatile boolean blockingWrites = false;
+	
+	/**
+	 * Gathers the PDUs written at the same time in a single write.
+	 */
+	private final WriteCoalescer coalescer;
+	
+	/**
+	 * If false, each PDU is written as soon as it is sent, which is better for latency sensitive clients.
+	 */
+	private volatile boolean writeCoalescing = true;
+
+	/**
+	 * If true, the submit_sm packets are passed to the {@link PacketProcessor} as {@link LazySubmitSm} objects.
+	 */
+	private volatile boolean lazySubmitSm = false;
+	
+	/**
+	 * The number of PDUs that couldn't be written to the channel.
+	 */
+	private AtomicLong writeFailures = new AtomicLong();
+	
+	/**
+	 * The number of requests passed to the {@link PacketProcessor} that haven't been responded.
+	 */
+	private AtomicInteger inFlightRequests = new AtomicInteger();
+	
+	/**
+	 * The number of requests in flight at which the session stops reading from the channel, 0 to disable.
+	 */
+	private volatile int highWatermark = 0;
+	
+	/**
+	 * The number of requests in flight at which the session starts reading from the channel again.
+	 */
+	private volatile int lowWatermark = 0;
+	
+	/**
+	 * True if the requests in flight reached the high watermark and haven't gone down to the low watermark.
+	 */
+	private volatile boolean overloaded = false;
+	
+	/**
+	 * Tracks the requests in flight of the whole server, can be null.
+	 */
+	private FlowControl flowControl;
+	
+	/**
+	 * The time in milliseconds to wait for the response of the enquire_link sent when the session is idle.
+	 */
+	private long enquireLinkTimeout = 10000;
+	
+	/**
+	 * True if an enquire_link sent because the session was idle is waiting for a response.
+	 */
+	private final AtomicBoolean enquireLinkPending = new AtomicBoolean(false);
+	
+	/**
+	 * If false (the default), the enquire_link requests of the client are answered by the session from the I/O thread 
+	 * instead of being passed to the {@link PacketProcessor}.
+	 */
+	private volatile boolean enquireLinkToProcessor = false;
+	
+	/**
+	 * The time in milliseconds of the round trip of the last enquire_link sent to the client, -1 if none was answered.
+	 */
+	private volatile long enquireLinkRtt = -1;
+	
+	/**
+	 * The value of System.currentTimeMillis() when the last PDU was received.
+	 */
+	private volatile long lastActivity;
+	
+	/**
+	 * Closes the connection if the session is not bound in time, null if not scheduled.
+	 */
+	private volatile Timeout bindTimeoutTask;
+	
+	/**
+	 * Holds the rate limits, null if the messages are not limited.
+	 */
+	private Throttler throttler;
+	
+	/**
+	 * The token bucket of this session, created when the session is bound. Null if the session is not limited.
+	 */
+	private volatile TokenBucket sessionBucket;
+	
+	/**
+	 * The number of messages rejected because of the rate limits.
+	 */
+	private AtomicLong throttledRequests = new AtomicLong();
+	
+	/**
+	 * Notified when the session is bound and unbound, can be null.
+	 */
+	private SessionStateListener stateListener;
+	
+	/**
+	 * Logs the PDUs received and sent when tracing is enabled, can be null.
+	 */
+	private PduTracer tracer;
+	
+	/**
+	 * Encodes the outbound PDUs into pooled direct buffers, can be null.
+	 */
+	private DirectBufferPool bufferPool;
+	
+	/**
+	 * The number of requests received and responses sent by this session (the latencies are kept by system id).
+	 */
+	private final Metrics metrics = new Metrics(false);
+	
+	/**
+	 * Gives the metrics of the system id when the session is bound, can be null.
+	 */
+	private MetricsRegistry metricsRegistry;
+	
+	/**
+	 * The metrics of all the sessions bound with the same system id. Null until the session is bound.
+	 */
+	private volatile Metrics systemIdMetrics;
+
+	/**
+	 * Constructor. The requests sent with {@link #sendRequestAsync(SmppRequest, long, SmppResponseListener)} will 
+	 * not expire.
 	 * 
 	 * @param sessionId
 	 * @param channel
-	 * @param sessionListener
 	 * @param packetProcessor
 	 */
 	public SmppSession(int sessionId, Channel channel, PacketProcessor packetProcessor) {
+		this(sessionId, channel, packetProcessor, null);
+	}
+	
+	/**
+	 * Constructor.
+	 * 
+	 * @param sessionId
+	 * @param channel
+	 * @param packetProcessor
+	 * @param monitorExecutor used to expire the requests sent to the client that don't receive a response, can be 
+	 * null.
+	 */
+	public SmppSession(int sessionId, Channel channel, PacketProcessor packetProcessor, 
+			ScheduledExecutorService monitorExecutor) {
 		
 		if (channel == null) {
 			throw new IllegalArgumentException("no channel specified");
@@ -157,8 +379,11 @@ public class SmppSession extends SimpleChannelHandler {
 		this.sessionId = sessionId;
 		this.channel = channel;
 		this.packetProcessor = packetProcessor;
-		this.transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
+		this.coalescer = new WriteCoalescer(channel);
 		this.creationTime = new Date();
+		this.lastActivity = creationTime.getTime();
+		this.logHead = "[session-id=" + sessionId + "] ";
+		this.monitorExecutor = monitorExecutor;
 	}
 	
 	@ManagedAttribute
@@ -175,22 +400,70 @@ public class SmppSession extends SimpleChannelHandler {
 		
 		Pdu pdu = (Pdu) e.getMessage();
 		
+		lastActivity = System.currentTimeMillis();
+		
 		// handle responses to packets that were sent using the sendRequest(...) method
 		if (pdu.isResponse()) {
 			
 			PduResponse pduResponse = (PduResponse) pdu;
-			this.sendWindow.complete(pduResponse.getSequenceNumber(), pduResponse);
+			
+			if (tracer != null && tracer.isTraced(systemId)) {
+				tracer.trace(logHead, "in", pdu);
+			}
+			
+			Window<Integer,PduRequest,PduResponse> window = sendWindow;
+			if (window != null) {
+				
+				// set before the request is completed so that whoever waits for the response sees it
+				if (pduResponse.getCommandId() == SmppPacket.ENQUIRE_LINK_RESP) {
+					WindowFuture<Integer,PduRequest,PduResponse> pending = window.get(pduResponse.getSequenceNumber());
+					if (pending != null) {
+						enquireLinkRtt = System.currentTimeMillis() - pending.getOfferTimestamp();
+					}
+				}
+				
+				WindowFuture<Integer,PduRequest,PduResponse> future = 
+						window.complete(pduResponse.getSequenceNumber(), pduResponse);
+				
+				AdaptiveWindowLimit limit = windowLimit;
+				if (future != null && limit != null) {
+					limit.release();
+					limit.responseReceived( System.currentTimeMillis() - future.getOfferTimestamp() );
+				}
+			}
+			
+			// the client acknowledged our unbind
+			if (pduResponse.getCommandId() == SmppPacket.UNBIND_RESP) {
+				disconnect();
+			}
+			
+			PendingRequest pendingRequest = pendingRequests.remove(pduResponse.getSequenceNumber());
+			if (pendingRequest != null) {
+				try {
+					pendingRequest.listener.responseReceived(pendingRequest.request, 
+							(SmppResponse) PacketMapper.map(pduResponse));
+				} catch (Exception f) {
+					log.error(getLogHead() + "Exception calling the response listener: " + f.getMessage(), f);
+				}
+			}
 			
 			return;
 		}
 		
+		final long receivedAt = System.nanoTime();
+		
+		metrics.requestReceived();
+		Metrics m = systemIdMetrics;
+		if (m != null) {
+			m.requestReceived();
+		}
+		
 		// if packet is a bind request and session is already bound, respond with error
 		if (BaseBind.class.isInstance(pdu) && isBound()) {
 			
 			log.warn(getLogHead() + "session with system id " + systemId + " is already bound");
 			
-			PduResponse response = createResponse((PduRequest) pdu, Response.ALREADY_BOUND);
-			send(response);
+			respond((PduRequest) pdu, Response.ALREADY_BOUND, receivedAt);
 			
 			return;
 		}
@@ -198,155 +471,773 @@ public class SmppSession extends SimpleChannelHandler {
 		// if not a bind packet and session is not bound, respond with error
 		if (!BaseBind.class.isInstance(pdu) && !isBound()) {
 			
-			PduResponse response = createResponse((PduRequest) pdu, Response.INVALID_BIND_STATUS);
-			send(response);
+			respond((PduRequest) pdu, Response.INVALID_BIND_STATUS, receivedAt);
+			
+			return;
+		}
+		
+		// answer the enquire_link from the I/O thread so that it doesn't wait behind the requests being processed
+		if (pdu.getCommandId() == SmppPacket.ENQUIRE_LINK && !enquireLinkToProcessor) {
+			
+			if (tracer != null && tracer.isTraced(systemId)) {
+				tracer.trace(logHead, "in", pdu);
+			}
+			
+			respond((PduRequest) pdu, Response.OK, receivedAt);
+			
+			return;
+		}
+		
+		// reject the messages that exceed the rate limits before they reach the processor
+		if (pdu.getCommandId() == SmppPacket.SUBMIT_SM && !acquireToken()) {
+			
+			throttledRequests.incrementAndGet();
+			throttler.throttled();
+			
+			respond((PduRequest) pdu, Response.THROTTLING_ERROR, receivedAt);
 			
 			return;
 		}
 		
-		log.debug(getLogHead() + "received request PDU: " + pdu);
+		if (tracer != null && tracer.isTraced(systemId)) {
+			tracer.trace(logHead, "in", pdu);
+		}
+		
+		final PduRequest pduRequest = (PduRequest) pdu;
+		
+		requestStarted();
+		
+		if (executor == null) {
+			process(pduRequest, receivedAt);
+			return;
+		}
 		
-		ResponseSender responseSender = new OnlyOnceResponse( (PduRequest) pdu );
+		try {
+			executor.execute(new Runnable() {
 
-   	 	try {
-   	 		packetProcessor.processPacket( (SmppRequest) PacketMapper.map((PduRequest) pdu), responseSender );
-   	 	} catch (Exception f) {
-   	 		log.error("Exception calling the packet processor: " + f.getMessage(), f);
-   	 	}
+				@Override
+				public void run() {
+					process(pduRequest, receivedAt);
+				}
+				
+			});
+		} catch (RejectedExecutionException f) {
+			log.warn(getLogHead() + "couldn't queue request PDU for processing: " + f.getMessage());
+			
+			requestCompleted();
+			respond(pduRequest, Response.MESSAGE_QUEUE_FULL, receivedAt);
+		}
    	 	
 	}
 	
 	/**
-	 * Helper method. Creates a response PDU from the request and sets the command status from the {@link Response} 
-	 * object. 
-	 * 
-	 * @param request
-	 * @param response
-	 * 
-	 * @return the created PduResponse object
+	 * Helper method. Called when a request is passed to the {@link PacketProcessor}. Stops reading from the channel 
+	 * if the requests in flight reach the high watermark.
 	 */
-	private PduResponse createResponse(PduRequest<PduResponse> request, Response response) {
+	private void requestStarted() {
 		
-		PduResponse pduResponse = request.createResponse();
-		pduResponse.setCommandStatus( response.getCommandStatus() );
-		return pduResponse;
+		if (flowControl != null) {
+			flowControl.requestStarted();
+		}
+		
+		int count = inFlightRequests.incrementAndGet();
+		if (!overloaded && highWatermark > 0 && count >= highWatermark) {
+			updateOverloaded();
+		}
 		
 	}
 	
 	/**
-	 * Helper method. Sends a PDU through the channel link
-	 * 
-	 * @param pdu the Pdu to be sent.
+	 * Helper method. Called when the response of a request is sent. Starts reading from the channel again if the 
+	 * requests in flight go down to the low watermark.
 	 */
-	private void send(Pdu pdu) {
+	private void requestCompleted() {
 		
-		try {
-			
-			// encode the pdu into a buffer
-	        ChannelBuffer buffer = transcoder.encode(pdu);
-	
-	        // always log the PDU
-	        log.info(getLogHead() + "sending PDU to client: {}", pdu);
-	
-	        // write the pdu out & wait till its written
-	        ChannelFuture channelFuture = this.channel.write(buffer).await();
-	
-	        // check if the write was a success
-	        if (!channelFuture.isSuccess()) {
-	        	throw new SmppChannelException(channelFuture.getCause().getMessage(), channelFuture.getCause());
-	        }
-	        
-		} catch (Exception e) {
-			log.error(getLogHead() + "fatal exception thrown while attempting to send PDU to client: {}", e);
+		// the requests in flight are discarded when the channel is closed, see channelClosed
+		int count;
+		do {
+			count = inFlightRequests.get();
+			if (count == 0) {
+				return;
+			}
+		} while (!inFlightRequests.compareAndSet(count, count - 1));
+		
+		if (flowControl != null) {
+			flowControl.requestCompleted();
+		}
+		
+		if (overloaded && count - 1 <= lowWatermark) {
+			updateOverloaded();
 		}
+		
 	}
 	
 	/**
-	 * Unbinds (if the connection is bound) and closes the connection.
+	 * Helper method. Sets the overloaded flag from the current number of requests in flight and suspends or resumes 
+	 * the reading from the channel accordingly. The flag is checked without the lock by the threads that start and 
+	 * complete requests, so it is re-checked after it changes: a thread that completed a request before the flag 
+	 * was set didn't see it set and won't resume the reading.
 	 */
-	@ManagedOperation
-	public void close() {
+	private synchronized void updateOverloaded() {
 		
-		if (!isBound()) {
-			disconnect();
-		} else {
-			sendRequest( new Unbind(), 500);
+		while (true) {
+			
+			int count = inFlightRequests.get();
+			boolean overload = highWatermark > 0 && (overloaded ? count > lowWatermark : count >= highWatermark);
+			
+			if (overload == overloaded) {
+				return;
+			}
+			
+			overloaded = overload;
+			updateReadable();
 		}
+		
 	}
 	
 	/**
-	 * Sends an {@link SmppRequest} to the client.
-	 * 
-	 * @param packet the request packet to send to the client.
-	 * 
-	 * @return the received {@link SmppResponse}
-	 * @throws SmppException
+	 * Suspends or resumes the reading from the channel depending on the requests in flight of this session and of 
+	 * the whole server.
 	 */
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	public SmppResponse sendRequest(SmppRequest packet, long timeout) throws SmppException {
+	synchronized void updateReadable() {
 		
-		if (packet == null) {
-			throw new IllegalArgumentException("No packet specified");
-		}
+		boolean readable = !overloaded && (flowControl == null || !flowControl.isSuspended());
 		
-		// send requests only if already bound
-		if (!isBound()) {
-			throw new IllegalStateException("The session is not bound.");
+		if (channel.isReadable() != readable) {
+			log.debug(getLogHead() + (readable ? "resuming" : "suspending") + " reads from the channel");
+			channel.setReadable(readable);
 		}
 		
-		// only some packets can be sent to the client
-		if (packet.getCommandId() != SmppPacket.DELIVER_SM &&
-				packet.getCommandId() != SmppPacket.ENQUIRE_LINK &&
-				packet.getCommandId() != SmppPacket.UNBIND) {
-			throw new IllegalArgumentException("Not allowed to send this packet to the client. Possible packets: " +
-					"deliver_sm, enquire_link, unbind");
+	}
+	
+	/**
+	 * Helper method. Takes a token from the bucket of the session and from the bucket of the system id.
+	 * 
+	 * @return true if the message is within the rate limits, false otherwise.
+	 */
+	private boolean acquireToken() {
+		
+		if (throttler == null) {
+			return true;
 		}
 		
-		// set the sequence number if not assigned
-		if (packet.getSequenceNumber() == -1) {
-			packet.setSequenceNumber( sequenceId.incrementAndGet() );
+		// the bucket of the session is only used by the I/O thread of the session, so it is checked first and the 
+		// token is taken only if the shared bucket of the system id also has one
+		TokenBucket bucket = sessionBucket;
+		if (bucket != null && !bucket.hasToken()) {
+			return false;
 		}
 		
-		try {
-			PduRequest pdu = (PduRequest) PacketMapper.map(packet);
-	        
-	        WindowFuture<Integer,PduRequest,PduResponse> future = null;
-	        try {
-	            future = sendWindow.offer(pdu.getSequenceNumber(), pdu, 30000, 60000, true);
-	        } catch (Exception e) {
-	        	throw new SmppException(e);
-	        }
-	        
-	        send(pdu);
-	        
-	        // wait for the response to arrive
-	        /* TODO we could return a future to the client or notify a callback object */
-	        future.await(timeout);
-	        
-	        if (packet.getCommandId() == SmppPacket.UNBIND) {
-	        	disconnect();
-	        }
-	        
-	        return (SmppResponse) PacketMapper.map( future.getResponse() );
-	        
-		} catch (Exception e) {
-			throw new SmppException(e);
+		if (!throttler.tryAcquire(systemId)) {
+			return false;
 		}
 		
+		return bucket == null || bucket.tryAcquire();
+		
 	}
 	
 	/**
-	 * Sets the status to Status.CLOSED and loses the channel link.
+	 * Helper method. Maps the request PDU and calls the {@link PacketProcessor}.
 	 * 
-	 * @throws IOException if there is a problem closing the socket.
+	 * @param pduRequest the request PDU to be processed.
+	 * @param receivedAt the value of System.nanoTime() when the request was received.
 	 */
-	private void disconnect() {
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void process(PduRequest pduRequest, long receivedAt) {
 		
-		this.status = Status.CLOSED;
+		OnlyOnceResponse responseSender = new OnlyOnceResponse(pduRequest, receivedAt);
+
+   	 	try {
+   	 		packetProcessor.processPacket( (SmppRequest) PacketMapper.map(pduRequest, lazySubmitSm), responseSender );
+   	 	} catch (Exception f) {
+   	 		log.error(getLogHead() + "Exception calling the packet processor: " + f.getMessage(), f);
+   	 		
+   	 		// the request is completed (and no longer counted in flight) only when it is answered
+   	 		if (!responseSender.isSent()) {
+   	 			responseSender.send(Response.SYSTEM_ERROR);
+   	 		}
+   	 	}
+   	 	
+	}
+	
+	/**
+	 * Helper method. Creates a response PDU from the request and sets the command status from the {@link Response} 
+	 * object. 
+	 * 
+	 * @param request
+	 * @param response
+	 * 
+	 * @return the created PduResponse object
+	 */
+	private PduResponse createResponse(PduRequest<PduResponse> request, Response response) {
+		
+		PduResponse pduResponse = request.createResponse();
+		pduResponse.setCommandStatus( response.getCommandStatus() );
+		return pduResponse;
+		
+	}
+	
+	/**
+	 * Helper method. Creates the response of a request that is not passed to the {@link PacketProcessor}, sends it and 
+	 * records its latency.
+	 * 
+	 * @param request the request PDU.
+	 * @param response the {@link Response} with the command status.
+	 * @param receivedAt the value of System.nanoTime() when the request was received.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private void respond(PduRequest request, Response response, long receivedAt) {
+		
+		ChannelFuture writeFuture;
+		if (ResponseEncoder.isEncoded(request.getCommandId())) {
+			writeFuture = sendEncoded(request, response);
+		} else {
+			writeFuture = send( createResponse(request, response) );
+		}
+		responseSent(writeFuture, request.getCommandId(), response.getCommandStatus(), receivedAt);
+		
+	}
+	
+	/**
+	 * Helper method. Records the latency of a response in the metrics of the session and of its system id once it is 
+	 * written, so that it includes the time the response waits to be written (e.g. gathered by the 
+	 * {@link WriteCoalescer}). Responses that couldn't be written are not recorded.
+	 * 
+	 * @param writeFuture the future of the write of the response.
+	 * @param commandId the command id of the request.
+	 * @param commandStatus the command status of the response.
+	 * @param receivedAt the value of System.nanoTime() when the request was received.
+	 */
+	private void responseSent(ChannelFuture writeFuture, final int commandId, final int commandStatus, 
+			final long receivedAt) {
+		
+		writeFuture.addListener(new ChannelFutureListener() {
+
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				
+				if (!future.isSuccess()) {
+					return;
+				}
+				
+				long micros = (System.nanoTime() - receivedAt) / 1000;
+				
+				metrics.responseSent(commandId, commandStatus, micros);
+				
+				Metrics m = systemIdMetrics;
+				if (m != null) {
+					m.responseSent(commandId, commandStatus, micros);
+				}
+			}
+			
+		});
+	}
+	
+	/**
+	 * Helper method. Sends the response of a submit_sm or enquire_link encoded by the {@link ResponseEncoder}, which 
+	 * skips the creation of the response PDU and the generic transcoder. 
+	 * 
+	 * @param request the request PDU.
+	 * @param response the {@link Response} with the command status and the message id.
+	 * 
+	 * @return the ChannelFuture of the write.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private ChannelFuture sendEncoded(PduRequest request, Response response) {
+		
+		int commandId = request.getCommandId();
+		String messageId = commandId == SmppPacket.SUBMIT_SM ? response.getMessageId() : null;
+		int length = commandId == SmppPacket.SUBMIT_SM ? 
+				ResponseEncoder.submitSmRespLength(messageId) : ResponseEncoder.ENQUIRE_LINK_RESP_LENGTH;
+		
+		final DirectBufferPool pool = bufferPool;
+		ChannelBuffer buffer = pool != null ? pool.acquire(length) : null;
+		if (buffer == null) {
+			buffer = ChannelBuffers.buffer(length);
+		}
+		
+		if (commandId == SmppPacket.SUBMIT_SM) {
+			ResponseEncoder.writeSubmitSmResp(buffer, request.getSequenceNumber(), response.getCommandStatus(), messageId);
+		} else {
+			ResponseEncoder.writeEnquireLinkResp(buffer, request.getSequenceNumber(), response.getCommandStatus());
+		}
+		
+		// the response PDU is only created to be traced
+		if (tracer != null && tracer.isTraced(systemId)) {
+			PduResponse pduResponse = createResponse(request, response);
+			if (messageId != null) {
+				((SubmitSmResp) pduResponse).setMessageId(messageId);
+			}
+			tracer.trace(logHead, "out", pduResponse);
+		}
+		
+		return write(buffer, pool, request);
+	}
+	
+	/**
+	 * Helper method. Sends a PDU through the channel link. The write is asynchronous unless
+	 * {@link #setBlockingWrites(boolean)} was set to true; failed writes are logged and counted in
+	 * {@link #getWriteFailures()}.
+	 *
+	 * @param pdu the Pdu to be sent.
+	 *
+	 * @return the ChannelFuture of the write, a failed future if the PDU couldn't be encoded.
+	 */
+	private ChannelFuture send(final Pdu pdu) {
+
+		try {
+
+			// encode the pdu into a buffer, a pooled one if it fits
+			final DirectBufferPool pool = bufferPool;
+			ChannelBuffer pooledBuffer = pool != null ? pool.encode(pdu) : null;
+	        final ChannelBuffer buffer = pooledBuffer != null ? pooledBuffer : transcoder.encode(pdu);
+
+	        if (tracer != null && tracer.isTraced(systemId)) {
+	        	tracer.trace(logHead, "out", pdu);
+	        }
+
+	        return write(buffer, pool, pdu);
+
+		} catch (Exception e) {
+			log.error(getLogHead() + "fatal exception thrown while attempting to send PDU to client: {}", e);
+			return Channels.failedFuture(channel, e);
+		}
+
+	}
+	
+	/**
+	 * Helper method. Writes an encoded PDU to the channel and returns the buffer to the pool once it is written.
+	 * 
+	 * @param buffer the encoded PDU.
+	 * @param pool the pool to which the buffer is returned, can be null.
+	 * @param pdu the PDU that is written or, for the responses encoded by the {@link ResponseEncoder}, its request; 
+	 * only used to log a failed write.
+	 * 
+	 * @return the ChannelFuture of the write.
+	 */
+	private ChannelFuture write(final ChannelBuffer buffer, final DirectBufferPool pool, final Pdu pdu) {
+		
+		// write the pdu out, the result is checked by the listener
+		// blocking writes can't wait until the read is processed
+		ChannelFuture channelFuture = writeCoalescing && !blockingWrites ? 
+				coalescer.write(buffer) : this.channel.write(buffer);
+		channelFuture.addListener(new ChannelFutureListener() {
+
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				
+				// the buffer is no longer referenced by the channel
+				if (pool != null) {
+					pool.release(buffer);
+				}
+				
+				if (!future.isSuccess()) {
+					writeFailures.incrementAndGet();
+					log.error(getLogHead() + "couldn't write PDU to client: " + pdu, future.getCause());
+				}
+			}
+
+		});
+
+		if (blockingWrites) {
+			try {
+				channelFuture.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		return channelFuture;
+	}
+	
+	/**
+	 * Unbinds (if the connection is bound) and closes the connection.
+	 */
+	@ManagedOperation
+	public void close() {
+		
+		if (!isBound()) {
+			disconnect();
+		} else {
+			sendRequest( new Unbind(), 500);
+		}
+	}
+	
+	/**
+	 * Sends an {@link SmppRequest} to the client and waits for the response.
+	 * 
+	 * @param packet the request packet to send to the client.
+	 * @param timeout the maximum time in milliseconds to wait for the response.
+	 * 
+	 * @return the received {@link SmppResponse}
+	 * @throws SmppException
+	 */
+	@SuppressWarnings("rawtypes")
+	public SmppResponse sendRequest(SmppRequest packet, long timeout) throws SmppException {
+		
+		WindowFuture<Integer,PduRequest,PduResponse> future = sendRequestAsync(packet, timeout, null);
+		
+		try {
+	        
+	        // wait for the response to arrive
+	        future.await(timeout);
+	        
+	        if (packet.getCommandId() == SmppPacket.UNBIND) {
+	        	disconnect();
+	        }
+	        
+	        return (SmppResponse) PacketMapper.map( future.getResponse() );
+	        
+		} catch (Exception e) {
+			throw new SmppException(e);
+		}
+		
+	}
+	
+	/**
+	 * Sends an {@link SmppRequest} to the client without waiting for the response. Multiple requests can be in 
+	 * flight at the same time as long as there is room in the send window. The outcome is notified to the 
+	 * {@link SmppResponseListener} (if specified) and through the returned future.
+	 * 
+	 * <p>The timeout is enforced by the window monitor of the session, which is started if a monitor executor is 
+	 * passed in the constructor (the {@link SmppServer} always does it).</p>
+	 * 
+	 * <p><strong>Note:</strong> if the send window is full, this method blocks the caller until there is room in the 
+	 * window or the offer timeout of the {@link WindowConfiguration} elapses. Don't call it from the I/O thread (e.g. 
+	 * from a {@link PacketProcessor} in {@link ProcessingMode#DIRECT} mode) with a long offer timeout, use 
+	 * {@link #sendRequestAsync(SmppRequest, long, SmppResponseListener, long)} with an offer timeout of 0 instead.</p>
+	 * 
+	 * @param packet the request packet to send to the client.
+	 * @param timeout the maximum time in milliseconds to wait for the response.
+	 * @param listener the {@link SmppResponseListener} that will be notified, can be null.
+	 * 
+	 * @return the future that will hold the response.
+	 * @throws SmppException if the request couldn't be added to the send window.
+	 */
+	@SuppressWarnings("rawtypes")
+	public WindowFuture<Integer,PduRequest,PduResponse> sendRequestAsync(SmppRequest packet, long timeout, 
+			SmppResponseListener listener) throws SmppException {
+		// null if the session was never bound, the other overload throws the IllegalStateException
+		WindowConfiguration configuration = activeWindowConfiguration;
+		long offerTimeout = configuration != null ? configuration.getOfferTimeout() : windowConfiguration.getOfferTimeout();
+		
+		return sendRequestAsync(packet, timeout, listener, offerTimeout);
+	}
+	
+	/**
+	 * Same as {@link #sendRequestAsync(SmppRequest, long, SmppResponseListener)} but waits at most the specified 
+	 * time for room in the send window.
+	 * 
+	 * @param packet the request packet to send to the client.
+	 * @param timeout the maximum time in milliseconds to wait for the response.
+	 * @param listener the {@link SmppResponseListener} that will be notified, can be null.
+	 * @param offerTimeout the maximum time in milliseconds to wait for room in the send window, 0 to fail 
+	 * immediately if the window is full.
+	 * 
+	 * @return the future that will hold the response.
+	 * @throws SmppException if the request couldn't be added to the send window.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public WindowFuture<Integer,PduRequest,PduResponse> sendRequestAsync(final SmppRequest packet, long timeout, 
+			SmppResponseListener listener, long offerTimeout) throws SmppException {
+		
+		if (packet == null) {
+			throw new IllegalArgumentException("No packet specified");
+		}
+		
+		// send requests only if already bound
+		if (!isBound()) {
+			throw new IllegalStateException("The session is not bound.");
+		}
+		
+		// only some packets can be sent to the client
+		if (packet.getCommandId() != SmppPacket.DELIVER_SM &&
+				packet.getCommandId() != SmppPacket.ENQUIRE_LINK &&
+				packet.getCommandId() != SmppPacket.UNBIND) {
+			throw new IllegalArgumentException("Not allowed to send this packet to the client. Possible packets: " +
+					"deliver_sm, enquire_link, unbind");
+		}
+		
+		// set the sequence number if not assigned
+		if (packet.getSequenceNumber() == -1) {
+			packet.setSequenceNumber( sequenceId.incrementAndGet() );
+		}
+		
+		final AdaptiveWindowLimit limit = windowLimit;
+		
+		final WindowFuture<Integer,PduRequest,PduResponse> future;
+		try {
+			long offerStart = System.currentTimeMillis();
+			if (limit != null && !limit.acquire(offerTimeout)) {
+				throw new SmppException("Timeout waiting for room in the send window");
+			}
+			
+			try {
+				// the time waiting for the limit counts in the offer timeout
+				long remainingTimeout = Math.max(0, offerTimeout - (System.currentTimeMillis() - offerStart));
+				
+				PduRequest pdu = (PduRequest) PacketMapper.map(packet);
+		        future = sendWindow.offer(pdu.getSequenceNumber(), pdu, remainingTimeout, timeout, listener == null);
+			} catch (Exception e) {
+				if (limit != null) {
+					limit.release();
+				}
+				throw e;
+			}
+		} catch (SmppException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new SmppException(e);
+		}
+		
+		if (listener != null) {
+			pendingRequests.put( packet.getSequenceNumber(), new PendingRequest(packet, listener) );
+		}
+	        
+		send( future.getRequest() ).addListener(new ChannelFutureListener() {
+
+			@Override
+			public void operationComplete(ChannelFuture channelFuture) throws Exception {
+				if (!channelFuture.isSuccess()) {
+					future.fail( channelFuture.getCause() );
+					if (limit != null) {
+						limit.release();
+					}
+					requestFailed( packet.getSequenceNumber(), channelFuture.getCause() );
+				}
+			}
+			
+		});
+		
+		return future;
+		
+	}
+	
+	/**
+	 * Called by the window monitor when a request sent to the client didn't receive a response before the timeout.
+	 */
+	@SuppressWarnings("rawtypes")
+	@Override
+	public void expired(WindowFuture<Integer,PduRequest,PduResponse> future) {
+		
+		log.warn(getLogHead() + "request expired before receiving a response: " + future.getRequest());
+		
+		AdaptiveWindowLimit limit = windowLimit;
+		if (limit != null) {
+			limit.release();
+			limit.requestExpired();
+		}
+		
+		requestFailed( future.getKey(), new SmppException("Timeout waiting for the response") );
+		
+	}
+	
+	/**
+	 * Handles the {@link IdleStateEvent} fired by the {@link IdleStateHandler} of the pipeline (if configured) when 
+	 * nothing is read from the channel for a while. Other events are handled as usual.
+	 */
+	@Override
+	public void handleUpstream(ChannelHandlerContext ctx, ChannelEvent e) throws Exception {
+		
+		if (IdleStateEvent.class.isInstance(e)) {
+			if (((IdleStateEvent) e).getState() == IdleState.READER_IDLE) {
+				readerIdle();
+			}
+			return;
+		}
+		
+		super.handleUpstream(ctx, e);
+	}
+	
+	/**
+	 * Helper method. Called when nothing has been read from the channel for a while. If the session is bound, it 
+	 * sends an enquire_link and closes the connection if the client doesn't answer; otherwise, it closes the 
+	 * connection. Nothing is done while the reads are suspended (see {@link #setWatermarks(int, int)}).
+	 */
+	private void readerIdle() {
+		
+		// nothing can be read while the reads are suspended because of the requests in flight, not even the 
+		// response of an enquire_link, but the client is not idle
+		if (overloaded || !channel.isReadable()) {
+			log.debug(getLogHead() + "session is idle but the reads are suspended, skipping the idle check");
+			return;
+		}
+		
+		if (!isBound()) {
+			log.info(getLogHead() + "closing idle session that is not bound");
+			disconnect();
+			return;
+		}
+		
+		// there is already an enquire_link waiting for a response
+		if (!enquireLinkPending.compareAndSet(false, true)) {
+			return;
+		}
+		
+		// nothing was read and the window is full, the client isn't answering our requests
+		if (getWindowFill() >= getWindowSize()) {
+			enquireLinkPending.set(false);
+			log.info(getLogHead() + "closing idle session with a full send window");
+			disconnect();
+			return;
+		}
+		
+		log.debug(getLogHead() + "session is idle, sending enquire_link");
+		
+		try {
+			// the timer thread must not wait for room in the window
+			sendRequestAsync(new EnquireLink(), enquireLinkTimeout, new SmppResponseListener() {
+
+				@Override
+				public void responseReceived(SmppRequest request, SmppResponse response) {
+					enquireLinkPending.set(false);
+				}
+
+				@Override
+				public void requestFailed(SmppRequest request, Throwable cause) {
+					enquireLinkPending.set(false);
+					
+					log.info(getLogHead() + "closing session, enquire_link not answered: " + cause.getMessage());
+					disconnect();
+				}
+				
+			}, 0);
+		} catch (Exception e) {
+			enquireLinkPending.set(false);
+			log.warn(getLogHead() + "couldn't send enquire_link, closing session: " + e.getMessage());
+			disconnect();
+		}
+		
+	}
+	
+	/**
+	 * Closes the connection if the session is not bound after the specified time.
+	 * 
+	 * @param timer the timer used to schedule the check.
+	 * @param bindTimeout the time in milliseconds the client has to bind.
+	 */
+	void startBindTimer(Timer timer, final long bindTimeout) {
+		
+		bindTimeoutTask = timer.newTimeout(new TimerTask() {
+
+			@Override
+			public void run(Timeout timeout) throws Exception {
+				if (status == Status.OPEN) {
+					log.info(getLogHead() + "closing session, no bind received in " + bindTimeout + " ms");
+					disconnect();
+				}
+			}
+			
+		}, bindTimeout, TimeUnit.MILLISECONDS);
+		
+	}
+	
+	@Override
+	public void channelClosed(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		
+		if (bindTimeoutTask != null) {
+			bindTimeoutTask.cancel();
+		}
+		
+		// closed first so that a bind answered concurrently doesn't create a window after it is destroyed
+		markClosed();
+		
+		// cancels the pending requests and stops the window monitor
+		if (sendWindow != null) {
+			sendWindow.destroy();
+		}
+		
+		// the requests that were not answered are no longer in flight for the whole server
+		int remaining = inFlightRequests.getAndSet(0);
+		if (remaining > 0 && flowControl != null) {
+			flowControl.requestsCompleted(remaining);
+		}
+		
+		for (Integer key : pendingRequests.keySet()) {
+			requestFailed( key, new SmppException("The channel was closed") );
+		}
+		
+		super.channelClosed(ctx, e);
+	}
+	
+	/**
+	 * Helper method. Notifies the listener of a request that is waiting for a response (if any) that the request 
+	 * failed.
+	 * 
+	 * @param sequenceNumber the sequence number of the request.
+	 * @param cause the cause of the failure.
+	 */
+	private void requestFailed(Integer sequenceNumber, Throwable cause) {
+		
+		PendingRequest pendingRequest = pendingRequests.remove(sequenceNumber);
+		if (pendingRequest == null) {
+			return;
+		}
 		
 		try {
-			channel.disconnect().await(500);
-		} catch (InterruptedException e) { }
+			pendingRequest.listener.requestFailed(pendingRequest.request, cause);
+		} catch (Exception e) {
+			log.error(getLogHead() + "Exception calling the response listener: " + e.getMessage(), e);
+		}
+		
+	}
+	
+	/**
+	 * Helper method. Creates the send window when the session is bound using the configuration of the system id or 
+	 * the default one.
+	 */
+	private void createSendWindow() {
+		
+		WindowConfiguration configuration = null;
+		if (windowConfigurations != null) {
+			configuration = windowConfigurations.get(systemId);
+		}
+		if (configuration == null) {
+			configuration = windowConfiguration;
+		}
+		
+		if (configuration.isAdaptive()) {
+			windowLimit = new AdaptiveWindowLimit(Math.min(configuration.getMinSize(), configuration.getSize()), 
+					configuration.getSize(), configuration.getTargetLatency());
+		}
+		
+		if (monitorExecutor != null) {
+			sendWindow = new Window<Integer,PduRequest,PduResponse>(configuration.getSize(), monitorExecutor, 
+					WINDOW_MONITOR_INTERVAL, this, getId() + ".Monitor");
+		} else {
+			sendWindow = new Window<Integer,PduRequest,PduResponse>(configuration.getSize());
+		}
+		
+		activeWindowConfiguration = configuration;
+		
+	}
+	
+	/**
+	 * Sets the status to Status.CLOSED and closes the channel link. It doesn't wait for the channel to be 
+	 * disconnected as it can be called from an I/O thread.
+	 */
+	private void disconnect() {
+		
+		markClosed();
+		channel.disconnect();
+		
+	}
+	
+	/**
+	 * Helper method. Sets the status to Status.CLOSED and notifies the {@link SessionStateListener} if the session 
+	 * was bound.
+	 */
+	private void markClosed() {
+		
+		Status previous;
+		synchronized (statusLock) {
+			previous = status;
+			status = Status.CLOSED;
+		}
+		
+		if (previous == Status.BOUND && stateListener != null) {
+			stateListener.unbound(this);
+		}
 		
 	}
 
@@ -409,6 +1300,14 @@ public class SmppSession extends SimpleChannelHandler {
 		return systemId;
 	}
 	
+	/**
+	 * @return the system id which was used by the client to bind the session, even if the session is no longer bound, 
+	 * null if it was never bound.
+	 */
+	String getBoundSystemId() {
+		return systemId;
+	}
+	
 	public Date creationTime() {
 		return creationTime;
 	}
@@ -456,10 +1355,328 @@ public class SmppSession extends SimpleChannelHandler {
 		return packetProcessor;
 	}
 	
+	/**
+	 * Sets the executor in which the {@link PacketProcessor} will be called. If the executor rejects a request, the 
+	 * client is answered with {@link Response#MESSAGE_QUEUE_FULL}.
+	 * 
+	 * @param executor the executor to be used or null to call the {@link PacketProcessor} from the I/O thread.
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * Sets the number of requests in flight (passed to the {@link PacketProcessor} but not responded) at which the 
+	 * session stops reading from the channel and the number at which it starts reading again.
+	 * 
+	 * @param highWatermark the number of requests in flight at which the session stops reading, 0 to disable.
+	 * @param lowWatermark the number of requests in flight at which the session starts reading again.
+	 */
+	public void setWatermarks(int highWatermark, int lowWatermark) {
+		
+		if (highWatermark > 0 && (lowWatermark < 0 || lowWatermark >= highWatermark)) {
+			throw new IllegalArgumentException("lowWatermark must be between 0 and highWatermark");
+		}
+		
+		this.highWatermark = highWatermark;
+		this.lowWatermark = lowWatermark;
+		
+		updateOverloaded();
+	}
+	
+	/**
+	 * Sets the object that tracks the requests in flight of the whole server.
+	 * 
+	 * @param flowControl the {@link FlowControl} of the server.
+	 */
+	void setFlowControl(FlowControl flowControl) {
+		this.flowControl = flowControl;
+	}
+	
+	/**
+	 * @return the number of requests passed to the {@link PacketProcessor} that haven't been responded.
+	 */
+	@ManagedAttribute
+	public int getInFlightRequests() {
+		return inFlightRequests.get();
+	}
+	
+	/**
+	 * @return true if the session stopped reading from the channel because of the requests in flight.
+	 */
+	@ManagedAttribute
+	public boolean isReadSuspended() {
+		return !channel.isReadable();
+	}
+	
+	/**
+	 * Sets the time to wait for the response of the enquire_link that is sent when the session is idle. If the 
+	 * response doesn't arrive, the connection is closed.
+	 * 
+	 * @param enquireLinkTimeout the time in milliseconds.
+	 */
+	public void setEnquireLinkTimeout(long enquireLinkTimeout) {
+		this.enquireLinkTimeout = enquireLinkTimeout;
+	}
+	
+	public long getEnquireLinkTimeout() {
+		return enquireLinkTimeout;
+	}
+	
+	/**
+	 * Sets whether the enquire_link requests of the client are passed to the {@link PacketProcessor}. By default 
+	 * they are answered by the session as soon as they are read so that they don't compete with the other requests 
+	 * for the processor (a client that doesn't receive the response in time usually drops the connection).
+	 * 
+	 * @param enquireLinkToProcessor true to pass the enquire_link requests to the processor, false otherwise.
+	 */
+	public void setEnquireLinkToProcessor(boolean enquireLinkToProcessor) {
+		this.enquireLinkToProcessor = enquireLinkToProcessor;
+	}
+	
+	public boolean isEnquireLinkToProcessor() {
+		return enquireLinkToProcessor;
+	}
+	
+	/**
+	 * @return the time in milliseconds of the round trip of the last enquire_link sent to the client, -1 if none was 
+	 * answered.
+	 */
+	@ManagedAttribute
+	public long getEnquireLinkRtt() {
+		return enquireLinkRtt;
+	}
+	
+	/**
+	 * @return the value of System.currentTimeMillis() when the last PDU was received from the client (or when the 
+	 * session was created if none was received).
+	 */
+	public long getLastActivity() {
+		return lastActivity;
+	}
+	
+	/**
+	 * @return the time in milliseconds since the last PDU was received from the client.
+	 */
+	@ManagedAttribute
+	public long getInactiveTime() {
+		return System.currentTimeMillis() - lastActivity;
+	}
+	
+	/**
+	 * Sets the rate limits of the session. Takes effect when the session is bound.
+	 * 
+	 * @param throttler holds the rate limits, null to accept the messages at any rate.
+	 */
+	void setThrottler(Throttler throttler) {
+		this.throttler = throttler;
+	}
+	
+	/**
+	 * @param stateListener notified when the session is bound and unbound, can be null.
+	 */
+	void setStateListener(SessionStateListener stateListener) {
+		this.stateListener = stateListener;
+	}
+	
+	/**
+	 * @param tracer logs the PDUs received and sent when tracing is enabled, can be null.
+	 */
+	void setTracer(PduTracer tracer) {
+		this.tracer = tracer;
+	}
+	
+	/**
+	 * @param metricsRegistry gives the metrics of the system id when the session is bound, can be null.
+	 */
+	void setMetricsRegistry(MetricsRegistry metricsRegistry) {
+		this.metricsRegistry = metricsRegistry;
+	}
+	
+	/**
+	 * @param bufferPool encodes the outbound PDUs into pooled direct buffers, can be null.
+	 */
+	void setBufferPool(DirectBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+	
+	/**
+	 * @return the number of requests received by the session.
+	 */
+	@ManagedAttribute
+	public long getReceivedRequests() {
+		return metrics.getRequests();
+	}
+	
+	/**
+	 * @return the statistics of the responses sent by the session, by command id and command status. Only the counts 
+	 * are kept by session, the latencies are reported as 0 (see {@link SmppServer#getCommandStats(String)}).
+	 */
+	public List<CommandStats> getCommandStats() {
+		return metrics.getStats();
+	}
+	
+	/**
+	 * @return a line with the statistics of each command id and command status of the responses sent by the session.
+	 */
+	@ManagedOperation
+	public String[] listCommandStats() {
+		return toLines(metrics.getStats());
+	}
+	
+	static String[] toLines(List<CommandStats> stats) {
+		
+		String[] lines = new String[stats.size()];
+		for (int i=0; i < lines.length; i++) {
+			lines[i] = stats.get(i).toString();
+		}
+		
+		return lines;
+	}
+	
+	/**
+	 * @return the number of messages rejected because of the rate limits.
+	 */
+	@ManagedAttribute
+	public long getThrottledRequests() {
+		return throttledRequests.get();
+	}
+	
+	/**
+	 * Sets the configuration of the send window. Takes effect when the session is bound.
+	 * 
+	 * @param windowConfiguration the {@link WindowConfiguration} to be used.
+	 */
+	public void setWindowConfiguration(WindowConfiguration windowConfiguration) {
+		
+		if (windowConfiguration == null) {
+			throw new IllegalArgumentException("No windowConfiguration specified");
+		}
+		
+		this.windowConfiguration = windowConfiguration;
+	}
+	
+	/**
+	 * Sets the configurations of the send window by system id. If there is no configuration for the system id used to 
+	 * bind, the one set with {@link #setWindowConfiguration(WindowConfiguration)} is used.
+	 * 
+	 * @param windowConfigurations the configurations by system id.
+	 */
+	void setWindowConfigurations(Map<String,WindowConfiguration> windowConfigurations) {
+		this.windowConfigurations = windowConfigurations;
+	}
+	
+	/**
+	 * @return the maximum number of requests that can be waiting for a response, 0 if the session is not bound.
+	 */
+	@ManagedAttribute
+	public int getWindowSize() {
+		
+		AdaptiveWindowLimit limit = windowLimit;
+		if (limit != null) {
+			return limit.getSize();
+		}
+		
+		Window<Integer,PduRequest,PduResponse> window = sendWindow;
+		return window != null ? window.getMaxSize() : 0;
+	}
+	
+	/**
+	 * @return the number of requests waiting for a response.
+	 */
+	@ManagedAttribute
+	public int getWindowFill() {
+		Window<Integer,PduRequest,PduResponse> window = sendWindow;
+		return window != null ? window.getSize() : 0;
+	}
+	
+	/**
+	 * Sets whether the submit_sm packets are passed to the {@link PacketProcessor} as {@link LazySubmitSm} objects, 
+	 * which read the fields from the decoded packet only when they are requested, instead of copying all the fields.
+	 * 
+	 * @param lazySubmitSm true to map the submit_sm packets lazily, false otherwise.
+	 */
+	public void setLazySubmitSm(boolean lazySubmitSm) {
+		this.lazySubmitSm = lazySubmitSm;
+	}
+	
+	public boolean isLazySubmitSm() {
+		return lazySubmitSm;
+	}
+	
+	/**
+	 * Sets whether the PDUs are written synchronously (waiting until the write completes) or asynchronously. 
+	 * Asynchronous writes are the default as a blocking write parks the thread (usually the I/O worker) until the 
+	 * PDU is written.
+	 * 
+	 * @param blockingWrites true to wait for every write to complete, false otherwise.
+	 */
+	public void setBlockingWrites(boolean blockingWrites) {
+		this.blockingWrites = blockingWrites;
+	}
+	
+	public boolean isBlockingWrites() {
+		return blockingWrites;
+	}
+	
+	/**
+	 * Sets whether the PDUs sent at the same time are gathered in a single write. When enabled (the default), the 
+	 * responses sent while the data of a read is processed (e.g. several pipelined submit_sm in 
+	 * {@link ProcessingMode#DIRECT} mode) are written together once the whole read is processed. Disable it to write 
+	 * each PDU as soon as it is sent. Has no effect with blocking writes.
+	 * 
+	 * @param writeCoalescing true to gather the PDUs, false to write them one by one.
+	 */
+	public void setWriteCoalescing(boolean writeCoalescing) {
+		
+		this.writeCoalescing = writeCoalescing;
+		
+		// write what was gathered so far
+		if (!writeCoalescing) {
+			coalescer.flush();
+		}
+	}
+	
+	public boolean isWriteCoalescing() {
+		return writeCoalescing;
+	}
+	
+	/**
+	 * @return the handler that the server adds to the pipeline before the decoder to write the gathered PDUs once 
+	 * the data of each read is processed.
+	 */
+	ChannelUpstreamHandler getReadHandler() {
+		return coalescer.getReadHandler();
+	}
+	
+	/**
+	 * @return the number of PDUs that couldn't be written to the channel.
+	 */
+	@ManagedAttribute
+	public long getWriteFailures() {
+		return writeFailures.get();
+	}
+	
 	private String getLogHead() {
-		return "[session-id=" + sessionId + (systemId != null ? ",system-id=" + systemId : "") + "] ";
+		return logHead;
 	}
 	
+    /**
+     * Holds a request sent to the client and the listener that will be notified when the response arrives.
+     */
+    private static class PendingRequest {
+    	
+    	private final SmppRequest request;
+    	
+    	private final SmppResponseListener listener;
+    	
+    	public PendingRequest(SmppRequest request, SmppResponseListener listener) {
+    		this.request = request;
+    		this.listener = listener;
+    	}
+    	
+    }
+    
 	/**
 	 * This is the {@link ResponseSender} implementation that is passed to the 
 	 * {@link PacketProcessor#processPacket(SMPPPacket, ResponseSender)} method. It checks that the response is sent 
@@ -470,74 +1687,153 @@ public class SmppSession extends SimpleChannelHandler {
     private class OnlyOnceResponse implements ResponseSender {
 
 		private PduRequest<PduResponse> pduRequest;
+		
+		/**
+		 * The value of System.nanoTime() when the request was received.
+		 */
+		private final long receivedAt;
     	
-    	private boolean responseSent = false;
+    	private final AtomicBoolean responseSent = new AtomicBoolean(false);
 
-		public OnlyOnceResponse(PduRequest<PduResponse> pduRequest) {
+		public OnlyOnceResponse(PduRequest<PduResponse> pduRequest, long receivedAt) {
     		this.pduRequest = pduRequest;
+    		this.receivedAt = receivedAt;
     	}
 
-		@SuppressWarnings("rawtypes")
+		/**
+		 * @return true if the response was already sent.
+		 */
+		public boolean isSent() {
+			return responseSent.get();
+		}
+		
 		@Override
 		public void send(Response response) {
+			sendAsync(response);
+		}
+
+		@SuppressWarnings("rawtypes")
+		@Override
+		public ChannelFuture sendAsync(Response response) {
 			
-			if (responseSent) {
+			if (!responseSent.compareAndSet(false, true)) {
 				log.warn(getLogHead() + "response for this request was already sent to the client ... ignoring");
-				return;
+				return Channels.failedFuture(channel, new IllegalStateException("Response already sent"));
 			}
 			
+			requestCompleted();
+			
 			try {
 				
-				PduResponse pduResponse = createResponse(pduRequest, response);
-				
 				int commandId = pduRequest.getCommandId();
 				int commandStatus = response.getCommandStatus();
 				
+				// the most frequent responses are encoded without creating the response PDU
+				if (ResponseEncoder.isEncoded(commandId)) {
+					ChannelFuture writeFuture = sendEncoded(pduRequest, response);
+					responseSent(writeFuture, commandId, commandStatus, receivedAt);
+					
+					return writeFuture;
+				}
+				
+				PduResponse pduResponse = createResponse(pduRequest, response);
+				
+				boolean bound = false;
 				if (BaseBind.class.isInstance(pduRequest)) {
 					
-					if (commandStatus == Response.OK.getCommandStatus()) {
+					if (commandStatus == Response.OK.getCommandStatus() && bind()) {
 						
-						status = Status.BOUND;
-
-		   	 			if (commandId == SmppConstants.CMD_ID_BIND_RECEIVER) {
-				   			bindType = BindType.RECEIVER;
-				   		} else if (commandId == SmppConstants.CMD_ID_BIND_TRANSMITTER) {
-				   			bindType = BindType.TRANSMITTER;
-				   		} else if (commandId == SmppConstants.CMD_ID_BIND_TRANSCEIVER) {
-				   			bindType = BindType.TRANSCIEVER;
-				   		}
-
-		   	 			BaseBind bind = (BaseBind) pduRequest;
-		   	 			systemId = bind.getSystemId();
+						bound = true;
+		   	 			
+		   	 			if (stateListener != null) {
+		   	 				stateListener.bound(SmppSession.this);
+		   	 			}
 		   	 			
 		   	 			// this is important to support tlv parameters
 		   	 			pduResponse.addOptionalParameter( new Tlv(SmppConstants.TAG_SC_INTERFACE_VERSION, new byte[] { SmppConstants.VERSION_3_4 }) );
 		   	 			
-		   	 			log.info("[" + systemId + "] session created with bind type: " + bindType);
-					}
-					
-				} else {
-					
-					if (commandId == SmppPacket.SUBMIT_SM) {
-						
-						if (response.getMessageId() != null) {
-							SubmitSmResp submitResp = (SubmitSmResp) pduResponse;
-							submitResp.setMessageId( response.getMessageId() );
-	   	 				}
-		
+		   	 			log.info(getLogHead() + "session bound with bind type: " + bindType);
 					}
 					
 				}
 				
-				SmppSession.this.send(pduResponse);
+				ChannelFuture writeFuture = SmppSession.this.send(pduResponse);
+				responseSent(writeFuture, commandId, commandStatus, receivedAt);
 				
-				// handle unbind request
-				if (commandId == SmppPacket.UNBIND) {	
-					disconnect();
+				// requests can be sent to the client only after it receives the bind response
+				if (bound && stateListener != null) {
+					writeFuture.addListener(new ChannelFutureListener() {
+
+						@Override
+						public void operationComplete(ChannelFuture future) throws Exception {
+							if (future.isSuccess() && isBound()) {
+								stateListener.bindResponseSent(SmppSession.this);
+							}
+						}
+
+					});
+				}
+				
+				// handle unbind request, the connection is closed once the response is written
+				if (commandId == SmppPacket.UNBIND) {
+					writeFuture.addListener(new ChannelFutureListener() {
+
+						@Override
+						public void operationComplete(ChannelFuture future) throws Exception {
+							disconnect();
+						}
+
+					});
 				}
 				
+				return writeFuture;
+				
 			} catch (Exception e) {
 				log.error(getLogHead() + "Exception sending response: " + e.getMessage(), e);
+				return Channels.failedFuture(channel, e);
+			}
+		}
+		
+		/**
+		 * Helper method. Binds the session with the information of the bind request unless the session was closed 
+		 * while the request was processed (e.g. in the processing pool), in which case it must not be bound again.
+		 * 
+		 * @return true if the session was bound, false if it was already closed.
+		 */
+		private boolean bind() {
+			
+			synchronized (statusLock) {
+				
+				if (status == Status.CLOSED || !channel.isConnected()) {
+					log.info(getLogHead() + "session closed before the bind response was sent, not binding");
+					return false;
+				}
+				
+				int commandId = pduRequest.getCommandId();
+				if (commandId == SmppConstants.CMD_ID_BIND_RECEIVER) {
+					bindType = BindType.RECEIVER;
+				} else if (commandId == SmppConstants.CMD_ID_BIND_TRANSMITTER) {
+					bindType = BindType.TRANSMITTER;
+				} else if (commandId == SmppConstants.CMD_ID_BIND_TRANSCEIVER) {
+					bindType = BindType.TRANSCIEVER;
+				}
+				
+				BaseBind bind = (BaseBind) pduRequest;
+				systemId = bind.getSystemId();
+				logHead = "[session-id=" + sessionId + ",system-id=" + systemId + "] ";
+				
+				createSendWindow();
+				if (throttler != null) {
+					sessionBucket = throttler.createSessionBucket();
+				}
+				if (metricsRegistry != null) {
+					systemIdMetrics = metricsRegistry.get(systemId);
+					// the bind request was received before the system id was known, its response is counted
+					systemIdMetrics.requestReceived();
+				}
+				status = Status.BOUND;
+				
+				return true;
 			}
 		}
     	
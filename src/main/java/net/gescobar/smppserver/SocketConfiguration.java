@@ -0,0 +1,123 @@
+package net.gescobar.smppserver;
+
+/**
+ * Holds the socket options of the {@link SmppServer}: the ones of the listening socket (backlog and reuse address) 
+ * and the ones of the accepted connections. A buffer size of 0 leaves the default of the operating system. See 
+ * {@link SmppServer#setSocketConfiguration(SocketConfiguration)}.
+ * 
+ * @author German Escobar
+ */
+public class SocketConfiguration {
+	
+	/**
+	 * The maximum number of connections waiting to be accepted, 0 to use the default.
+	 */
+	private int backlog = 1024;
+	
+	private boolean reuseAddress = true;
+	
+	/**
+	 * True to disable Nagle's algorithm, so the responses are sent as soon as they are written.
+	 */
+	private boolean tcpNoDelay = true;
+	
+	private boolean keepAlive = true;
+	
+	private int receiveBufferSize = 0;
+	
+	private int sendBufferSize = 0;
+
+	public int getBacklog() {
+		return backlog;
+	}
+
+	public void setBacklog(int backlog) {
+		
+		if (backlog < 0) {
+			throw new IllegalArgumentException("backlog can't be negative");
+		}
+		
+		this.backlog = backlog;
+	}
+	
+	public SocketConfiguration withBacklog(int backlog) {
+		setBacklog(backlog);
+		return this;
+	}
+
+	public boolean isReuseAddress() {
+		return reuseAddress;
+	}
+
+	public void setReuseAddress(boolean reuseAddress) {
+		this.reuseAddress = reuseAddress;
+	}
+	
+	public SocketConfiguration withReuseAddress(boolean reuseAddress) {
+		setReuseAddress(reuseAddress);
+		return this;
+	}
+
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	public void setTcpNoDelay(boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+	}
+	
+	public SocketConfiguration withTcpNoDelay(boolean tcpNoDelay) {
+		setTcpNoDelay(tcpNoDelay);
+		return this;
+	}
+
+	public boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	public void setKeepAlive(boolean keepAlive) {
+		this.keepAlive = keepAlive;
+	}
+	
+	public SocketConfiguration withKeepAlive(boolean keepAlive) {
+		setKeepAlive(keepAlive);
+		return this;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	public void setReceiveBufferSize(int receiveBufferSize) {
+		
+		if (receiveBufferSize < 0) {
+			throw new IllegalArgumentException("receiveBufferSize can't be negative");
+		}
+		
+		this.receiveBufferSize = receiveBufferSize;
+	}
+	
+	public SocketConfiguration withReceiveBufferSize(int receiveBufferSize) {
+		setReceiveBufferSize(receiveBufferSize);
+		return this;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	public void setSendBufferSize(int sendBufferSize) {
+		
+		if (sendBufferSize < 0) {
+			throw new IllegalArgumentException("sendBufferSize can't be negative");
+		}
+		
+		this.sendBufferSize = sendBufferSize;
+	}
+	
+	public SocketConfiguration withSendBufferSize(int sendBufferSize) {
+		setSendBufferSize(sendBufferSize);
+		return this;
+	}
+	
+}
@@ -0,0 +1,62 @@
+package net.gescobar.smppserver;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter that spreads the updates of different threads across several cells (each in its own cache line) so that 
+ * threads incrementing it concurrently don't contend on a single value. Reading the value sums the cells. 
+ * 
+ * @author German Escobar
+ */
+class StripedCounter {
+	
+	/**
+	 * The number of longs between two cells so that each one is in a different cache line of 64 bytes.
+	 */
+	private static final int PADDING = 8;
+	
+	private static final int MAX_STRIPES = 64;
+	
+	private final AtomicLongArray cells;
+	
+	private final int mask;
+	
+	public StripedCounter() {
+		
+		int stripes = 1;
+		while (stripes < Runtime.getRuntime().availableProcessors() && stripes < MAX_STRIPES) {
+			stripes <<= 1;
+		}
+		
+		this.cells = new AtomicLongArray(stripes * PADDING);
+		this.mask = stripes - 1;
+	}
+	
+	public void increment() {
+		add(1);
+	}
+	
+	public void add(long x) {
+		cells.addAndGet(index(), x);
+	}
+	
+	/**
+	 * @return the sum of the cells. It is not an atomic snapshot if the counter is being updated concurrently.
+	 */
+	public long sum() {
+		
+		long sum = 0;
+		for (int i=0; i < cells.length(); i += PADDING) {
+			sum += cells.get(i);
+		}
+		
+		return sum;
+	}
+	
+	private int index() {
+		
+		int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+		return ((h ^ (h >>> 16)) & mask) * PADDING;
+	}
+
+}
@@ -0,0 +1,117 @@
+package net.gescobar.smppserver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the rate limits of the server and the token buckets shared by the sessions of each system id. The sessions 
+ * use it to reject the messages that exceed the limits before they reach the {@link PacketProcessor}.
+ * 
+ * @author German Escobar
+ */
+class Throttler {
+	
+	/**
+	 * The limit for each session, null if the sessions are not limited.
+	 */
+	private volatile RateLimit sessionRateLimit;
+	
+	/**
+	 * The limit for all the sessions of a system id unless there is a specific limit in {@link #systemIdRateLimits}, 
+	 * null if the system ids are not limited.
+	 */
+	private volatile RateLimit systemIdRateLimit;
+	
+	private final Map<String,RateLimit> systemIdRateLimits = new ConcurrentHashMap<String,RateLimit>();
+	
+	private final ConcurrentMap<String,TokenBucket> buckets = new ConcurrentHashMap<String,TokenBucket>();
+	
+	private final AtomicLong throttled = new AtomicLong();
+	
+	/**
+	 * @return a new token bucket for a session or null if the sessions are not limited.
+	 */
+	public TokenBucket createSessionBucket() {
+		
+		RateLimit rateLimit = sessionRateLimit;
+		return rateLimit != null ? new TokenBucket(rateLimit) : null;
+	}
+	
+	/**
+	 * Takes a token from the bucket of the system id.
+	 * 
+	 * @param systemId the system id of the session that received the message.
+	 * 
+	 * @return true if the message can be accepted, false otherwise.
+	 */
+	public boolean tryAcquire(String systemId) {
+		
+		TokenBucket bucket = buckets.get(systemId);
+		
+		if (bucket == null) {
+			
+			RateLimit rateLimit = getRateLimit(systemId);
+			if (rateLimit == null) {
+				return true;
+			}
+			
+			bucket = new TokenBucket(rateLimit);
+			TokenBucket existing = buckets.putIfAbsent(systemId, bucket);
+			if (existing != null) {
+				bucket = existing;
+			}
+		}
+		
+		return bucket.tryAcquire();
+	}
+	
+	private RateLimit getRateLimit(String systemId) {
+		
+		RateLimit rateLimit = systemIdRateLimits.get(systemId);
+		return rateLimit != null ? rateLimit : systemIdRateLimit;
+	}
+	
+	/**
+	 * Called by the sessions every time a message is rejected.
+	 */
+	public void throttled() {
+		throttled.incrementAndGet();
+	}
+	
+	public long getThrottled() {
+		return throttled.get();
+	}
+	
+	public RateLimit getSessionRateLimit() {
+		return sessionRateLimit;
+	}
+
+	public void setSessionRateLimit(RateLimit sessionRateLimit) {
+		this.sessionRateLimit = sessionRateLimit;
+	}
+	
+	public RateLimit getSystemIdRateLimit() {
+		return systemIdRateLimit;
+	}
+
+	public void setSystemIdRateLimit(RateLimit systemIdRateLimit) {
+		this.systemIdRateLimit = systemIdRateLimit;
+		
+		// the buckets are recreated with the new limit
+		buckets.clear();
+	}
+	
+	public void setSystemIdRateLimit(String systemId, RateLimit rateLimit) {
+		
+		if (rateLimit == null) {
+			systemIdRateLimits.remove(systemId);
+		} else {
+			systemIdRateLimits.put(systemId, rateLimit);
+		}
+		
+		buckets.remove(systemId);
+	}
+
+}
@@ -0,0 +1,72 @@
+package net.gescobar.smppserver;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket. Instead of counting tokens, it keeps the theoretical time at which the bucket will be 
+ * full again (the generic cell rate algorithm), so taking a token is a single compare-and-set.
+ * 
+ * @author German Escobar
+ */
+class TokenBucket {
+	
+	/**
+	 * The time in nanoseconds it takes to refill one token.
+	 */
+	private final long interval;
+	
+	/**
+	 * The time in nanoseconds it takes to refill the whole bucket.
+	 */
+	private final long capacity;
+	
+	/**
+	 * The time at which the bucket will be full.
+	 */
+	private final AtomicLong fullAt;
+	
+	public TokenBucket(RateLimit rateLimit) {
+		this.interval = 1000000000L / rateLimit.getTps();
+		this.capacity = interval * rateLimit.getBurst();
+		this.fullAt = new AtomicLong(System.nanoTime());
+	}
+	
+	/**
+	 * Takes a token from the bucket if there is one available.
+	 * 
+	 * @return true if a token was taken, false otherwise.
+	 */
+	public boolean tryAcquire() {
+		
+		long now = System.nanoTime();
+		
+		while (true) {
+			
+			long current = fullAt.get();
+			long next = Math.max(current, now) + interval;
+			
+			if (next - now > capacity) {
+				return false;
+			}
+			
+			if (fullAt.compareAndSet(current, next)) {
+				return true;
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Checks if there is a token available without taking it. Only reliable if a single thread takes tokens from 
+	 * the bucket (e.g. the bucket of a session), otherwise another thread can take the token in the meantime.
+	 * 
+	 * @return true if there is a token available, false otherwise.
+	 */
+	public boolean hasToken() {
+		
+		long now = System.nanoTime();
+		return Math.max(fullAt.get(), now) + interval - now <= capacity;
+	}
+
+}
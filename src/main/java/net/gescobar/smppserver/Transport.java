@@ -0,0 +1,20 @@
+package net.gescobar.smppserver;
+
+import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
+
+/**
+ * Creates the channel factory used by the {@link SmppServer} to accept connections and perform the I/O of the 
+ * sessions. The default implementation is {@link NioTransport}. See {@link SmppServer#setTransport(Transport)}.
+ * 
+ * @author German Escobar
+ */
+public interface Transport {
+
+	/**
+	 * Called each time the server is started. The server releases the resources of the factory when it is stopped.
+	 * 
+	 * @return a new {@link ServerSocketChannelFactory}.
+	 */
+	ServerSocketChannelFactory createChannelFactory();
+	
+}
@@ -0,0 +1,112 @@
+package net.gescobar.smppserver;
+
+/**
+ * Holds the configuration of the send window of a session, which limits the number of requests sent to the client 
+ * (e.g. deliver_sm) that can be waiting for a response. 
+ * 
+ * <p>If the adaptive mode is enabled, the window starts at the configured size and is shrunk when the responses take 
+ * longer than the target latency or the requests expire, and grown back when the responses arrive on time. The size 
+ * never goes below the minimum size or above the configured size.</p>
+ * 
+ * @author German Escobar
+ */
+public class WindowConfiguration {
+	
+	/**
+	 * The maximum number of requests waiting for a response.
+	 */
+	private int size = 10;
+	
+	/**
+	 * The time in milliseconds to wait for room in the window before failing the request.
+	 */
+	private long offerTimeout = 30000;
+	
+	private boolean adaptive = false;
+	
+	/**
+	 * The minimum size of the window in adaptive mode.
+	 */
+	private int minSize = 1;
+	
+	/**
+	 * The response latency in milliseconds above which the window is shrunk in adaptive mode.
+	 */
+	private long targetLatency = 1000;
+
+	public int getSize() {
+		return size;
+	}
+
+	public void setSize(int size) {
+		
+		if (size <= 0) {
+			throw new IllegalArgumentException("size must be greater than 0");
+		}
+		
+		this.size = size;
+	}
+	
+	public WindowConfiguration withSize(int size) {
+		setSize(size);
+		return this;
+	}
+
+	public long getOfferTimeout() {
+		return offerTimeout;
+	}
+
+	public void setOfferTimeout(long offerTimeout) {
+		this.offerTimeout = offerTimeout;
+	}
+	
+	public WindowConfiguration withOfferTimeout(long offerTimeout) {
+		setOfferTimeout(offerTimeout);
+		return this;
+	}
+
+	public boolean isAdaptive() {
+		return adaptive;
+	}
+
+	public void setAdaptive(boolean adaptive) {
+		this.adaptive = adaptive;
+	}
+	
+	public WindowConfiguration withAdaptive(boolean adaptive) {
+		setAdaptive(adaptive);
+		return this;
+	}
+
+	public int getMinSize() {
+		return minSize;
+	}
+
+	public void setMinSize(int minSize) {
+		
+		if (minSize <= 0) {
+			throw new IllegalArgumentException("minSize must be greater than 0");
+		}
+		
+		this.minSize = minSize;
+	}
+	
+	public WindowConfiguration withMinSize(int minSize) {
+		setMinSize(minSize);
+		return this;
+	}
+
+	public long getTargetLatency() {
+		return targetLatency;
+	}
+
+	public void setTargetLatency(long targetLatency) {
+		this.targetLatency = targetLatency;
+	}
+	
+	public WindowConfiguration withTargetLatency(long targetLatency) {
+		setTargetLatency(targetLatency);
+		return this;
+	}
+	
+}
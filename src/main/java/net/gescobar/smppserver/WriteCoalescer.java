@@ -0,0 +1,184 @@
+package net.gescobar.smppserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelUpstreamHandler;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+
+/**
+ * Gathers the PDUs written to a channel and writes them as a single composite buffer, so that a client that 
+ * pipelines requests receives several responses with one write (and one system call) instead of one per response.
+ * 
+ * <p>The PDUs written by the I/O thread while it processes the data of a read (which is the case of the responses 
+ * sent from the {@link PacketProcessor} in {@link ProcessingMode#DIRECT} mode) are written when the whole read is 
+ * processed, see {@link #getReadHandler()}. The PDUs written from other threads are written immediately, but the 
+ * ones written while another thread is writing are gathered in the next write.</p>
+ * 
+ * @author German Escobar
+ */
+class WriteCoalescer {
+	
+	/**
+	 * The maximum number of bytes written at once.
+	 */
+	private static final int MAX_BATCH_BYTES = 64 * 1024;
+	
+	private final Channel channel;
+	
+	private final ConcurrentLinkedQueue<PendingWrite> queue = new ConcurrentLinkedQueue<PendingWrite>();
+	
+	/**
+	 * True while a thread is writing the queued PDUs.
+	 */
+	private final AtomicBoolean flushing = new AtomicBoolean();
+	
+	/**
+	 * The I/O thread while it processes the data of a read, null otherwise.
+	 */
+	private volatile Thread readThread;
+	
+	public WriteCoalescer(Channel channel) {
+		this.channel = channel;
+	}
+	
+	/**
+	 * Queues the buffer to be written with the other buffers written in the same read or at the same time.
+	 * 
+	 * @param buffer the buffer to write.
+	 * 
+	 * @return a future that is notified when the buffer is written.
+	 */
+	public ChannelFuture write(ChannelBuffer buffer) {
+		
+		PendingWrite write = new PendingWrite(buffer, Channels.future(channel));
+		queue.add(write);
+		
+		if (Thread.currentThread() != readThread) {
+			flush();
+		}
+		
+		return write.future;
+	}
+	
+	/**
+	 * Writes the queued buffers unless another thread is already doing it (in which case that thread will write 
+	 * them).
+	 */
+	public void flush() {
+		
+		while (!queue.isEmpty() && flushing.compareAndSet(false, true)) {
+			try {
+				drain();
+			} finally {
+				flushing.set(false);
+			}
+		}
+	}
+	
+	/**
+	 * @return the handler that has to be added to the pipeline before the decoder so that the PDUs written while a 
+	 * read is processed are written once the read is processed.
+	 */
+	public ChannelUpstreamHandler getReadHandler() {
+		
+		return new SimpleChannelUpstreamHandler() {
+
+			@Override
+			public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) throws Exception {
+				
+				readThread = Thread.currentThread();
+				try {
+					ctx.sendUpstream(e);
+				} finally {
+					readThread = null;
+					flush();
+				}
+			}
+			
+		};
+	}
+	
+	private void drain() {
+		
+		PendingWrite write;
+		while ((write = queue.poll()) != null) {
+			
+			if (queue.isEmpty()) {
+				write(write);
+				return;
+			}
+			
+			final List<PendingWrite> batch = new ArrayList<PendingWrite>();
+			batch.add(write);
+			
+			int bytes = write.buffer.readableBytes();
+			while (bytes < MAX_BATCH_BYTES && (write = queue.poll()) != null) {
+				batch.add(write);
+				bytes += write.buffer.readableBytes();
+			}
+			
+			ChannelBuffer[] buffers = new ChannelBuffer[batch.size()];
+			for (int i=0; i < buffers.length; i++) {
+				buffers[i] = batch.get(i).buffer;
+			}
+			
+			// a gathering composite is written with a single gathering write of its components, a non gathering one 
+			// is copied into a new heap buffer by the NIO worker (which would waste the pooled direct buffers)
+			channel.write( ChannelBuffers.wrappedBuffer(true, buffers) ).addListener(new ChannelFutureListener() {
+
+				@Override
+				public void operationComplete(ChannelFuture future) throws Exception {
+					for (PendingWrite pendingWrite : batch) {
+						pendingWrite.complete(future);
+					}
+				}
+				
+			});
+		}
+	}
+	
+	private void write(final PendingWrite write) {
+		
+		channel.write(write.buffer).addListener(new ChannelFutureListener() {
+
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				write.complete(future);
+			}
+			
+		});
+	}
+	
+	private static class PendingWrite {
+		
+		private final ChannelBuffer buffer;
+		
+		private final ChannelFuture future;
+		
+		public PendingWrite(ChannelBuffer buffer, ChannelFuture future) {
+			this.buffer = buffer;
+			this.future = future;
+		}
+		
+		public void complete(ChannelFuture writeFuture) {
+			if (writeFuture.isSuccess()) {
+				future.setSuccess();
+			} else {
+				future.setFailure( writeFuture.getCause() );
+			}
+		}
+		
+	}
+
+}
@@ -1,8 +1,12 @@
 package net.gescobar.smppserver.packet;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.tlv.TlvConvertException;
+
 /**
  * This is the abstract class from which all SMPP messages inherited.
  * 
@@ -43,8 +47,16 @@ public abstract class SmppPacket {
     
     protected int sequenceNumber = -1;
     
+    /**
+     * The optional parameters in the order they were added, created when the first one is added.
+     */
     private List<Tlv> optionalParameters;
     
+    /**
+     * The optional parameters by tag, created when the first one is added.
+     */
+    private TlvIndex optionalParametersIndex;
+    
     /**
      * Constructor.
      * 
@@ -52,7 +64,6 @@ public abstract class SmppPacket {
      */
     public SmppPacket(int commandId) {
     	this.commandId = commandId;
-    	this.optionalParameters = new ArrayList<Tlv>();
     }
 
     public int getCommandId() {
@@ -75,24 +86,102 @@ public abstract class SmppPacket {
     	this.sequenceNumber = sequenceNumber;
     }
 
+    /**
+     * @return an unmodifiable list with the optional parameters in the order they were added, use 
+     * {@link #addOptionalParameter(Tlv)} to add one.
+     */
     public List<Tlv> getOptionalParameters() {
-    	return optionalParameters;
+    	
+    	if (optionalParameters == null) {
+    		return Collections.emptyList();
+    	}
+    	
+    	return Collections.unmodifiableList(optionalParameters);
     }
 
     public void addOptionalParameter(Tlv optionalParameter) {
+    	
+    	if (optionalParameters == null) {
+    		optionalParameters = new ArrayList<Tlv>(4);
+    		optionalParametersIndex = new TlvIndex();
+    	}
+    	
     	optionalParameters.add(optionalParameter);
+    	optionalParametersIndex.add(optionalParameter);
     }
     
+    /**
+     * @param tag the tag of the optional parameter.
+     * 
+     * @return the first optional parameter with the tag or null if there is none.
+     */
     public Tlv getOptionalParameter(short tag) {
     	
-    	for (Tlv tlv : optionalParameters) {
-    		if (tag == tlv.getTag()) {
-    			return tlv;
-    		}
+    	if (optionalParametersIndex == null) {
+    		return null;
     	}
     	
-    	return null;
+    	return optionalParametersIndex.get(tag);
+    	
+    }
+    
+    /**
+     * @return the value of the message_payload optional parameter or null if not present.
+     */
+    public byte[] getMessagePayload() {
+    	
+    	Tlv tlv = getOptionalParameter(SmppConstants.TAG_MESSAGE_PAYLOAD);
+    	return tlv != null ? tlv.getValue() : null;
+    }
+    
+    /**
+     * @return the value of the sar_msg_ref_num optional parameter or -1 if not present.
+     * @throws TlvConvertException if the value is not an unsigned short.
+     */
+    public int getSarMsgRefNum() throws TlvConvertException {
+    	
+    	Tlv tlv = getOptionalParameter(SmppConstants.TAG_SAR_MSG_REF_NUM);
+    	return tlv != null ? tlv.getValueAsUnsignedShort() : -1;
+    }
+    
+    /**
+     * @return the value of the sar_total_segments optional parameter or -1 if not present.
+     * @throws TlvConvertException if the value is not an unsigned byte.
+     */
+    public short getSarTotalSegments() throws TlvConvertException {
+    	
+    	Tlv tlv = getOptionalParameter(SmppConstants.TAG_SAR_TOTAL_SEGMENTS);
+    	return tlv != null ? tlv.getValueAsUnsignedByte() : -1;
+    }
+    
+    /**
+     * @return the value of the sar_segment_seqnum optional parameter or -1 if not present.
+     * @throws TlvConvertException if the value is not an unsigned byte.
+     */
+    public short getSarSegmentSeqnum() throws TlvConvertException {
+    	
+    	Tlv tlv = getOptionalParameter(SmppConstants.TAG_SAR_SEGMENT_SEQNUM);
+    	return tlv != null ? tlv.getValueAsUnsignedByte() : -1;
+    }
+    
+    /**
+     * @return the value of the receipted_message_id optional parameter or null if not present.
+     * @throws TlvConvertException if the value can't be converted to a String.
+     */
+    public String getReceiptedMessageId() throws TlvConvertException {
+    	
+    	Tlv tlv = getOptionalParameter(SmppConstants.TAG_RECEIPTED_MSG_ID);
+    	return tlv != null ? tlv.getValueAsString() : null;
+    }
+    
+    /**
+     * @return the value of the message_state optional parameter or -1 if not present.
+     * @throws TlvConvertException if the value is not an unsigned byte.
+     */
+    public short getMessageState() throws TlvConvertException {
     	
+    	Tlv tlv = getOptionalParameter(SmppConstants.TAG_MSG_STATE);
+    	return tlv != null ? tlv.getValueAsUnsignedByte() : -1;
     }
     
     public boolean isBind() {
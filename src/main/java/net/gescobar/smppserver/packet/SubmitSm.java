@@ -35,6 +35,11 @@ public class SubmitSm extends SmppRequest {
     
     private byte[] shortMessage;
     
+    /**
+     * The decoded short message, cached the first time it is requested.
+     */
+    private String decodedShortMessage;
+    
     public SubmitSm() {
     	super(SubmitSm.SUBMIT_SM);
     }
@@ -125,6 +130,7 @@ public class SubmitSm extends SmppRequest {
 
 	public void setDataCoding(byte dataCoding) {
 		this.dataCoding = dataCoding;
+		this.decodedShortMessage = null;
 	}
 
 	public byte getDefaultMsgId() {
@@ -135,19 +141,55 @@ public class SubmitSm extends SmppRequest {
 		this.defaultMsgId = defaultMsgId;
 	}
 
+	/**
+	 * Decodes the short message using the charset of the data coding. The decoded message is cached so it is only 
+	 * decoded the first time.
+	 * 
+	 * @return the decoded short message.
+	 */
 	public String getShortMessage() {
-		return CharsetUtil.decode( shortMessage, getCharsetName(dataCoding) );
+		
+		String decoded = decodedShortMessage;
+		if (decoded == null && shortMessage != null) {
+			decoded = CharsetUtil.decode( shortMessage, getCharsetName(dataCoding) );
+			decodedShortMessage = decoded;
+		}
+		
+		return decoded;
+	}
+	
+	/**
+	 * Decodes the short message into the specified buffer. Useful when processing a lot of messages as the buffer 
+	 * can be reused to avoid creating a String for each one.
+	 * 
+	 * @param buffer the buffer to which the decoded message is appended.
+	 */
+	public void decodeShortMessage(StringBuilder buffer) {
+		
+		byte[] bytes = getShortMessageBytes();
+		if (bytes != null) {
+			CharsetUtil.map( getCharsetName(getDataCoding()) ).decode(bytes, buffer);
+		}
+	}
+	
+	/**
+	 * @return the raw (encoded) bytes of the short message. The array is not copied, so it shouldn't be modified.
+	 */
+	public byte[] getShortMessageBytes() {
+		return shortMessage;
 	}
 
 	public void setShortMessage(String shortMessage) {
 		this.shortMessage = CharsetUtil.encode( shortMessage, getCharsetName(dataCoding) );
+		this.decodedShortMessage = null;
 	}
 	
 	public void setShortMessage(byte[] shortMessage) {
 		this.shortMessage = shortMessage;
+		this.decodedShortMessage = null;
 	}
 	
-	private String getCharsetName(byte dataCoding) {
+	protected String getCharsetName(byte dataCoding) {
 		
 		String charset = null;
 		
@@ -0,0 +1,95 @@
+package net.gescobar.smppserver.packet;
+
+/**
+ * A small open-addressing map from tag to {@link Tlv} used by {@link SmppPacket} to find the optional parameters in 
+ * constant time. If a tag is added more than once, the first one is kept (as the optional parameters are looked up 
+ * in the order they were added).
+ * 
+ * @author German Escobar
+ */
+class TlvIndex {
+	
+	private short[] tags;
+	
+	private Tlv[] values;
+	
+	private int size;
+	
+	public TlvIndex() {
+		this.tags = new short[8];
+		this.values = new Tlv[8];
+	}
+	
+	/**
+	 * Adds the optional parameter unless there is already one with the same tag.
+	 * 
+	 * @param tlv the optional parameter to add.
+	 */
+	public void add(Tlv tlv) {
+		
+		// keep the load factor under 0.5
+		if ((size + 1) * 2 > values.length) {
+			grow();
+		}
+		
+		insert(tlv);
+	}
+	
+	private void insert(Tlv tlv) {
+		
+		int mask = values.length - 1;
+		int i = hash(tlv.getTag()) & mask;
+		
+		while (values[i] != null) {
+			if (tags[i] == tlv.getTag()) {
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		
+		tags[i] = tlv.getTag();
+		values[i] = tlv;
+		size++;
+	}
+	
+	/**
+	 * @param tag the tag of the optional parameter.
+	 * 
+	 * @return the optional parameter with the tag or null if there is none.
+	 */
+	public Tlv get(short tag) {
+		
+		int mask = values.length - 1;
+		int i = hash(tag) & mask;
+		
+		while (values[i] != null) {
+			if (tags[i] == tag) {
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		
+		return null;
+	}
+	
+	private void grow() {
+		
+		Tlv[] oldValues = values;
+		
+		tags = new short[oldValues.length * 2];
+		values = new Tlv[oldValues.length * 2];
+		size = 0;
+		
+		for (Tlv tlv : oldValues) {
+			if (tlv != null) {
+				insert(tlv);
+			}
+		}
+	}
+	
+	private static int hash(short tag) {
+		int h = (tag & 0xFFFF) * 0x9E3779B1;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,289 @@
+package net.gescobar.smppserver.packet.ch;
+
+import java.util.List;
+
+import net.gescobar.smppserver.packet.Address;
+import net.gescobar.smppserver.packet.SubmitSm;
+import net.gescobar.smppserver.packet.Tlv;
+
+import com.cloudhopper.commons.charset.CharsetUtil;
+
+/**
+ * A {@link SubmitSm} that reads its fields from the decoded cloudhopper packet when they are requested instead of 
+ * copying them all when the packet is mapped. The addresses and optional parameters are only created if they are 
+ * requested. 
+ * 
+ * <p>The first time a setter is called, all the fields are copied and the cloudhopper packet is released.</p>
+ * 
+ * @author German Escobar
+ */
+public class LazySubmitSm extends SubmitSm {
+	
+	private com.cloudhopper.smpp.pdu.SubmitSm chSubmitSm;
+	
+	private Address sourceAddress;
+	
+	private Address destAddress;
+	
+	private boolean optionalParametersMapped = false;
+	
+	/**
+	 * The decoded short message while the cloudhopper packet is not released.
+	 */
+	private String decodedShortMessage;
+	
+	public LazySubmitSm(com.cloudhopper.smpp.pdu.SubmitSm chSubmitSm) {
+		this.chSubmitSm = chSubmitSm;
+	}
+	
+	/**
+	 * Helper method. Copies the fields of the cloudhopper packet and releases it.
+	 */
+	private void materialize() {
+		
+		if (chSubmitSm == null) {
+			return;
+		}
+		
+		com.cloudhopper.smpp.pdu.SubmitSm ch = chSubmitSm;
+		
+		super.setServiceType( ch.getServiceType() );
+		super.setSourceAddress( getSourceAddress() );
+		super.setDestAddress( getDestAddress() );
+		super.setEsmClass( ch.getEsmClass() );
+		super.setProtocolId( ch.getProtocolId() );
+		super.setPriority( ch.getPriority() );
+		super.setScheduleDeliveryTime( ch.getScheduleDeliveryTime() );
+		super.setValidityPeriod( ch.getValidityPeriod() );
+		super.setRegisteredDelivery( ch.getRegisteredDelivery() );
+		super.setReplaceIfPresent( ch.getReplaceIfPresent() );
+		super.setDataCoding( ch.getDataCoding() );
+		super.setDefaultMsgId( ch.getDefaultMsgId() );
+		super.setShortMessage( ch.getShortMessage() );
+		
+		mapOptionalParameters();
+		
+		chSubmitSm = null;
+		
+	}
+	
+	/**
+	 * Helper method. Maps the optional parameters of the cloudhopper packet the first time they are requested.
+	 */
+	private void mapOptionalParameters() {
+		
+		if (optionalParametersMapped) {
+			return;
+		}
+		
+		optionalParametersMapped = true;
+		
+		if (chSubmitSm != null && chSubmitSm.getOptionalParameters() != null) {
+			for (com.cloudhopper.smpp.tlv.Tlv tlv : chSubmitSm.getOptionalParameters()) {
+				super.addOptionalParameter( PacketMapper.map(tlv) );
+			}
+		}
+		
+	}
+
+	@Override
+	public String getServiceType() {
+		return chSubmitSm != null ? chSubmitSm.getServiceType() : super.getServiceType();
+	}
+
+	@Override
+	public void setServiceType(String serviceType) {
+		materialize();
+		super.setServiceType(serviceType);
+	}
+
+	@Override
+	public Address getSourceAddress() {
+		
+		if (chSubmitSm == null) {
+			return super.getSourceAddress();
+		}
+		
+		if (sourceAddress == null) {
+			sourceAddress = PacketMapper.map( chSubmitSm.getSourceAddress() );
+		}
+		
+		return sourceAddress;
+	}
+
+	@Override
+	public void setSourceAddress(Address sourceAddress) {
+		materialize();
+		super.setSourceAddress(sourceAddress);
+	}
+
+	@Override
+	public Address getDestAddress() {
+		
+		if (chSubmitSm == null) {
+			return super.getDestAddress();
+		}
+		
+		if (destAddress == null) {
+			destAddress = PacketMapper.map( chSubmitSm.getDestAddress() );
+		}
+		
+		return destAddress;
+	}
+
+	@Override
+	public void setDestAddress(Address destAddress) {
+		materialize();
+		super.setDestAddress(destAddress);
+	}
+
+	@Override
+	public byte getEsmClass() {
+		return chSubmitSm != null ? chSubmitSm.getEsmClass() : super.getEsmClass();
+	}
+
+	@Override
+	public void setEsmClass(byte esmClass) {
+		materialize();
+		super.setEsmClass(esmClass);
+	}
+
+	@Override
+	public byte getProtocolId() {
+		return chSubmitSm != null ? chSubmitSm.getProtocolId() : super.getProtocolId();
+	}
+
+	@Override
+	public void setProtocolId(byte protocolId) {
+		materialize();
+		super.setProtocolId(protocolId);
+	}
+
+	@Override
+	public byte getPriority() {
+		return chSubmitSm != null ? chSubmitSm.getPriority() : super.getPriority();
+	}
+
+	@Override
+	public void setPriority(byte priority) {
+		materialize();
+		super.setPriority(priority);
+	}
+
+	@Override
+	public String getScheduleDeliveryTime() {
+		return chSubmitSm != null ? chSubmitSm.getScheduleDeliveryTime() : super.getScheduleDeliveryTime();
+	}
+
+	@Override
+	public void setScheduleDeliveryTime(String scheduleDeliveryTime) {
+		materialize();
+		super.setScheduleDeliveryTime(scheduleDeliveryTime);
+	}
+
+	@Override
+	public String getValidityPeriod() {
+		return chSubmitSm != null ? chSubmitSm.getValidityPeriod() : super.getValidityPeriod();
+	}
+
+	@Override
+	public void setValidityPeriod(String validityPeriod) {
+		materialize();
+		super.setValidityPeriod(validityPeriod);
+	}
+
+	@Override
+	public byte getRegisteredDelivery() {
+		return chSubmitSm != null ? chSubmitSm.getRegisteredDelivery() : super.getRegisteredDelivery();
+	}
+
+	@Override
+	public void setRegisteredDelivery(byte registeredDelivery) {
+		materialize();
+		super.setRegisteredDelivery(registeredDelivery);
+	}
+
+	@Override
+	public byte getReplaceIfPresent() {
+		return chSubmitSm != null ? chSubmitSm.getReplaceIfPresent() : super.getReplaceIfPresent();
+	}
+
+	@Override
+	public void setReplaceIfPresent(byte replaceIfPresent) {
+		materialize();
+		super.setReplaceIfPresent(replaceIfPresent);
+	}
+
+	@Override
+	public byte getDataCoding() {
+		return chSubmitSm != null ? chSubmitSm.getDataCoding() : super.getDataCoding();
+	}
+
+	@Override
+	public void setDataCoding(byte dataCoding) {
+		materialize();
+		super.setDataCoding(dataCoding);
+	}
+
+	@Override
+	public byte getDefaultMsgId() {
+		return chSubmitSm != null ? chSubmitSm.getDefaultMsgId() : super.getDefaultMsgId();
+	}
+
+	@Override
+	public void setDefaultMsgId(byte defaultMsgId) {
+		materialize();
+		super.setDefaultMsgId(defaultMsgId);
+	}
+
+	@Override
+	public String getShortMessage() {
+		
+		if (chSubmitSm == null) {
+			return super.getShortMessage();
+		}
+		
+		if (decodedShortMessage == null && chSubmitSm.getShortMessage() != null) {
+			decodedShortMessage = CharsetUtil.decode( chSubmitSm.getShortMessage(), 
+					getCharsetName(chSubmitSm.getDataCoding()) );
+		}
+		
+		return decodedShortMessage;
+	}
+	
+	@Override
+	public byte[] getShortMessageBytes() {
+		return chSubmitSm != null ? chSubmitSm.getShortMessage() : super.getShortMessageBytes();
+	}
+
+	@Override
+	public void setShortMessage(String shortMessage) {
+		materialize();
+		super.setShortMessage(shortMessage);
+	}
+
+	@Override
+	public void setShortMessage(byte[] shortMessage) {
+		materialize();
+		super.setShortMessage(shortMessage);
+	}
+
+	@Override
+	public List<Tlv> getOptionalParameters() {
+		mapOptionalParameters();
+		return super.getOptionalParameters();
+	}
+
+	@Override
+	public void addOptionalParameter(Tlv optionalParameter) {
+		mapOptionalParameters();
+		super.addOptionalParameter(optionalParameter);
+	}
+
+	@Override
+	public Tlv getOptionalParameter(short tag) {
+		mapOptionalParameters();
+		return super.getOptionalParameter(tag);
+	}
+	
+}
@@ -23,8 +23,21 @@ import com.cloudhopper.smpp.type.SmppInvalidArgumentException;
  */
 public class PacketMapper {
 
-	@SuppressWarnings("rawtypes")
 	public static SmppPacket map(Pdu pdu) {
+		return map(pdu, false);
+	}
+	
+	/**
+	 * Maps a packet from the cloudhopper representation to ours.
+	 * 
+	 * @param pdu the cloudhopper packet.
+	 * @param lazy if true, a submit_sm is mapped to a {@link LazySubmitSm} that reads the fields from the cloudhopper 
+	 * packet when they are requested instead of copying them all. 
+	 * 
+	 * @return the mapped packet or null if the packet is unknown.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static SmppPacket map(Pdu pdu, boolean lazy) {
 		
 		if (pdu == null) {
 			return null;
@@ -36,8 +49,12 @@ public class PacketMapper {
 			packet = map( (BaseBind) pdu );
 		} else if (pdu.getCommandId() == SmppPacket.UNBIND) {
 			packet = new Unbind();
+		} else if (pdu.getCommandId() == SmppPacket.SUBMIT_SM && lazy) {
+			packet = new LazySubmitSm( (com.cloudhopper.smpp.pdu.SubmitSm) pdu );
 		} else if (pdu.getCommandId() == SmppPacket.SUBMIT_SM) {
 			packet = map( (com.cloudhopper.smpp.pdu.SubmitSm) pdu );
+		} else if (pdu.getCommandId() == SmppPacket.DELIVER_SM) {
+			packet = map( (com.cloudhopper.smpp.pdu.DeliverSm) pdu );
 		} else if (pdu.getCommandId() == SmppPacket.DELIVER_SM_RESP) {
 			packet = new DeliverSmResp();
 		} else if (pdu.getCommandId() == SmppPacket.ENQUIRE_LINK) {
@@ -56,7 +73,8 @@ public class PacketMapper {
 		packet.setCommandStatus( pdu.getCommandStatus() );
 		packet.setSequenceNumber( pdu.getSequenceNumber() );
 		
-		if (pdu.getOptionalParameters() != null) {
+		// the lazy packets map the optional parameters when requested
+		if (pdu.getOptionalParameters() != null && !LazySubmitSm.class.isInstance(packet)) {
 			for (com.cloudhopper.smpp.tlv.Tlv op : pdu.getOptionalParameters()) {
 				packet.addOptionalParameter( map(op) );
 			}
@@ -100,7 +118,27 @@ public class PacketMapper {
 		
 	}
 	
-	private static Address map(com.cloudhopper.smpp.type.Address chAddress) {
+	private static DeliverSm map(com.cloudhopper.smpp.pdu.DeliverSm chDeliverSm) {
+		
+		DeliverSm deliverSm = new DeliverSm();
+		deliverSm.setServiceType( chDeliverSm.getServiceType() );
+		deliverSm.setSourceAddress( map(chDeliverSm.getSourceAddress()) );
+		deliverSm.setDestAddress( map(chDeliverSm.getDestAddress()) );
+		deliverSm.setEsmClass( chDeliverSm.getEsmClass() );
+		deliverSm.setProtocolId( chDeliverSm.getProtocolId() );
+		deliverSm.setPriority( chDeliverSm.getPriority() );
+		deliverSm.setScheduleDeliveryTime( chDeliverSm.getScheduleDeliveryTime() );
+		deliverSm.setValidityPeriod( chDeliverSm.getValidityPeriod() );
+		deliverSm.setRegisteredDelivery( chDeliverSm.getRegisteredDelivery() );
+		deliverSm.setReplaceIfPresent( chDeliverSm.getReplaceIfPresent() );
+		deliverSm.setDataCoding( chDeliverSm.getDataCoding() );
+		deliverSm.setShortMessage( chDeliverSm.getShortMessage() );
+		
+		return deliverSm;
+		
+	}
+	
+	static Address map(com.cloudhopper.smpp.type.Address chAddress) {
 		
 		if (chAddress == null) { 
 			return null;
@@ -113,7 +151,7 @@ public class PacketMapper {
 		
 	}
 	
-	private static Tlv map(com.cloudhopper.smpp.tlv.Tlv tlv) {
+	static Tlv map(com.cloudhopper.smpp.tlv.Tlv tlv) {
 		return new Tlv( tlv.getTag(), tlv.getValue(), tlv.getTagName() );
 	}
 	
@@ -140,6 +178,10 @@ public class PacketMapper {
 		pdu.setCommandStatus( packet.getCommandStatus() );
 		pdu.setSequenceNumber( packet.getSequenceNumber() );
 		
+		for (Tlv tlv : packet.getOptionalParameters()) {
+			pdu.addOptionalParameter( new com.cloudhopper.smpp.tlv.Tlv(tlv.getTag(), tlv.getValue(), tlv.getTagName()) );
+		}
+		
 		return pdu;
 		
 	}
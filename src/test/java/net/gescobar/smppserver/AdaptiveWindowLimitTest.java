@@ -0,0 +1,127 @@
+package net.gescobar.smppserver;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class AdaptiveWindowLimitTest {
+
+	@Test
+	public void shouldStartWithMaxSize() throws Exception {
+		
+		AdaptiveWindowLimit limit = new AdaptiveWindowLimit(1, 3, 100);
+		Assert.assertEquals( limit.getSize(), 3 );
+		
+		for (int i=0; i < 3; i++) {
+			Assert.assertTrue( limit.acquire(0) );
+		}
+		Assert.assertFalse( limit.acquire(0) );
+		
+		limit.release();
+		Assert.assertTrue( limit.acquire(0) );
+		
+	}
+	
+	@Test
+	public void shouldShrinkOnSlowResponse() throws Exception {
+		
+		AdaptiveWindowLimit limit = new AdaptiveWindowLimit(2, 4, 100);
+		
+		limit.responseReceived(101);
+		Assert.assertEquals( limit.getSize(), 3 );
+		
+		limit.responseReceived(200);
+		limit.responseReceived(200);
+		Assert.assertEquals( limit.getSize(), 2 );
+		
+		// the room in the window follows the size
+		Assert.assertTrue( limit.acquire(0) );
+		Assert.assertTrue( limit.acquire(0) );
+		Assert.assertFalse( limit.acquire(0) );
+		
+	}
+	
+	@Test
+	public void shouldHalveOnExpiredRequest() throws Exception {
+		
+		AdaptiveWindowLimit limit = new AdaptiveWindowLimit(3, 16, 100);
+		
+		limit.requestExpired();
+		Assert.assertEquals( limit.getSize(), 8 );
+		
+		limit.requestExpired();
+		Assert.assertEquals( limit.getSize(), 4 );
+		
+		// never below the minimum size
+		limit.requestExpired();
+		Assert.assertEquals( limit.getSize(), 3 );
+		
+	}
+	
+	@Test
+	public void shouldGrowAfterWindowOfFastResponses() throws Exception {
+		
+		AdaptiveWindowLimit limit = new AdaptiveWindowLimit(1, 4, 100);
+		limit.requestExpired();
+		Assert.assertEquals( limit.getSize(), 2 );
+		
+		// grows by one after a full window of fast responses
+		limit.responseReceived(10);
+		Assert.assertEquals( limit.getSize(), 2 );
+		limit.responseReceived(10);
+		Assert.assertEquals( limit.getSize(), 3 );
+		
+		for (int i=0; i < 3; i++) {
+			limit.responseReceived(10);
+		}
+		Assert.assertEquals( limit.getSize(), 4 );
+		
+		// never above the maximum size
+		for (int i=0; i < 10; i++) {
+			limit.responseReceived(10);
+		}
+		Assert.assertEquals( limit.getSize(), 4 );
+		
+		for (int i=0; i < 4; i++) {
+			Assert.assertTrue( limit.acquire(0) );
+		}
+		Assert.assertFalse( limit.acquire(0) );
+		
+	}
+	
+	@Test
+	public void shouldResetFastResponsesOnSlowResponse() throws Exception {
+		
+		AdaptiveWindowLimit limit = new AdaptiveWindowLimit(1, 8, 100);
+		limit.requestExpired();
+		Assert.assertEquals( limit.getSize(), 4 );
+		
+		for (int i=0; i < 3; i++) {
+			limit.responseReceived(10);
+		}
+		limit.responseReceived(500);
+		Assert.assertEquals( limit.getSize(), 3 );
+		
+		// the count starts again
+		limit.responseReceived(10);
+		limit.responseReceived(10);
+		Assert.assertEquals( limit.getSize(), 3 );
+		limit.responseReceived(10);
+		Assert.assertEquals( limit.getSize(), 4 );
+		
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void shouldFailWithMinSizeGreaterThanMaxSize() throws Exception {
+		new AdaptiveWindowLimit(5, 4, 100);
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void shouldFailWithZeroMinSize() throws Exception {
+		new AdaptiveWindowLimit(0, 4, 100);
+	}
+	
+}
@@ -0,0 +1,88 @@
+package net.gescobar.smppserver;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.cloudhopper.smpp.pdu.DeliverSm;
+import com.cloudhopper.smpp.pdu.SubmitSmResp;
+import com.cloudhopper.smpp.tlv.Tlv;
+
+/**
+ *
+ * @author German Escobar
+ */
+public class DirectBufferPoolTest {
+
+	@Test
+	public void shouldEncodeLikeTranscoder() throws Exception {
+
+		DirectBufferPool pool = new DirectBufferPool(SmppSession.TRANSCODER_CONTEXT);
+
+		SubmitSmResp submitSmResp = new SubmitSmResp();
+		submitSmResp.setSequenceNumber(15);
+		submitSmResp.setMessageId("12345");
+		assertEncoded(pool.encode(submitSmResp), SmppSession.TRANSCODER.encode(submitSmResp));
+
+		DeliverSm deliverSm = new DeliverSm();
+		deliverSm.setSequenceNumber(16);
+		deliverSm.setShortMessage("Hello".getBytes());
+		deliverSm.addOptionalParameter(new Tlv((short) 0x001e, "54321".getBytes()));
+		assertEncoded(pool.encode(deliverSm), SmppSession.TRANSCODER.encode(deliverSm));
+
+	}
+
+	@Test
+	public void shouldReuseReleasedBuffers() throws Exception {
+
+		DirectBufferPool pool = new DirectBufferPool(SmppSession.TRANSCODER_CONTEXT);
+
+		SubmitSmResp submitSmResp = new SubmitSmResp();
+		submitSmResp.setMessageId("12345");
+
+		ChannelBuffer buffer = pool.encode(submitSmResp);
+		Assert.assertTrue( buffer.isDirect() );
+
+		pool.release(buffer);
+		Assert.assertEquals( pool.getPooledBuffers(), 1 );
+
+		Assert.assertSame( pool.encode(submitSmResp), buffer );
+		Assert.assertEquals( pool.getPooledBuffers(), 0 );
+		Assert.assertEquals( pool.getAllocatedBuffers(), 1 );
+
+	}
+
+	@Test
+	public void shouldNotEncodeLargePdus() throws Exception {
+
+		DirectBufferPool pool = new DirectBufferPool(SmppSession.TRANSCODER_CONTEXT);
+
+		DeliverSm deliverSm = new DeliverSm();
+		deliverSm.addOptionalParameter(new Tlv((short) 0x0424, new byte[4096]));
+
+		Assert.assertNull( pool.encode(deliverSm) );
+
+	}
+
+	@Test
+	public void shouldIgnoreBuffersNotCreatedByPool() throws Exception {
+
+		DirectBufferPool pool = new DirectBufferPool(SmppSession.TRANSCODER_CONTEXT);
+
+		SubmitSmResp submitSmResp = new SubmitSmResp();
+		pool.release( SmppSession.TRANSCODER.encode(submitSmResp) );
+
+		Assert.assertEquals( pool.getPooledBuffers(), 0 );
+
+	}
+
+	private void assertEncoded(ChannelBuffer pooled, ChannelBuffer expected) {
+
+		Assert.assertNotNull(pooled);
+		Assert.assertEquals( pooled.readableBytes(), expected.readableBytes() );
+		for (int i=0; i < expected.readableBytes(); i++) {
+			Assert.assertEquals( pooled.getByte(i), expected.getByte(i) );
+		}
+	}
+
+}
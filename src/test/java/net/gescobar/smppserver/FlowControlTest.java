@@ -0,0 +1,115 @@
+package net.gescobar.smppserver;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class FlowControlTest {
+
+	@Test
+	public void shouldSuspendAtHighWatermarkAndResumeAtLowWatermark() throws Exception {
+		
+		SmppSession session = mock(SmppSession.class);
+		FlowControl flowControl = new FlowControl(Collections.singletonList(session));
+		flowControl.setWatermarks(3, 1);
+		
+		flowControl.requestStarted();
+		flowControl.requestStarted();
+		Assert.assertFalse( flowControl.isSuspended() );
+		
+		flowControl.requestStarted();
+		Assert.assertTrue( flowControl.isSuspended() );
+		verify(session, times(1)).updateReadable();
+		
+		// still above the low watermark
+		flowControl.requestCompleted();
+		Assert.assertTrue( flowControl.isSuspended() );
+		
+		flowControl.requestCompleted();
+		Assert.assertFalse( flowControl.isSuspended() );
+		verify(session, times(2)).updateReadable();
+		
+		Assert.assertEquals( flowControl.getInFlight(), 1 );
+		
+	}
+	
+	@Test
+	public void shouldResumeWhenSeveralRequestsComplete() throws Exception {
+		
+		FlowControl flowControl = new FlowControl(Collections.<SmppSession>emptyList());
+		flowControl.setWatermarks(2, 0);
+		
+		flowControl.requestStarted();
+		flowControl.requestStarted();
+		Assert.assertTrue( flowControl.isSuspended() );
+		
+		flowControl.requestsCompleted(2);
+		Assert.assertFalse( flowControl.isSuspended() );
+		Assert.assertEquals( flowControl.getInFlight(), 0 );
+		
+	}
+	
+	@Test
+	public void shouldResumeWhenDisabled() throws Exception {
+		
+		FlowControl flowControl = new FlowControl(Collections.<SmppSession>emptyList());
+		flowControl.setWatermarks(1, 0);
+		
+		flowControl.requestStarted();
+		Assert.assertTrue( flowControl.isSuspended() );
+		
+		flowControl.setWatermarks(0, 0);
+		Assert.assertFalse( flowControl.isSuspended() );
+		
+	}
+	
+	@Test
+	public void shouldNotStaySuspendedWithoutRequestsInFlight() throws Exception {
+		
+		final FlowControl flowControl = new FlowControl(Collections.<SmppSession>emptyList());
+		flowControl.setWatermarks(4, 2);
+		
+		int threads = 8;
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(threads);
+		
+		for (int i=0; i < threads; i++) {
+			new Thread() {
+				
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int j=0; j < 10000; j++) {
+							flowControl.requestStarted();
+							flowControl.requestCompleted();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					} finally {
+						done.countDown();
+					}
+				}
+				
+			}.start();
+		}
+		
+		start.countDown();
+		done.await();
+		
+		Assert.assertEquals( flowControl.getInFlight(), 0 );
+		Assert.assertFalse( flowControl.isSuspended() );
+		
+	}
+	
+}
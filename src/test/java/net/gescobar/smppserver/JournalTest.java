@@ -0,0 +1,138 @@
+package net.gescobar.smppserver;
+
+import java.io.File;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class JournalTest {
+	
+	private File directory;
+	
+	@BeforeMethod
+	public void createDirectory() {
+		directory = new File(System.getProperty("java.io.tmpdir"), "smpp-journal-" + System.nanoTime());
+	}
+	
+	@AfterMethod
+	public void deleteDirectory() {
+		delete(directory);
+	}
+
+	@Test
+	public void shouldRecoverPendingRecords() throws Exception {
+		
+		Journal journal = new Journal(directory, 1024, 4096, false);
+		Assert.assertTrue( journal.open().isEmpty() );
+		
+		Journal.Record first = journal.append( new byte[] { 1, 2, 3 } );
+		journal.append( new byte[] { 4, 5 } );
+		
+		Assert.assertEquals( journal.read(first), new byte[] { 1, 2, 3 } );
+		
+		journal.complete(first);
+		journal.close();
+		
+		journal = new Journal(directory, 1024, 4096, false);
+		List<Journal.Record> records = journal.open();
+		
+		Assert.assertEquals( records.size(), 1 );
+		Assert.assertEquals( journal.read(records.get(0)), new byte[] { 4, 5 } );
+		
+		journal.close();
+		
+	}
+	
+	@Test
+	public void shouldRejectRecordsOverMaxSize() throws Exception {
+		
+		Journal journal = new Journal(directory, 64, 128, false);
+		journal.open();
+		
+		// each record takes 5 bytes of header plus 50 bytes of data, one per segment
+		Journal.Record first = journal.append( new byte[50] );
+		Assert.assertNotNull( first );
+		Assert.assertNotNull( journal.append(new byte[50]) );
+		Assert.assertNull( journal.append(new byte[50]) );
+		
+		// the first segment is deleted once its record is completed
+		journal.complete(first);
+		Assert.assertEquals( journal.getSize(), 64 );
+		Assert.assertNotNull( journal.append(new byte[50]) );
+		
+		journal.close();
+		
+	}
+	
+	@Test
+	public void shouldShareBudget() throws Exception {
+		
+		DiskBudget budget = new DiskBudget(192);
+		
+		Journal first = new Journal(new File(directory, "first"), 64, budget, false);
+		first.open();
+		Journal second = new Journal(new File(directory, "second"), 64, budget, false);
+		second.open();
+		
+		// each record takes a segment
+		Journal.Record record = first.append( new byte[50] );
+		Assert.assertNotNull( record );
+		Assert.assertNotNull( first.append(new byte[50]) );
+		Assert.assertNotNull( second.append(new byte[50]) );
+		
+		// there is no room for another segment in any of the journals
+		Assert.assertNull( first.append(new byte[50]) );
+		Assert.assertNull( second.append(new byte[50]) );
+		Assert.assertEquals( budget.getUsed(), 192 );
+		
+		// the segment deleted by the first journal can be used by the second one
+		first.complete(record);
+		Assert.assertEquals( budget.getUsed(), 128 );
+		Assert.assertNotNull( second.append(new byte[50]) );
+		
+		first.close();
+		second.close();
+		Assert.assertEquals( budget.getUsed(), 0 );
+		
+	}
+	
+	@Test
+	public void shouldDeleteCompletedSegments() throws Exception {
+		
+		Journal journal = new Journal(directory, 64, 256, false);
+		journal.open();
+		
+		Journal.Record first = journal.append( new byte[50] );
+		journal.append( new byte[50] );
+		Assert.assertEquals( directory.list().length, 2 );
+		
+		journal.complete(first);
+		Assert.assertEquals( directory.list().length, 1 );
+		
+		// completing the record again doesn't access the deleted segment
+		journal.complete(first);
+		
+		journal.close();
+		
+	}
+	
+	static void delete(File file) {
+		
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		
+		file.delete();
+	}
+	
+}
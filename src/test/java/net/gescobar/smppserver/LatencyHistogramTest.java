@@ -0,0 +1,56 @@
+package net.gescobar.smppserver;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void shouldBeEmpty() throws Exception {
+		
+		LatencyHistogram histogram = new LatencyHistogram();
+		
+		Assert.assertEquals( histogram.getCount(), 0 );
+		Assert.assertEquals( histogram.getMean(), 0 );
+		Assert.assertEquals( histogram.getPercentile(99), 0 );
+		
+	}
+	
+	@Test
+	public void shouldCalculatePercentiles() throws Exception {
+		
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i=1; i <= 10000; i++) {
+			histogram.record(i);
+		}
+		
+		Assert.assertEquals( histogram.getCount(), 10000 );
+		Assert.assertEquals( histogram.getMean(), 5000 );
+		Assert.assertEquals( histogram.getMax(), 10000 );
+		
+		assertWithin( histogram.getPercentile(50), 5000 );
+		assertWithin( histogram.getPercentile(99), 9900 );
+		Assert.assertEquals( histogram.getPercentile(100), 10000 );
+		
+	}
+	
+	@Test
+	public void shouldMapValuesToIncreasingBuckets() throws Exception {
+		
+		for (long value=0; value < 1000000; value += 7) {
+			int index = LatencyHistogram.index(value);
+			Assert.assertTrue( LatencyHistogram.highestValue(index) >= value );
+			Assert.assertTrue( index == 0 || LatencyHistogram.highestValue(index - 1) < value );
+		}
+		
+	}
+	
+	private void assertWithin(long actual, long expected) {
+		Assert.assertTrue( Math.abs(actual - expected) <= expected / 16, actual + " is not close to " + expected );
+	}
+	
+}
@@ -0,0 +1,51 @@
+package net.gescobar.smppserver;
+
+import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class NioTransportTest {
+
+	@Test
+	public void shouldHaveDefaults() throws Exception {
+		
+		NioTransport transport = new NioTransport();
+		
+		Assert.assertEquals( transport.getBossThreads(), 1 );
+		Assert.assertEquals( transport.getWorkerThreads(), Runtime.getRuntime().availableProcessors() * 2 );
+		
+	}
+	
+	@Test
+	public void shouldCreateNewChannelFactory() throws Exception {
+		
+		NioTransport transport = new NioTransport(1, 2);
+		
+		ServerSocketChannelFactory first = transport.createChannelFactory();
+		ServerSocketChannelFactory second = transport.createChannelFactory();
+		try {
+			Assert.assertTrue( first instanceof NioServerSocketChannelFactory );
+			Assert.assertNotSame( first, second );
+		} finally {
+			first.releaseExternalResources();
+			second.releaseExternalResources();
+		}
+		
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void shouldFailWithZeroBossThreads() throws Exception {
+		new NioTransport(0, 2);
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void shouldFailWithZeroWorkerThreads() throws Exception {
+		new NioTransport(1, 0);
+	}
+	
+}
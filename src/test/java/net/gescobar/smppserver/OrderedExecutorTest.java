@@ -0,0 +1,154 @@
+package net.gescobar.smppserver;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class OrderedExecutorTest {
+
+	@Test
+	public void shouldRunTasksInOrder() throws Exception {
+		
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		
+		try {
+			OrderedExecutor executor = new OrderedExecutor(pool, 1000);
+			
+			final List<Integer> results = new CopyOnWriteArrayList<Integer>();
+			final CountDownLatch latch = new CountDownLatch(500);
+			
+			for (int i=0; i < 500; i++) {
+				final int value = i;
+				executor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						results.add(value);
+						latch.countDown();
+					}
+					
+				});
+			}
+			
+			Assert.assertTrue( latch.await(5, TimeUnit.SECONDS) );
+			for (int i=0; i < 500; i++) {
+				Assert.assertEquals( results.get(i).intValue(), i );
+			}
+			
+		} finally {
+			pool.shutdown();
+		}
+		
+	}
+	
+	@Test
+	public void shouldRejectWhenExecutorIsShutdown() throws Exception {
+		
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		pool.shutdown();
+		
+		OrderedExecutor executor = new OrderedExecutor(pool, 10);
+		try {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {}
+				
+			});
+			Assert.fail("the task should be rejected");
+		} catch (RejectedExecutionException e) {}
+		
+		Assert.assertEquals( executor.getPending(), 0 );
+		
+	}
+	
+	@Test
+	public void shouldDiscardPendingTasksWhenDrainerIsRejected() throws Exception {
+		
+		final List<Runnable> drainers = new CopyOnWriteArrayList<Runnable>();
+		
+		// accepts the first drainer and rejects the next ones, as if it was shut down in the meantime
+		Executor shared = new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				if (!drainers.isEmpty()) {
+					throw new RejectedExecutionException("shut down");
+				}
+				drainers.add(command);
+			}
+			
+		};
+		
+		OrderedExecutor executor = new OrderedExecutor(shared, 100);
+		
+		// more tasks than the ones run by a drainer, so it has to be scheduled again
+		final AtomicInteger run = new AtomicInteger();
+		for (int i=0; i < 65; i++) {
+			executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					run.incrementAndGet();
+				}
+				
+			});
+		}
+		
+		// the rejection is not thrown to the thread that runs the drainer
+		drainers.get(0).run();
+		
+		Assert.assertEquals( run.get(), 64 );
+		Assert.assertEquals( executor.getPending(), 0 );
+		
+	}
+	
+	@Test(expectedExceptions=RejectedExecutionException.class)
+	public void shouldRejectWhenFull() throws Exception {
+		
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		final CountDownLatch latch = new CountDownLatch(1);
+		
+		try {
+			OrderedExecutor executor = new OrderedExecutor(pool, 1);
+			
+			Runnable blocking = new Runnable() {
+
+				@Override
+				public void run() {
+					try { latch.await(); } catch (InterruptedException e) {}
+				}
+				
+			};
+			
+			executor.execute(blocking);
+			
+			// wait until the first task is taken so only one task is pending
+			while (executor.getPending() > 0) {
+				Thread.sleep(10);
+			}
+			
+			executor.execute(blocking);
+			executor.execute(blocking);
+			
+		} finally {
+			latch.countDown();
+			pool.shutdown();
+		}
+		
+	}
+	
+}
@@ -0,0 +1,54 @@
+package net.gescobar.smppserver;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class PduTracerTest {
+
+	@Test
+	public void shouldNotTraceByDefault() throws Exception {
+		
+		PduTracer tracer = new PduTracer();
+		
+		Assert.assertFalse( tracer.isTraced(null) );
+		Assert.assertFalse( tracer.isTraced("test") );
+		
+	}
+	
+	@Test
+	public void shouldTraceSystemId() throws Exception {
+		
+		PduTracer tracer = new PduTracer();
+		tracer.addSystemId("test");
+		
+		Assert.assertTrue( tracer.isTraced("test") );
+		Assert.assertFalse( tracer.isTraced("other") );
+		Assert.assertFalse( tracer.isTraced(null) );
+		
+		tracer.removeSystemId("test");
+		Assert.assertFalse( tracer.isTraced("test") );
+		
+	}
+	
+	@Test
+	public void shouldSamplePdus() throws Exception {
+		
+		PduTracer tracer = new PduTracer();
+		tracer.setSampleRate(10);
+		
+		int traced = 0;
+		for (int i=0; i < 100; i++) {
+			if (tracer.isTraced("test")) {
+				traced++;
+			}
+		}
+		
+		Assert.assertEquals( traced, 10 );
+		
+	}
+	
+}
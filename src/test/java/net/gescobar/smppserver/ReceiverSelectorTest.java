@@ -0,0 +1,67 @@
+package net.gescobar.smppserver;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class ReceiverSelectorTest {
+
+	@Test
+	public void shouldSelectSessionWithMoreFreeSlots() throws Exception {
+		
+		SmppSession busy = mockSession(true, 10, 8);
+		SmppSession idle = mockSession(true, 10, 2);
+		
+		ReceiverSelector selector = new ReceiverSelector();
+		for (int i=0; i < 4; i++) {
+			Assert.assertSame( selector.select(Arrays.asList(busy, idle)), idle );
+		}
+		
+	}
+	
+	@Test
+	public void shouldRoundRobinEqualSessions() throws Exception {
+		
+		SmppSession first = mockSession(true, 10, 0);
+		SmppSession second = mockSession(true, 10, 0);
+		
+		ReceiverSelector selector = new ReceiverSelector();
+		SmppSession selected = selector.select(Arrays.asList(first, second));
+		
+		Assert.assertNotSame( selector.select(Arrays.asList(first, second)), selected );
+		Assert.assertSame( selector.select(Arrays.asList(first, second)), selected );
+		
+	}
+	
+	@Test
+	public void shouldSkipFullAndUnboundSessions() throws Exception {
+		
+		SmppSession full = mockSession(true, 10, 10);
+		SmppSession unbound = mockSession(false, 0, 0);
+		
+		ReceiverSelector selector = new ReceiverSelector();
+		Assert.assertNull( selector.select(Arrays.asList(full, unbound)) );
+		Assert.assertNull( selector.select(Collections.<SmppSession>emptyList()) );
+		
+	}
+	
+	private SmppSession mockSession(boolean bound, int windowSize, int windowFill) {
+		
+		SmppSession session = mock(SmppSession.class);
+		when(session.isBound()).thenReturn(bound);
+		when(session.getWindowSize()).thenReturn(windowSize);
+		when(session.getWindowFill()).thenReturn(windowFill);
+		
+		return session;
+	}
+	
+}
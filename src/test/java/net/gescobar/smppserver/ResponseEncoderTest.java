@@ -0,0 +1,59 @@
+package net.gescobar.smppserver;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.cloudhopper.smpp.pdu.EnquireLinkResp;
+import com.cloudhopper.smpp.pdu.SubmitSmResp;
+
+/**
+ *
+ * @author German Escobar
+ */
+public class ResponseEncoderTest {
+
+	@Test
+	public void shouldEncodeSubmitSmResp() throws Exception {
+
+		assertSubmitSmResp(1, 0, "12345");
+		assertSubmitSmResp(Integer.MAX_VALUE, 0, "a1b2c3d4e5f6a1b2c3d4e5f6a1b2c3d4e5f6a1b2c3d4e5f6a1b2c3d4e5f6abcde");
+
+	}
+
+	@Test
+	public void shouldEncodeSubmitSmRespWithoutMessageId() throws Exception {
+
+		assertSubmitSmResp(2, Response.THROTTLING_ERROR.getCommandStatus(), null);
+
+	}
+
+	@Test
+	public void shouldEncodeEnquireLinkResp() throws Exception {
+
+		EnquireLinkResp enquireLinkResp = new EnquireLinkResp();
+		enquireLinkResp.setSequenceNumber(3);
+
+		ChannelBuffer buffer = ChannelBuffers.buffer(ResponseEncoder.ENQUIRE_LINK_RESP_LENGTH);
+		ResponseEncoder.writeEnquireLinkResp(buffer, 3, 0);
+
+		Assert.assertEquals( buffer, SmppSession.TRANSCODER.encode(enquireLinkResp) );
+
+	}
+
+	private void assertSubmitSmResp(int sequenceNumber, int commandStatus, String messageId) throws Exception {
+
+		SubmitSmResp submitSmResp = new SubmitSmResp();
+		submitSmResp.setSequenceNumber(sequenceNumber);
+		submitSmResp.setCommandStatus(commandStatus);
+		submitSmResp.setMessageId(messageId);
+
+		ChannelBuffer buffer = ChannelBuffers.buffer( ResponseEncoder.submitSmRespLength(messageId) );
+		ResponseEncoder.writeSubmitSmResp(buffer, sequenceNumber, commandStatus, messageId);
+
+		Assert.assertEquals( buffer.writableBytes(), 0 );
+		Assert.assertEquals( buffer, SmppSession.TRANSCODER.encode(submitSmResp) );
+	}
+
+}
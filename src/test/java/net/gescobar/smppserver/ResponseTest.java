@@ -0,0 +1,44 @@
+package net.gescobar.smppserver;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class ResponseTest {
+
+	@Test
+	public void shouldNotModifyConstantWithMessageId() throws Exception {
+		
+		Response response = Response.OK.withMessageId("12000");
+		
+		Assert.assertEquals( response.getMessageId(), "12000" );
+		Assert.assertEquals( response.getCommandStatus(), Response.OK.getCommandStatus() );
+		Assert.assertNull( Response.OK.getMessageId() );
+		
+	}
+	
+	@Test
+	public void shouldFindResponseByCommandStatus() throws Exception {
+		
+		Assert.assertSame( Response.valueOf(0x58), Response.THROTTLING_ERROR );
+		Assert.assertEquals( Response.valueOf(0x400).getCommandStatus(), 0x400 );
+		
+	}
+	
+	@Test
+	public void shouldFindResponseByName() throws Exception {
+		
+		Assert.assertSame( Response.valueOf("THROTTLING_ERROR"), Response.THROTTLING_ERROR );
+		Assert.assertSame( Response.valueOf(Response.OK.name()), Response.OK );
+		
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void shouldFailFindingUnknownName() throws Exception {
+		Response.valueOf("UNKNOWN");
+	}
+	
+}
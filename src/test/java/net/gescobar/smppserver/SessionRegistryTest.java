@@ -0,0 +1,82 @@
+package net.gescobar.smppserver;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import net.gescobar.smppserver.SmppSession.BindType;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author German Escobar
+ */
+public class SessionRegistryTest {
+
+	@Test
+	public void shouldAddReceivers() throws Exception {
+		
+		SmppSession receiver = mockSession("test", BindType.RECEIVER);
+		SmppSession transmitter = mockSession("test", BindType.TRANSMITTER);
+		
+		SessionRegistry registry = new SessionRegistry();
+		registry.add(receiver);
+		registry.add(transmitter);
+		
+		Assert.assertEquals( registry.getReceivers("test").size(), 1 );
+		Assert.assertSame( registry.getReceivers("test").get(0), receiver );
+		Assert.assertTrue( registry.getReceivers("other").isEmpty() );
+		
+	}
+	
+	@Test
+	public void shouldRemoveEmptySystemIds() throws Exception {
+		
+		SmppSession first = mockSession("test", BindType.TRANSCIEVER);
+		SmppSession second = mockSession("test", BindType.RECEIVER);
+		
+		SessionRegistry registry = new SessionRegistry();
+		registry.add(first);
+		registry.add(second);
+		
+		registry.remove(first);
+		Assert.assertEquals( registry.getReceivers("test").size(), 1 );
+		Assert.assertEquals( registry.getSystemIds(), 1 );
+		
+		registry.remove(second);
+		Assert.assertTrue( registry.getReceivers("test").isEmpty() );
+		Assert.assertEquals( registry.getSystemIds(), 0 );
+		
+		// the system id is added again
+		registry.add(first);
+		Assert.assertEquals( registry.getReceivers("test").size(), 1 );
+		
+	}
+	
+	@Test
+	public void shouldNotAddUnboundSession() throws Exception {
+		
+		SmppSession session = mockSession("test", BindType.RECEIVER);
+		when(session.isBound()).thenReturn(false);
+		
+		SessionRegistry registry = new SessionRegistry();
+		registry.add(session);
+		
+		Assert.assertTrue( registry.getReceivers("test").isEmpty() );
+		Assert.assertEquals( registry.getSystemIds(), 0 );
+		
+	}
+	
+	private SmppSession mockSession(String systemId, BindType bindType) {
+		
+		SmppSession session = mock(SmppSession.class);
+		when(session.getSystemId()).thenReturn(systemId);
+		when(session.getBoundSystemId()).thenReturn(systemId);
+		when(session.getBindType()).thenReturn(bindType);
+		when(session.isBound()).thenReturn(true);
+		
+		return session;
+	}
+	
+}
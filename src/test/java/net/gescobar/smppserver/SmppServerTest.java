@@ -2,14 +2,17 @@ package net.gescobar.smppserver;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.DataInputStream;
+import java.io.File;
 import java.net.Socket;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.Executors;
 
 import net.gescobar.smppserver.SmppSession.BindType;
@@ -20,6 +23,7 @@ import net.gescobar.smppserver.packet.SmppResponse;
 import net.gescobar.smppserver.packet.SubmitSm;
 import net.gescobar.smppserver.packet.Unbind;
 
+import org.jboss.netty.channel.socket.ServerSocketChannelFactory;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
@@ -29,6 +33,7 @@ import com.cloudhopper.smpp.SmppConstants;
 import com.cloudhopper.smpp.SmppSessionConfiguration;
 import com.cloudhopper.smpp.SmppSessionHandler;
 import com.cloudhopper.smpp.impl.DefaultSmppClient;
+import com.cloudhopper.smpp.impl.DefaultSmppSessionHandler;
 import com.cloudhopper.smpp.pdu.BindTransceiver;
 import com.cloudhopper.smpp.pdu.BindTransceiverResp;
 import com.cloudhopper.smpp.pdu.PduRequest;
@@ -38,6 +43,7 @@ import com.cloudhopper.smpp.pdu.UnbindResp;
 import com.cloudhopper.smpp.transcoder.DefaultPduTranscoder;
 import com.cloudhopper.smpp.transcoder.DefaultPduTranscoderContext;
 import com.cloudhopper.smpp.transcoder.PduTranscoder;
+import com.cloudhopper.smpp.type.SmppChannelException;
 
 /**
  * 
@@ -120,6 +126,189 @@ public class SmppServerTest {
 		
 	}
 	
+	@Test
+	public void shouldListSessions() throws Exception {
+		
+		// start the SMPP Server
+		SmppServer smppServer = new SmppServer(PORT);
+		smppServer.setSessionMBeanMode(SessionMBeanMode.NONE);
+		smppServer.start();
+		
+		try {
+			
+			bind(SmppBindType.TRANSCEIVER);
+			assertSessionsCreated(smppServer, 1, DEFAULT_TIMEOUT);
+			
+			Assert.assertEquals( smppServer.getBoundSessions(), 1 );
+			
+			String[] sessions = smppServer.listSessions();
+			Assert.assertEquals( sessions.length, 1 );
+			Assert.assertTrue( sessions[0].contains("status=BOUND") );
+			Assert.assertTrue( sessions[0].contains("bindType=TRANSCIEVER") );
+			
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+		
+	}
+	
+	@Test
+	public void shouldIndexReceiverSessions() throws Exception {
+		
+		SmppServer smppServer = new SmppServer(PORT);
+		smppServer.start();
+		
+		try {
+			
+			com.cloudhopper.smpp.SmppSession transceiver = bind(SmppBindType.TRANSCEIVER);
+			bind(SmppBindType.RECEIVER);
+			bind(SmppBindType.TRANSMITTER);
+			assertSessionsCreated(smppServer, 3, DEFAULT_TIMEOUT);
+			
+			// the binds have no system id
+			Assert.assertEquals( smppServer.getReceiverSessions(null).size(), 2 );
+			Assert.assertTrue( smppServer.getReceiverSessions("other").isEmpty() );
+			
+			transceiver.unbind(DEFAULT_TIMEOUT);
+			
+			long startTime = System.currentTimeMillis();
+			while (smppServer.getReceiverSessions(null).size() > 1 
+					&& System.currentTimeMillis() - startTime < DEFAULT_TIMEOUT) {
+				Thread.sleep(10);
+			}
+			
+			List<SmppSession> receivers = smppServer.getReceiverSessions(null);
+			Assert.assertEquals( receivers.size(), 1 );
+			Assert.assertEquals( receivers.get(0).getBindType(), BindType.RECEIVER );
+			
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+		
+	}
+	
+	@Test
+	public void shouldReleaseResourcesWhenPortInUse() throws Exception {
+		
+		SmppServer first = new SmppServer(PORT);
+		first.start();
+		
+		SpyTransport transport = new SpyTransport();
+		
+		SmppServer second = new SmppServer(PORT);
+		second.setTransport(transport);
+		second.setSocketConfiguration( new SocketConfiguration().withReuseAddress(false) );
+		
+		try {
+			
+			try {
+				second.start();
+				Assert.fail("the port should be in use");
+			} catch (SmppChannelException e) {}
+			
+			Assert.assertEquals( second.getStatus(), SmppServer.Status.STOPPED );
+			verify(transport.factory).releaseExternalResources();
+			
+		} finally {
+			stopServer(first, 1000);
+		}
+		
+		// the server can be started once the port is free
+		second.start();
+		Assert.assertEquals( second.getStatus(), SmppServer.Status.STARTED );
+		stopServer(second, 1000);
+		
+	}
+	
+	@Test
+	public void shouldRecordCommandStats() throws Exception {
+		
+		SmppServer smppServer = new SmppServer(PORT);
+		smppServer.start();
+		
+		try {
+			
+			com.cloudhopper.smpp.SmppSession client = bind(SmppBindType.TRANSCEIVER);
+			client.submit(new com.cloudhopper.smpp.pdu.SubmitSm(), DEFAULT_TIMEOUT);
+			client.submit(new com.cloudhopper.smpp.pdu.SubmitSm(), DEFAULT_TIMEOUT);
+			
+			SmppSession session = smppServer.getSessions().iterator().next();
+			Assert.assertEquals( session.getReceivedRequests(), 3 );
+			
+			// the bind has no system id, the latency is recorded after the response is written
+			CommandStats submitStats = null;
+			long startTime = System.currentTimeMillis();
+			while ((submitStats == null || submitStats.getCount() < 2) 
+					&& System.currentTimeMillis() - startTime < DEFAULT_TIMEOUT) {
+				
+				Thread.sleep(10);
+				for (CommandStats stats : smppServer.getCommandStats("")) {
+					if (stats.getCommandId() == SmppConstants.CMD_ID_SUBMIT_SM) {
+						submitStats = stats;
+					}
+				}
+			}
+			
+			Assert.assertNotNull( submitStats );
+			Assert.assertEquals( submitStats.getCommandStatus(), 0 );
+			Assert.assertEquals( submitStats.getCount(), 2 );
+			
+			// the bind is counted in the requests of the system id as its response is in the stats
+			Assert.assertEquals( smppServer.getReceivedRequests(""), 3 );
+			
+			// the session only counts the responses
+			for (CommandStats stats : session.getCommandStats()) {
+				Assert.assertEquals( stats.getMax(), 0 );
+			}
+			
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+		
+	}
+	
+	@Test
+	public void shouldAnswerEnquireLinkWithoutProcessor() throws Exception {
+		
+		// the processor only answers the bind
+		PacketProcessor packetProcessor = new PacketProcessor() {
+
+			@Override
+			public void processPacket(SmppRequest packet, ResponseSender responseSender) {
+				if (packet.isBind()) {
+					responseSender.send( Response.OK );
+				}
+			}
+			
+		};
+		
+		SmppServer smppServer = new SmppServer(PORT, packetProcessor);
+		smppServer.start();
+		
+		try {
+			
+			com.cloudhopper.smpp.SmppSession client = bind(SmppBindType.TRANSCEIVER, new DefaultSmppSessionHandler());
+			
+			SmppSession session = smppServer.getSessions().iterator().next();
+			long lastActivity = session.getLastActivity();
+			Thread.sleep(10);
+			
+			Assert.assertNotNull( client.enquireLink(new com.cloudhopper.smpp.pdu.EnquireLink(), DEFAULT_TIMEOUT) );
+			Assert.assertTrue( session.getLastActivity() > lastActivity );
+			
+			// the client answers the enquire_link of the server
+			Assert.assertEquals( session.getEnquireLinkRtt(), -1 );
+			session.sendRequest(new EnquireLink(), DEFAULT_TIMEOUT);
+			
+			// the round trip is recorded before the response completes the request
+			Assert.assertTrue( session.getEnquireLinkRtt() >= 0 );
+			
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+		
+	}
+	
 	@Test(dependsOnMethods="shouldCreateTranscieverSession")
 	public void shouldSetCustomMessageId() throws Exception {
 		
@@ -201,6 +390,105 @@ public class SmppServerTest {
 		
 	}
 	
+	@Test
+	public void shouldDeliverQueuedDeliverSm() throws Exception {
+		
+		File directory = new File(System.getProperty("java.io.tmpdir"), "smpp-queue-" + System.nanoTime());
+		
+		SmppServer smppServer = new SmppServer(PORT);
+		smppServer.setOutboundQueueConfiguration( new OutboundQueueConfiguration(directory) );
+		smppServer.start();
+		
+		try {
+			
+			// no receiver is bound yet, the binds have no system id
+			Assert.assertTrue( smppServer.queueDeliverSm("", new DeliverSm()) );
+			Assert.assertEquals( smppServer.getQueuedDeliverSm(""), 1 );
+			
+			bind(SmppBindType.RECEIVER, new DefaultSmppSessionHandler());
+			
+			long startTime = System.currentTimeMillis();
+			while (smppServer.getQueuedDeliverSm("") > 0 && System.currentTimeMillis() - startTime < DEFAULT_TIMEOUT) {
+				Thread.sleep(10);
+			}
+			
+			Assert.assertEquals( smppServer.getQueuedDeliverSm(""), 0 );
+			
+		} finally {
+			stopServer(smppServer, 1000);
+			JournalTest.delete(directory);
+		}
+		
+	}
+	
+	@Test
+	public void shouldWriteBindResponseBeforeQueuedDeliverSm() throws Exception {
+		
+		File directory = new File(System.getProperty("java.io.tmpdir"), "smpp-queue-" + System.nanoTime());
+		
+		SmppServer smppServer = new SmppServer(PORT);
+		smppServer.setOutboundQueueConfiguration( new OutboundQueueConfiguration(directory) );
+		smppServer.start();
+		
+		try {
+			
+			Assert.assertTrue( smppServer.queueDeliverSm("", new DeliverSm()) );
+			
+			Socket socket = new Socket("localhost", PORT);
+			
+			PduTranscoder transcoder = new DefaultPduTranscoder(new DefaultPduTranscoderContext());
+			socket.getOutputStream().write(transcoder.encode(new com.cloudhopper.smpp.pdu.BindReceiver()).array());
+			
+			// the first packet is the bind response and the next one the queued deliver_sm
+			DataInputStream input = new DataInputStream(socket.getInputStream());
+			Assert.assertEquals( readCommandId(input), SmppConstants.CMD_ID_BIND_RECEIVER_RESP );
+			Assert.assertEquals( readCommandId(input), SmppConstants.CMD_ID_DELIVER_SM );
+			
+			socket.close();
+			
+		} finally {
+			stopServer(smppServer, 1000);
+			JournalTest.delete(directory);
+		}
+		
+	}
+	
+	@Test
+	public void shouldSendAsyncRequestToClient() throws Exception {
+		
+		SmppServer smppServer = new SmppServer(PORT);
+		smppServer.start();
+		
+		int sequenceNumber = 235;
+		
+		try {
+			
+			com.cloudhopper.smpp.pdu.DeliverSmResp deliverSmResp = new com.cloudhopper.smpp.pdu.DeliverSmResp();
+			deliverSmResp.setSequenceNumber(sequenceNumber);
+			deliverSmResp.setCommandStatus( SmppConstants.STATUS_OK );
+			
+			SmppSessionHandler sessionHandler = mock(SmppSessionHandler.class);
+			when(sessionHandler.firePduRequestReceived(any(PduRequest.class))).thenReturn(deliverSmResp);
+			
+			bind(SmppBindType.TRANSCEIVER, sessionHandler);
+			assertSessionsCreated(smppServer, 1, DEFAULT_TIMEOUT);
+			
+			SmppSession smppSession = smppServer.getSessions().iterator().next();
+			
+			// send the request without waiting for the response
+			SmppResponseListener listener = mock(SmppResponseListener.class);
+			DeliverSm deliverSm = new DeliverSm();
+			deliverSm.setSequenceNumber(sequenceNumber);
+			smppSession.sendRequestAsync(deliverSm, DEFAULT_TIMEOUT, listener);
+			
+			verify(listener, timeout(DEFAULT_TIMEOUT)).responseReceived(any(SmppRequest.class), any(SmppResponse.class));
+			
+		} finally {
+			stopServer(smppServer, 1000);
+		}
+		
+	}
+	
 	@Test(expectedExceptions=IllegalArgumentException.class)
 	public void shouldFailSendingNullPacketToClient() throws Exception {
 		
@@ -438,6 +726,39 @@ public class SmppServerTest {
 		Assert.assertEquals(smppServer.getSessions().size(), numSessions);
 	}
 	
+	/**
+	 * A {@link NioTransport} that keeps a spy of the last channel factory it created.
+	 */
+	private class SpyTransport extends NioTransport {
+		
+		private ServerSocketChannelFactory factory;
+		
+		public SpyTransport() {
+			super(1, 2);
+		}
+		
+		@Override
+		public ServerSocketChannelFactory createChannelFactory() {
+			factory = spy( super.createChannelFactory() );
+			return factory;
+		}
+		
+	}
+	
+	/**
+	 * Reads a PDU from the stream.
+	 * 
+	 * @return the command id of the PDU.
+	 */
+	private int readCommandId(DataInputStream input) throws Exception {
+		
+		int commandLength = input.readInt();
+		int commandId = input.readInt();
+		input.readFully( new byte[commandLength - 8] );
+		
+		return commandId;
+	}
+	
 	private void stopServer(SmppServer server, long timeout) {
 		
 		server.stop();
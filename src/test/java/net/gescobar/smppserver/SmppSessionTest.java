@@ -1,17 +1,40 @@
 package net.gescobar.smppserver;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import net.gescobar.smppserver.packet.Bind;
+import net.gescobar.smppserver.packet.DeliverSm;
 import net.gescobar.smppserver.packet.SmppRequest;
+import net.gescobar.smppserver.packet.SubmitSm;
 
 import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.Channels;
 import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.timeout.IdleState;
+import org.jboss.netty.handler.timeout.IdleStateEvent;
+import org.jboss.netty.util.HashedWheelTimer;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import com.cloudhopper.smpp.pdu.BindTransceiver;
+import com.cloudhopper.smpp.type.Address;
 
 public class SmppSessionTest {
 	
@@ -27,6 +50,12 @@ public class SmppSessionTest {
 		session.getSystemId();
 	}
 	
+	@Test(expectedExceptions=IllegalStateException.class)
+	public void sendRequestAsyncShouldFailIfNotBound() throws Exception {
+		SmppSession session = new SmppSession(471, mockChannel(), new DefaultPacketProcessor() );
+		session.sendRequestAsync(new DeliverSm(), 1000, null);
+	}
+	
 	@Test
 	public void shouldCallCustomPacketProcessor() throws Exception {
 		PacketProcessor packetProcessor = mock(PacketProcessor.class);
@@ -41,6 +70,346 @@ public class SmppSessionTest {
 		
 	}
 	
+	@Test
+	public void shouldFailSecondAsyncResponse() throws Exception {
+		
+		final Channel channel = mock(Channel.class);
+		when(channel.isConnected()).thenReturn(true);
+		when(channel.write(any())).thenReturn( Channels.succeededFuture(channel) );
+		
+		final List<ChannelFuture> futures = new ArrayList<ChannelFuture>();
+		SmppSession session = new SmppSession(496, channel, new PacketProcessor() {
+
+			@Override
+			public void processPacket(SmppRequest packet, ResponseSender responseSender) {
+				futures.add( responseSender.sendAsync(Response.OK) );
+				futures.add( responseSender.sendAsync(Response.OK) );
+			}
+			
+		});
+		
+		MessageEvent event = mock(MessageEvent.class);
+		when(event.getMessage()).thenReturn(new BindTransceiver());
+		
+		session.messageReceived(null, event);
+		
+		Assert.assertEquals( futures.size(), 2 );
+		Assert.assertTrue( futures.get(0).isSuccess() );
+		Assert.assertFalse( futures.get(1).isSuccess() );
+		Assert.assertTrue( session.isBound() );
+		
+	}
+	
+	@Test
+	public void shouldNotifyBindResponseSentOnceWritten() throws Exception {
+		
+		Channel channel = mockChannel();
+		ChannelFuture writeFuture = Channels.future(channel);
+		when(channel.write(any())).thenReturn(writeFuture);
+		
+		SmppSession session = new SmppSession(499, channel, new DefaultPacketProcessor());
+		session.setWriteCoalescing(false);
+		
+		SessionStateListener stateListener = mock(SessionStateListener.class);
+		session.setStateListener(stateListener);
+		
+		receive(session, new BindTransceiver());
+		
+		// bound but the bind response is not written yet
+		Assert.assertTrue( session.isBound() );
+		verify(stateListener).bound(session);
+		verify(stateListener, never()).bindResponseSent(session);
+		
+		writeFuture.setSuccess();
+		verify(stateListener).bindResponseSent(session);
+		
+	}
+	
+	@Test
+	public void shouldNotBindClosedSession() throws Exception {
+		
+		Channel channel = mockChannel();
+		final List<ResponseSender> responseSenders = new ArrayList<ResponseSender>();
+		
+		SmppSession session = new SmppSession(498, channel, new PacketProcessor() {
+
+			@Override
+			public void processPacket(SmppRequest packet, ResponseSender responseSender) {
+				responseSenders.add(responseSender);
+			}
+			
+		});
+		
+		SessionStateListener stateListener = mock(SessionStateListener.class);
+		session.setStateListener(stateListener);
+		
+		receive(session, new BindTransceiver());
+		
+		// the channel is closed before the bind is answered
+		when(channel.isConnected()).thenReturn(false);
+		session.channelClosed(mock(ChannelHandlerContext.class), mock(ChannelStateEvent.class));
+		
+		responseSenders.get(0).send(Response.OK);
+		
+		Assert.assertFalse( session.isBound() );
+		Assert.assertEquals( session.getStatus(), SmppSession.Status.CLOSED );
+		verify(stateListener, never()).bound(session);
+		verify(stateListener, never()).unbound(session);
+		
+	}
+	
+	@Test
+	public void shouldSuspendReadsAtHighWatermark() throws Exception {
+		
+		Channel channel = mockChannel();
+		HoldingPacketProcessor packetProcessor = new HoldingPacketProcessor();
+		
+		SmppSession session = new SmppSession(497, channel, packetProcessor);
+		session.setWatermarks(3, 1);
+		
+		receive(session, new BindTransceiver());
+		for (int i=0; i < 3; i++) {
+			receive(session, submitSm());
+		}
+		
+		Assert.assertEquals( session.getInFlightRequests(), 3 );
+		Assert.assertTrue( session.isReadSuspended() );
+		
+		// still above the low watermark
+		packetProcessor.responseSenders.get(0).send(Response.OK);
+		Assert.assertTrue( session.isReadSuspended() );
+		
+		packetProcessor.responseSenders.get(1).send(Response.OK);
+		Assert.assertFalse( session.isReadSuspended() );
+		Assert.assertEquals( session.getInFlightRequests(), 1 );
+		
+	}
+	
+	@Test
+	public void shouldAnswerSystemErrorWhenProcessorFails() throws Exception {
+		
+		Channel channel = mockChannel();
+		SmppSession session = new SmppSession(498, channel, new DefaultPacketProcessor() {
+
+			@Override
+			public void processPacket(SmppRequest packet, ResponseSender responseSender) {
+				
+				if (SubmitSm.class.isInstance(packet)) {
+					throw new IllegalStateException("processor failure");
+				}
+				
+				super.processPacket(packet, responseSender);
+			}
+			
+		});
+		session.setWatermarks(1, 0);
+		
+		receive(session, new BindTransceiver());
+		receive(session, submitSm());
+		
+		// the bind response and the submit_sm response
+		verify(channel, times(2)).write(any());
+		Assert.assertEquals( session.getInFlightRequests(), 0 );
+		Assert.assertFalse( session.isReadSuspended() );
+		
+	}
+	
+	@Test
+	public void shouldReleaseRequestsInFlightWhenClosed() throws Exception {
+		
+		Channel channel = mockChannel();
+		HoldingPacketProcessor packetProcessor = new HoldingPacketProcessor();
+		
+		SmppSession session = new SmppSession(499, channel, packetProcessor);
+		FlowControl flowControl = new FlowControl(Collections.singletonList(session));
+		flowControl.setWatermarks(2, 0);
+		session.setFlowControl(flowControl);
+		
+		receive(session, new BindTransceiver());
+		receive(session, submitSm());
+		receive(session, submitSm());
+		
+		Assert.assertEquals( flowControl.getInFlight(), 2 );
+		Assert.assertTrue( flowControl.isSuspended() );
+		
+		session.channelClosed(mock(ChannelHandlerContext.class), mock(ChannelStateEvent.class));
+		
+		Assert.assertEquals( flowControl.getInFlight(), 0 );
+		Assert.assertFalse( flowControl.isSuspended() );
+		
+		// a late response doesn't complete the request twice
+		packetProcessor.responseSenders.get(0).send(Response.OK);
+		Assert.assertEquals( flowControl.getInFlight(), 0 );
+		Assert.assertEquals( session.getInFlightRequests(), 0 );
+		
+	}
+	
+	@Test
+	public void shouldCloseIdleSessionNotBound() throws Exception {
+		
+		Channel channel = mockChannel();
+		SmppSession session = new SmppSession(500, channel, new DefaultPacketProcessor());
+		
+		readerIdle(session);
+		
+		verify(channel).disconnect();
+		Assert.assertEquals( session.getStatus(), SmppSession.Status.CLOSED );
+		
+	}
+	
+	@Test
+	public void shouldSendEnquireLinkToIdleSession() throws Exception {
+		
+		Channel channel = mockChannel();
+		SmppSession session = new SmppSession(501, channel, new DefaultPacketProcessor());
+		receive(session, new BindTransceiver());
+		
+		readerIdle(session);
+		
+		// the bind response and the enquire_link
+		verify(channel, times(2)).write(any());
+		verify(channel, never()).disconnect();
+		Assert.assertEquals( session.getWindowFill(), 1 );
+		
+		// only one enquire_link at a time
+		readerIdle(session);
+		verify(channel, times(2)).write(any());
+		
+	}
+	
+	@Test
+	public void shouldNotCheckIdleSessionWithSuspendedReads() throws Exception {
+		
+		Channel channel = mockChannel();
+		HoldingPacketProcessor packetProcessor = new HoldingPacketProcessor();
+		
+		SmppSession session = new SmppSession(502, channel, packetProcessor);
+		session.setWatermarks(1, 0);
+		
+		receive(session, new BindTransceiver());
+		receive(session, submitSm());
+		Assert.assertTrue( session.isReadSuspended() );
+		
+		readerIdle(session);
+		
+		// only the bind response
+		verify(channel, times(1)).write(any());
+		verify(channel, never()).disconnect();
+		
+	}
+	
+	@Test
+	public void shouldCloseSessionNotBoundInTime() throws Exception {
+		
+		HashedWheelTimer timer = new HashedWheelTimer();
+		try {
+			Channel channel = mockChannel();
+			SmppSession session = new SmppSession(503, channel, new DefaultPacketProcessor());
+			
+			session.startBindTimer(timer, 100);
+			verify(channel, timeout(2000)).disconnect();
+			Assert.assertEquals( session.getStatus(), SmppSession.Status.CLOSED );
+		} finally {
+			timer.stop();
+		}
+		
+	}
+	
+	@Test
+	public void shouldNotCloseSessionBoundInTime() throws Exception {
+		
+		HashedWheelTimer timer = new HashedWheelTimer();
+		try {
+			Channel channel = mockChannel();
+			SmppSession session = new SmppSession(504, channel, new DefaultPacketProcessor());
+			
+			session.startBindTimer(timer, 100);
+			receive(session, new BindTransceiver());
+			
+			Thread.sleep(500);
+			verify(channel, never()).disconnect();
+			Assert.assertTrue( session.isBound() );
+		} finally {
+			timer.stop();
+		}
+		
+	}
+	
+	private void readerIdle(SmppSession session) throws Exception {
+		
+		IdleStateEvent event = mock(IdleStateEvent.class);
+		when(event.getState()).thenReturn(IdleState.READER_IDLE);
+		
+		session.handleUpstream(mock(ChannelHandlerContext.class), event);
+	}
+	
+	private void receive(SmppSession session, Object pdu) throws Exception {
+		
+		MessageEvent event = mock(MessageEvent.class);
+		when(event.getMessage()).thenReturn(pdu);
+		
+		session.messageReceived(null, event);
+	}
+	
+	private com.cloudhopper.smpp.pdu.SubmitSm submitSm() throws Exception {
+		
+		com.cloudhopper.smpp.pdu.SubmitSm submitSm = new com.cloudhopper.smpp.pdu.SubmitSm();
+		submitSm.setSourceAddress( new Address((byte) 0, (byte) 0, "5555") );
+		submitSm.setDestAddress( new Address((byte) 1, (byte) 1, "573001234567") );
+		
+		return submitSm;
+	}
+	
+	/**
+	 * @return a mocked channel that keeps the readable flag and whose writes succeed.
+	 */
+	private Channel mockChannel() {
+		
+		final Channel channel = mock(Channel.class);
+		final AtomicBoolean readable = new AtomicBoolean(true);
+		
+		when(channel.isConnected()).thenReturn(true);
+		when(channel.write(any())).thenReturn( Channels.succeededFuture(channel) );
+		when(channel.isReadable()).thenAnswer(new Answer<Boolean>() {
+
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				return readable.get();
+			}
+			
+		});
+		when(channel.setReadable(anyBoolean())).thenAnswer(new Answer<ChannelFuture>() {
+
+			@Override
+			public ChannelFuture answer(InvocationOnMock invocation) throws Throwable {
+				readable.set( (Boolean) invocation.getArguments()[0] );
+				return Channels.succeededFuture(channel);
+			}
+			
+		});
+		
+		return channel;
+	}
+	
+	/**
+	 * Answers the binds and keeps the response senders of the other requests without answering them.
+	 */
+	private class HoldingPacketProcessor extends DefaultPacketProcessor {
+		
+		private final List<ResponseSender> responseSenders = new ArrayList<ResponseSender>();
+
+		@Override
+		public void processPacket(SmppRequest packet, ResponseSender responseSender) {
+			
+			if (Bind.class.isInstance(packet)) {
+				super.processPacket(packet, responseSender);
+			} else {
+				responseSenders.add(responseSender);
+			}
+		}
+		
+	}
+	
 	private class DefaultPacketProcessor implements PacketProcessor {
 
 		@Override
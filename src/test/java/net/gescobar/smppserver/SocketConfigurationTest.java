@@ -0,0 +1,56 @@
+package net.gescobar.smppserver;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class SocketConfigurationTest {
+
+	@Test
+	public void shouldHaveDefaults() throws Exception {
+		
+		SocketConfiguration configuration = new SocketConfiguration();
+		
+		Assert.assertEquals( configuration.getBacklog(), 1024 );
+		Assert.assertTrue( configuration.isReuseAddress() );
+		Assert.assertTrue( configuration.isTcpNoDelay() );
+		Assert.assertTrue( configuration.isKeepAlive() );
+		Assert.assertEquals( configuration.getReceiveBufferSize(), 0 );
+		Assert.assertEquals( configuration.getSendBufferSize(), 0 );
+		
+	}
+	
+	@Test
+	public void shouldChainSetters() throws Exception {
+		
+		SocketConfiguration configuration = new SocketConfiguration().withBacklog(0).withReuseAddress(false)
+				.withTcpNoDelay(false).withKeepAlive(false).withReceiveBufferSize(65536).withSendBufferSize(32768);
+		
+		Assert.assertEquals( configuration.getBacklog(), 0 );
+		Assert.assertFalse( configuration.isReuseAddress() );
+		Assert.assertFalse( configuration.isTcpNoDelay() );
+		Assert.assertFalse( configuration.isKeepAlive() );
+		Assert.assertEquals( configuration.getReceiveBufferSize(), 65536 );
+		Assert.assertEquals( configuration.getSendBufferSize(), 32768 );
+		
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void shouldFailWithNegativeBacklog() throws Exception {
+		new SocketConfiguration().withBacklog(-1);
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void shouldFailWithNegativeReceiveBufferSize() throws Exception {
+		new SocketConfiguration().withReceiveBufferSize(-1);
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void shouldFailWithNegativeSendBufferSize() throws Exception {
+		new SocketConfiguration().withSendBufferSize(-1);
+	}
+	
+}
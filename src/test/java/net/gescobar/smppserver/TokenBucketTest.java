@@ -0,0 +1,55 @@
+package net.gescobar.smppserver;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class TokenBucketTest {
+
+	@Test
+	public void shouldAcceptBurstAndRejectAfter() throws Exception {
+		
+		TokenBucket bucket = new TokenBucket(new RateLimit(1, 5));
+		
+		for (int i=0; i < 5; i++) {
+			Assert.assertTrue( bucket.tryAcquire() );
+		}
+		
+		Assert.assertFalse( bucket.tryAcquire() );
+		
+	}
+	
+	@Test
+	public void shouldRefillTokens() throws Exception {
+		
+		TokenBucket bucket = new TokenBucket(new RateLimit(100, 1));
+		
+		Assert.assertTrue( bucket.tryAcquire() );
+		Assert.assertFalse( bucket.tryAcquire() );
+		
+		Thread.sleep(20);
+		Assert.assertTrue( bucket.tryAcquire() );
+		
+	}
+	
+	@Test
+	public void shouldCheckTokenWithoutTakingIt() throws Exception {
+		
+		TokenBucket bucket = new TokenBucket(new RateLimit(1, 2));
+		
+		Assert.assertTrue( bucket.hasToken() );
+		Assert.assertTrue( bucket.hasToken() );
+		Assert.assertTrue( bucket.tryAcquire() );
+		
+		Assert.assertTrue( bucket.hasToken() );
+		Assert.assertTrue( bucket.tryAcquire() );
+		
+		Assert.assertFalse( bucket.hasToken() );
+		Assert.assertFalse( bucket.tryAcquire() );
+		
+	}
+	
+}
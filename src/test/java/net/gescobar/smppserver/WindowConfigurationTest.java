@@ -0,0 +1,49 @@
+package net.gescobar.smppserver;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class WindowConfigurationTest {
+
+	@Test
+	public void shouldHaveDefaults() throws Exception {
+		
+		WindowConfiguration configuration = new WindowConfiguration();
+		
+		Assert.assertEquals( configuration.getSize(), 10 );
+		Assert.assertEquals( configuration.getOfferTimeout(), 30000 );
+		Assert.assertFalse( configuration.isAdaptive() );
+		Assert.assertEquals( configuration.getMinSize(), 1 );
+		Assert.assertEquals( configuration.getTargetLatency(), 1000 );
+		
+	}
+	
+	@Test
+	public void shouldChainSetters() throws Exception {
+		
+		WindowConfiguration configuration = new WindowConfiguration().withSize(50).withOfferTimeout(0)
+				.withAdaptive(true).withMinSize(5).withTargetLatency(200);
+		
+		Assert.assertEquals( configuration.getSize(), 50 );
+		Assert.assertEquals( configuration.getOfferTimeout(), 0 );
+		Assert.assertTrue( configuration.isAdaptive() );
+		Assert.assertEquals( configuration.getMinSize(), 5 );
+		Assert.assertEquals( configuration.getTargetLatency(), 200 );
+		
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void shouldFailWithZeroSize() throws Exception {
+		new WindowConfiguration().withSize(0);
+	}
+	
+	@Test(expectedExceptions=IllegalArgumentException.class)
+	public void shouldFailWithZeroMinSize() throws Exception {
+		new WindowConfiguration().withMinSize(0);
+	}
+	
+}
@@ -0,0 +1,103 @@
+package net.gescobar.smppserver;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.CompositeChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author German Escobar
+ */
+public class WriteCoalescerTest {
+
+	@Test
+	public void shouldWriteImmediatelyOutsideRead() throws Exception {
+
+		Channel channel = mockChannel();
+		WriteCoalescer coalescer = new WriteCoalescer(channel);
+
+		ChannelFuture first = coalescer.write( ChannelBuffers.wrappedBuffer(new byte[] { 1 }) );
+		ChannelFuture second = coalescer.write( ChannelBuffers.wrappedBuffer(new byte[] { 2 }) );
+
+		verify(channel, times(2)).write(any());
+		Assert.assertTrue( first.isSuccess() );
+		Assert.assertTrue( second.isSuccess() );
+
+	}
+
+	@Test
+	public void shouldGatherWritesOfRead() throws Exception {
+
+		final Channel channel = mockChannel();
+		final WriteCoalescer coalescer = new WriteCoalescer(channel);
+		final ChannelFuture[] futures = new ChannelFuture[3];
+
+		// the context passes the read to a handler that writes three PDUs
+		ChannelHandlerContext ctx = mock(ChannelHandlerContext.class);
+		when(ctx.getChannel()).thenReturn(channel);
+		MessageEvent event = mock(MessageEvent.class);
+		when(event.getChannel()).thenReturn(channel);
+
+		doAnswer(new Answer<Void>() {
+
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				for (int i=0; i < futures.length; i++) {
+					futures[i] = coalescer.write( ChannelBuffers.wrappedBuffer(new byte[] { (byte) i }) );
+				}
+				return null;
+			}
+
+		}).when(ctx).sendUpstream(event);
+
+		SimpleChannelUpstreamHandler handler = (SimpleChannelUpstreamHandler) coalescer.getReadHandler();
+		handler.messageReceived(ctx, event);
+
+		ArgumentCaptor<Object> written = ArgumentCaptor.forClass(Object.class);
+		verify(channel, times(1)).write( written.capture() );
+
+		// a gathering composite is written without copying it
+		ChannelBuffer buffer = (ChannelBuffer) written.getValue();
+		Assert.assertTrue( ((CompositeChannelBuffer) buffer).useGathering() );
+		Assert.assertEquals( buffer.readableBytes(), 3 );
+		for (int i=0; i < futures.length; i++) {
+			Assert.assertEquals( buffer.getByte(i), i );
+			Assert.assertTrue( futures[i].isSuccess() );
+		}
+
+	}
+
+	private Channel mockChannel() {
+
+		final Channel channel = mock(Channel.class);
+		when(channel.write(any())).thenAnswer(new Answer<ChannelFuture>() {
+
+			@Override
+			public ChannelFuture answer(InvocationOnMock invocation) throws Throwable {
+				return Channels.succeededFuture(channel);
+			}
+
+		});
+
+		return channel;
+	}
+
+}
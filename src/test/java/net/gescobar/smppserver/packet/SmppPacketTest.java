@@ -0,0 +1,61 @@
+package net.gescobar.smppserver.packet;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.cloudhopper.smpp.SmppConstants;
+
+/**
+ * 
+ * @author German Escobar
+ */
+public class SmppPacketTest {
+
+	@Test
+	public void shouldNotHaveOptionalParameters() throws Exception {
+		
+		SubmitSm submitSm = new SubmitSm();
+		
+		Assert.assertTrue( submitSm.getOptionalParameters().isEmpty() );
+		Assert.assertNull( submitSm.getOptionalParameter(SmppConstants.TAG_MESSAGE_PAYLOAD) );
+		Assert.assertNull( submitSm.getMessagePayload() );
+		Assert.assertEquals( submitSm.getSarMsgRefNum(), -1 );
+		
+	}
+	
+	@Test
+	public void shouldFindOptionalParametersByTag() throws Exception {
+		
+		SubmitSm submitSm = new SubmitSm();
+		
+		// add more than the initial capacity of the index
+		for (short tag=1; tag <= 20; tag++) {
+			submitSm.addOptionalParameter( new Tlv(tag, new byte[] { (byte) tag }, null) );
+		}
+		submitSm.addOptionalParameter( new Tlv(SmppConstants.TAG_SAR_MSG_REF_NUM, new byte[] { 1, 2 }, null) );
+		submitSm.addOptionalParameter( new Tlv(SmppConstants.TAG_SAR_TOTAL_SEGMENTS, new byte[] { 3 }, null) );
+		submitSm.addOptionalParameter( new Tlv(SmppConstants.TAG_SAR_SEGMENT_SEQNUM, new byte[] { 2 }, null) );
+		
+		Assert.assertEquals( submitSm.getOptionalParameters().size(), 23 );
+		for (short tag=1; tag <= 20; tag++) {
+			Assert.assertEquals( submitSm.getOptionalParameter(tag).getValue()[0], (byte) tag );
+		}
+		Assert.assertEquals( submitSm.getSarMsgRefNum(), 258 );
+		Assert.assertEquals( submitSm.getSarTotalSegments(), 3 );
+		Assert.assertEquals( submitSm.getSarSegmentSeqnum(), 2 );
+		
+	}
+	
+	@Test
+	public void shouldReturnFirstOptionalParameterWithTag() throws Exception {
+		
+		SubmitSm submitSm = new SubmitSm();
+		submitSm.addOptionalParameter( new Tlv(SmppConstants.TAG_MESSAGE_PAYLOAD, new byte[] { 1 }, null) );
+		submitSm.addOptionalParameter( new Tlv(SmppConstants.TAG_MESSAGE_PAYLOAD, new byte[] { 2 }, null) );
+		
+		Assert.assertEquals( submitSm.getOptionalParameters().size(), 2 );
+		Assert.assertEquals( submitSm.getMessagePayload(), new byte[] { 1 } );
+		
+	}
+	
+}
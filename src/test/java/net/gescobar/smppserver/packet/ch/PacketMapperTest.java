@@ -1,7 +1,15 @@
 package net.gescobar.smppserver.packet.ch;
 
+import net.gescobar.smppserver.packet.SubmitSm;
+
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import com.cloudhopper.commons.charset.CharsetUtil;
+import com.cloudhopper.smpp.SmppConstants;
+import com.cloudhopper.smpp.tlv.Tlv;
+import com.cloudhopper.smpp.type.Address;
+
 public class PacketMapperTest {
 
 	@Test
@@ -9,4 +17,34 @@ public class PacketMapperTest {
 		
 	}
 	
+	@Test
+	public void shouldMapChSubmitSmLazily() throws Exception {
+		
+		com.cloudhopper.smpp.pdu.SubmitSm chSubmitSm = new com.cloudhopper.smpp.pdu.SubmitSm();
+		chSubmitSm.setSequenceNumber(10);
+		chSubmitSm.setSourceAddress( new Address((byte) 1, (byte) 1, "5555") );
+		chSubmitSm.setShortMessage( CharsetUtil.encode("hello", CharsetUtil.CHARSET_GSM) );
+		chSubmitSm.addOptionalParameter( new Tlv(SmppConstants.TAG_SAR_SEGMENT_SEQNUM, new byte[] { 1 }) );
+		
+		SubmitSm submitSm = (SubmitSm) PacketMapper.map(chSubmitSm, true);
+		
+		Assert.assertTrue( LazySubmitSm.class.isInstance(submitSm) );
+		Assert.assertEquals( submitSm.getSequenceNumber(), 10 );
+		Assert.assertEquals( submitSm.getSourceAddress().getAddress(), "5555" );
+		Assert.assertEquals( submitSm.getShortMessage(), "hello" );
+		Assert.assertNotNull( submitSm.getOptionalParameter(SmppConstants.TAG_SAR_SEGMENT_SEQNUM) );
+		
+		StringBuilder buffer = new StringBuilder();
+		submitSm.decodeShortMessage(buffer);
+		Assert.assertEquals( buffer.toString(), "hello" );
+		Assert.assertSame( submitSm.getShortMessageBytes(), chSubmitSm.getShortMessage() );
+		
+		// a setter copies the fields
+		submitSm.setEsmClass( (byte) 3 );
+		Assert.assertEquals( submitSm.getEsmClass(), 3 );
+		Assert.assertEquals( submitSm.getShortMessage(), "hello" );
+		Assert.assertEquals( submitSm.getOptionalParameters().size(), 1 );
+		
+	}
+	
 }